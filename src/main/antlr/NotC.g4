@@ -72,10 +72,11 @@ grammar NotC;
         // Resolves abstract syntax types to instances
         // of this enum using a utility visitor
         public static Type resolve(TypeTokenContext ctx) {
-            return ctx.accept(resolver);
+            return ctx.accept(RESOLVER);
         }
 
-        private static TypeVisitor resolver = new TypeVisitor();
+        // Holds no state, so parsers on different threads can share it
+        private static final TypeVisitor RESOLVER = new TypeVisitor();
 
         static class TypeVisitor extends NotCBaseVisitor<Type> {
             @Override
@@ -110,11 +111,13 @@ grammar NotC;
         }
     }
 
-    // Makes parser rules aware of program's name for FQN precomputations
-    static String programId;
+    // Makes parser rules aware of program's name for FQN precomputations.
+    // Kept per parser so that programs can be compiled concurrently.
+    private String programId;
     public static NotCParser from(TokenStream tokens, String id) {
-        programId = id;
-        return new NotCParser(tokens);
+        NotCParser parser = new NotCParser(tokens);
+        parser.programId = id;
+        return parser;
     }
 
 }
@@ -144,7 +147,7 @@ functionHeader locals [Type returnType, String specification, String fqn]
         sb.append(t.descriptor());
     sb.append(")").append($ctx.returnType.descriptor());
     $ctx.specification = sb.toString();
-    $ctx.fqn = NotCParser.programId + "/" + $ctx.specification;
+    $ctx.fqn = programId + "/" + $ctx.specification;
 }
     : parsedReturn=typeToken
       id=ID
@@ -195,8 +198,9 @@ statement
     ;
 
 
-// The types of expressions are inferred during semantic analysis
-expression locals [Type type, Type runtimeConversion]
+// The types of expressions are inferred during semantic analysis.
+// Values known at compile time (Integer or Double) may be found by ConstantFolder.
+expression locals [Type type, Type runtimeConversion, Object constant]
     : '-' opnd=expression                                                          # NegationExpression
     | LEFT_PAREN expr=expression RIGHT_PAREN                                       # ParenthesizedExpression
     | 'false'                                                                      # FalseLiteralExpression
@@ -0,0 +1,140 @@
+package notc;
+
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Compiles many source files in one process, spread over a work-stealing pool.
+// Each file becomes a class named after its base name. Diagnostics are prefixed
+// with the file they concern and printed in the order the files were given,
+// regardless of completion order.
+class BatchCompiler {
+    private final CompilerOptions options;
+    private final int parallelism;
+    private final CompilationCache cache;
+    private final Path workDir;
+
+    BatchCompiler(CompilerOptions options, CompilationCache cache, Path workDir) {
+        this(options, Runtime.getRuntime().availableProcessors(), cache, workDir);
+    }
+
+    // The cache, if not null, is shared by all files.
+    // Relative source files are read from workDir, but reported as given.
+    BatchCompiler(CompilerOptions options, int parallelism, CompilationCache cache, Path workDir) {
+        this.options = options;
+        this.parallelism = parallelism;
+        this.cache = cache;
+        this.workDir = workDir;
+    }
+
+    // Compiles srcFiles into destDir and prints a throughput report to out.
+    // Returns true if all files compiled, false otherwise.
+    boolean compile(List<Path> srcFiles, Path destDir, PrintStream out, PrintStream err) {
+        if (hasClashingClassNames(srcFiles, err))
+            return false;
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        List<ForkJoinTask<Result>> tasks = new ArrayList<>(srcFiles.size());
+        try {
+            for (Path srcFile : srcFiles)
+                tasks.add(pool.submit(() -> compile(srcFile, destDir)));
+
+            int failures = 0;
+            long bytesEmitted = 0;
+            for (ForkJoinTask<Result> task : tasks) {
+                Result result = task.join();
+                err.print(result.diagnostics);
+                if (result.classSize < 0)
+                    ++failures;
+                else
+                    bytesEmitted += result.classSize;
+            }
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            out.printf("Compiled %d of %d files in %.3f s (%.1f files/s), %d bytes emitted%n",
+                       srcFiles.size() - failures, srcFiles.size(), seconds,
+                       srcFiles.size() / seconds, bytesEmitted);
+            if (cache != null)
+                out.println(cache);
+            return failures == 0;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private Result compile(Path srcFile, Path destDir) {
+        String className = FilenameUtils.getBaseName(srcFile.toString());
+        ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+        int classSize = -1;
+        try (PrintStream ps = new PrintStream(diagnostics, true, UTF_8)) {
+            try {
+                byte[] classBytes = new Compiler(options, ps, cache, workDir).compileToBytes(srcFile, className);
+                if (classBytes != null) {
+                    Path classFile = destDir.resolve(className + ".class");
+                    try {
+                        Files.write(classFile, classBytes);
+                        classSize = classBytes.length;
+                    } catch (IOException e) {
+                        ps.println(srcFile + ": Cannot write " + classFile + ": " + e.getMessage());
+                    }
+                }
+            } catch (RuntimeException e) {
+                // Reported with the file so that the rest of the batch still completes
+                ps.println(srcFile + ": Internal compiler error");
+                e.printStackTrace(ps);
+            }
+        }
+        return new Result(withFileName(srcFile, diagnostics.toString(UTF_8)), classSize);
+    }
+
+    // Every line is prefixed, so that the output of each file can be told apart
+    // in that of the batch, e.g. several semantic errors or report lines
+    private static String withFileName(Path srcFile, String diagnostics) {
+        String prefix = srcFile + ": ";
+        StringBuilder sb = new StringBuilder();
+        diagnostics.lines().forEach(line -> {
+            if (!line.startsWith(prefix))
+                sb.append(prefix);
+            sb.append(line).append(System.lineSeparator());
+        });
+        return sb.toString();
+    }
+
+    // Files with the same base name would overwrite each other's classes
+    private static boolean hasClashingClassNames(List<Path> srcFiles, PrintStream err) {
+        Map<String,Path> fileByClassName = new HashMap<>();
+        boolean clash = false;
+        for (Path srcFile : srcFiles) {
+            String className = FilenameUtils.getBaseName(srcFile.toString());
+            Path previous = fileByClassName.putIfAbsent(className, srcFile);
+            if (previous != null) {
+                err.println(srcFile + ": Class " + className + " already generated from " + previous);
+                clash = true;
+            }
+        }
+        return clash;
+    }
+
+    private static class Result {
+        final String diagnostics;
+        final int classSize; // Negative if compilation failed
+
+        Result(String diagnostics, int classSize) {
+            this.diagnostics = diagnostics;
+            this.classSize = classSize;
+        }
+    }
+
+}
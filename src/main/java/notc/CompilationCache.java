@@ -0,0 +1,219 @@
+package notc;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// On-disk cache of compiled classes, keyed by a hash of everything that determines
+// the contents of a class file: the source bytes, the class name, the compiler
+// build and the compiler configuration. A hit skips compilation entirely.
+//
+// Entries are written to temporary files and renamed into place, so processes
+// sharing a cache directory never see partial entries. Hits refresh an entry's
+// modification time, and the least recently used entries are evicted when the
+// cache grows past its size cap.
+class CompilationCache {
+    private static final String SUFFIX = ".class";
+    private static final String COMPILER_BUILD = compilerBuild();
+
+    private final Path dir;
+    private final long maxBytes;
+    private long approximateSize; // Negative until first counted
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong evictions;
+
+    CompilationCache(Path dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create cache directory " + dir, e);
+        }
+        approximateSize = -1;
+        hits = new AtomicLong();
+        misses = new AtomicLong();
+        evictions = new AtomicLong();
+    }
+
+    static String key(byte[] source, String className, String configuration) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        for (String s : List.of(COMPILER_BUILD, configuration, className))
+            hasher.putInt(s.length()).putString(s, UTF_8);
+        return hasher.putBytes(source).hash().toString();
+    }
+
+    // Returns the cached class, or null if there is none
+    byte[] get(String key) {
+        Path entry = dir.resolve(key + SUFFIX);
+        try {
+            byte[] classBytes = Files.readAllBytes(entry);
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            hits.incrementAndGet();
+            return classBytes;
+        } catch (NoSuchFileException e) {
+            // Never stored, or evicted by this or another process
+        } catch (IOException e) {
+            // Treated like a miss; the class is compiled anew
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    void put(String key, byte[] classBytes) {
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(dir, key, ".tmp");
+            Files.write(tmp, classBytes);
+            Files.move(tmp, dir.resolve(key + SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The cache is an optimization only. Includes AtomicMoveNotSupportedException.
+            return;
+        } finally {
+            // Left behind if writing or moving failed, e.g. when the disk is full
+            deleteQuietly(tmp);
+        }
+        grow(classBytes.length);
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null)
+            return;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            // Nothing more to do
+        }
+    }
+
+    // Keeps a running estimate of the size of the cache, counted first when the
+    // first entry is stored so that runs with only hits never list the directory
+    private synchronized void grow(long bytes) {
+        if (approximateSize < 0)
+            approximateSize = entries().stream().mapToLong(Entry::size).sum();
+        else
+            approximateSize += bytes;
+        if (approximateSize > maxBytes)
+            evict();
+    }
+
+    // Removes the least recently used entries until the cache fits its cap.
+    // Other processes may have added or removed entries, so the size is recounted.
+    private void evict() {
+        List<Entry> entries = entries();
+        long size = entries.stream().mapToLong(Entry::size).sum();
+        entries.sort(Comparator.comparing(Entry::lastUsed));
+        for (Entry entry : entries) {
+            if (size <= maxBytes)
+                break;
+            try {
+                Files.deleteIfExists(entry.path);
+                evictions.incrementAndGet();
+            } catch (IOException e) {
+                continue;
+            }
+            size -= entry.size;
+        }
+        approximateSize = size;
+    }
+
+    private List<Entry> entries() {
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Entry> entries = new ArrayList<>();
+            for (Path path : files.filter(p -> p.toString().endsWith(SUFFIX)).collect(Collectors.toList())) {
+                try {
+                    entries.add(new Entry(path, Files.size(path), Files.getLastModifiedTime(path)));
+                } catch (IOException e) {
+                    // Evicted meanwhile
+                }
+            }
+            return entries;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot list cache directory " + dir, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        long h = hits.get();
+        long m = misses.get();
+        double hitRate = h + m == 0 ? 0 : 100.0 * h / (h + m);
+        return String.format("Cache: %d hits, %d misses (%.1f%% hit rate), %d evictions",
+                             h, m, hitRate, evictions.get());
+    }
+
+    long hits() {
+        return hits.get();
+    }
+
+    long misses() {
+        return misses.get();
+    }
+
+    long evictions() {
+        return evictions.get();
+    }
+
+    // Identifies the build of the compiler so that entries of other builds are not used:
+    // a hash of its jar, or of all files under its class directory when not run from a jar.
+    // If neither can be read, entries are only reused within this process.
+    private static String compilerBuild() {
+        try {
+            Path codeSource = Path.of(Compiler.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            Hasher hasher = Hashing.sha256().newHasher();
+            if (Files.isDirectory(codeSource)) {
+                try (Stream<Path> files = Files.walk(codeSource)) {
+                    for (Path file : files.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                        String name = codeSource.relativize(file).toString();
+                        hasher.putInt(name.length()).putString(name, UTF_8);
+                        byte[] contents = Files.readAllBytes(file);
+                        hasher.putInt(contents.length).putBytes(contents);
+                    }
+                }
+            } else {
+                hasher.putBytes(Files.readAllBytes(codeSource));
+            }
+            return hasher.hash().toString();
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            return UUID.randomUUID().toString();
+        }
+    }
+
+    private static class Entry {
+        final Path path;
+        final long size;
+        final FileTime lastUsed;
+
+        Entry(Path path, long size, FileTime lastUsed) {
+            this.path = path;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+
+        long size() {
+            return size;
+        }
+
+        FileTime lastUsed() {
+            return lastUsed;
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+package notc;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// Thin front end that forwards its command line to a CompileServer
+// (started with "--serve") and relays the result. Compiles in-process
+// like Main if no server is listening, and always executes programs
+// given with --run in-process, where they can use the standard streams.
+public class CompileClient {
+    static final int DEFAULT_PORT = 7431;
+    // In the user's home, where the server writes the token that clients must send
+    static final String TOKEN_FILE = ".notcc-server-token";
+
+    public static void main(String[] args) throws IOException {
+        if (Main.runsProgram(args)) {
+            Main.main(args);
+            return;
+        }
+        Reply reply;
+        try {
+            String token = Files.readString(tokenFile(), UTF_8);
+            reply = request(port(), token, System.getProperty("user.dir"), args);
+        } catch (NoSuchFileException | ConnectException e) {
+            Main.main(args);
+            return;
+        }
+        System.out.write(reply.out);
+        System.out.flush();
+        System.err.write(reply.err);
+        System.err.flush();
+        System.exit(reply.status);
+    }
+
+    // Given by the environment variable NOTCC_PORT if set
+    static int port() {
+        String port = System.getenv("NOTCC_PORT");
+        return port == null ? DEFAULT_PORT : Integer.parseInt(port);
+    }
+
+    static Path tokenFile() {
+        return Path.of(System.getProperty("user.home"), TOKEN_FILE);
+    }
+
+    static Reply request(int port, String token, String workDir, String[] args) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeUTF(token);
+            out.writeUTF(workDir);
+            out.writeInt(args.length);
+            for (String arg : args)
+                out.writeUTF(arg);
+            out.flush();
+
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            byte[] stdout = readBytes(in);
+            byte[] stderr = readBytes(in);
+            int status = in.readInt();
+            return new Reply(stdout, stderr, status);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    // What Main would have printed, and its exit status
+    static class Reply {
+        final byte[] out;
+        final byte[] err;
+        final int status;
+
+        Reply(byte[] out, byte[] err, int status) {
+            this.out = out;
+            this.err = err;
+            this.status = status;
+        }
+    }
+
+}
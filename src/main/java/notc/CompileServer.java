@@ -0,0 +1,172 @@
+package notc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Keeps a warmed-up compiler in a long-lived process so that CompileClient
+// invocations do not pay for JVM startup, class loading and JIT warm-up.
+// Listens on the loopback interface only, and only serves clients that can read
+// the random token it writes to a file that only its user can read.
+//
+// A request is the token, the client's working directory and its command line.
+// The reply is what Main would have printed to stdout and stderr, followed by its exit status.
+class CompileServer {
+    private static final int TOKEN_BYTES = 32;
+    // Longest wait for the next part of a request before the connection is dropped
+    static final int DEFAULT_READ_TIMEOUT_MILLIS = 10_000;
+    // Requests beyond as many at once wait for a handler. Compiling is bound by the CPUs.
+    private static final int MAX_HANDLERS = 2 * Runtime.getRuntime().availableProcessors();
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService handlers;
+    private final byte[] token;
+    private final int readTimeoutMillis;
+
+    // Port 0 picks any free port. The token is written to tokenFile, replacing any earlier one.
+    CompileServer(int port, Path tokenFile) throws IOException {
+        this(port, tokenFile, DEFAULT_READ_TIMEOUT_MILLIS);
+    }
+
+    CompileServer(int port, Path tokenFile, int readTimeoutMillis) throws IOException {
+        this.readTimeoutMillis = readTimeoutMillis;
+        byte[] randomBytes = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(randomBytes);
+        String tokenText = Base64.getUrlEncoder().withoutPadding().encodeToString(randomBytes);
+        writeOwnerOnly(tokenFile, tokenText);
+        token = tokenText.getBytes(UTF_8);
+
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        handlers = Executors.newFixedThreadPool(MAX_HANDLERS, runnable -> {
+            Thread t = new Thread(runnable, "notcc-request");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    int localPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    // Accepts requests until closed
+    void serve() throws IOException {
+        try {
+            while (!serverSocket.isClosed()) {
+                Socket socket = serverSocket.accept();
+                handlers.execute(() -> handle(socket));
+            }
+        } catch (IOException e) {
+            if (!serverSocket.isClosed())
+                throw e;
+        }
+    }
+
+    void close() throws IOException {
+        serverSocket.close();
+        handlers.shutdown();
+    }
+
+    private void handle(Socket socket) {
+        try (socket) {
+            // A client that stops sending would otherwise hold the handler forever
+            socket.setSoTimeout(readTimeoutMillis);
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            DataOutputStream reply = new DataOutputStream(socket.getOutputStream());
+            // The whole request is read first, so that the client is not cut off
+            // while still sending it. Arguments are collected one by one, as their
+            // count is not trusted before the token is checked.
+            byte[] clientToken = in.readUTF().getBytes(UTF_8);
+            String workDir = in.readUTF();
+            int argCount = in.readInt();
+            List<String> argList = new ArrayList<>();
+            for (int i = 0; i < argCount; ++i)
+                argList.add(in.readUTF());
+            // Compared in constant time so that the token cannot be guessed byte by byte
+            if (!MessageDigest.isEqual(token, clientToken)) {
+                writeBytes(reply, new byte[0]);
+                writeBytes(reply, ("Compile server rejected the request: token does not match" +
+                                   System.lineSeparator()).getBytes(UTF_8));
+                reply.writeInt(1);
+                reply.flush();
+                return;
+            }
+            String[] args = argList.toArray(new String[0]);
+            // A program would read no input, write nothing until it ends, and
+            // hold a handler as long as it runs
+            if (Main.runsProgram(args)) {
+                writeBytes(reply, new byte[0]);
+                writeBytes(reply, ("Compile server does not execute programs given with --run" +
+                                   System.lineSeparator()).getBytes(UTF_8));
+                reply.writeInt(1);
+                reply.flush();
+                return;
+            }
+
+            ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
+            ByteArrayOutputStream errBytes = new ByteArrayOutputStream();
+            int status;
+            try (PrintStream out = new PrintStream(outBytes, true);
+                 PrintStream err = new PrintStream(errBytes, true)) {
+                status = compile(args, Path.of(workDir), out, err);
+            }
+
+            writeBytes(reply, outBytes.toByteArray());
+            writeBytes(reply, errBytes.toByteArray());
+            reply.writeInt(status);
+            reply.flush();
+        } catch (IOException e) {
+            // The client went away or timed out; nothing to reply to
+        }
+    }
+
+    private static int compile(String[] args, Path workDir, PrintStream out, PrintStream err) {
+        try {
+            // Standard input is not forwarded. Compiling does not read it.
+            return Main.run(args, workDir, InputStream.nullInputStream(), out, err);
+        } catch (RuntimeException e) {
+            // Keep serving other requests
+            e.printStackTrace(err);
+            return 1;
+        }
+    }
+
+    // Readable and writable by the owner only where the file system has POSIX permissions.
+    // Elsewhere, such as on Windows, the file inherits the permissions of the user's home.
+    private static void writeOwnerOnly(Path file, String text) throws IOException {
+        Files.deleteIfExists(file);
+        try {
+            Set<PosixFilePermission> ownerOnly = EnumSet.of(PosixFilePermission.OWNER_READ,
+                                                            PosixFilePermission.OWNER_WRITE);
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(ownerOnly));
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(file);
+        }
+        Files.writeString(file, text, UTF_8);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+}
@@ -2,12 +2,18 @@ package notc;
 
 import notc.antlrgen.NotCLexer;
 import notc.antlrgen.NotCParser;
+import notc.antlrgen.NotCParser.ProgramContext;
 import notc.semantics.ProgramChecker;
+import notc.semantics.ConstantFolder;
 import notc.semantics.SemanticException;
 import notc.semantics.SymbolTable;
+import notc.codegen.CallGraph;
+import notc.codegen.ClassFileGenerator;
+import notc.codegen.CommonSubexpressions;
+import notc.codegen.Inliner;
 import notc.codegen.ProgramGenerator;
+import notc.codegen.Optimization;
 
-import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
@@ -18,24 +24,115 @@ import org.antlr.v4.runtime.Recognizer;
 import org.antlr.v4.runtime.RecognitionException;
 import jasmin.ClassFile;
 
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.io.UncheckedIOException;
-import java.io.OutputStream;
 import java.io.StringReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.List;
 
 class Compiler {
+    // Where the built-in functions are defined when not embedded in each class
+    private static final String RUNTIME_CLASS = runtime.class.getName().replace('.', '/');
+
+    private final CompilerOptions options;
+    private final PrintStream diagnostics;
+    private final CompilationCache cache;
+    private final Path workDir;
+
+    Compiler() {
+        this(false);
+    }
+
+    // If viaJasmin is set, the class file is assembled by Jasmin from generated text.
+    // Otherwise the bytecode is generated directly.
+    Compiler(boolean viaJasmin) {
+        this(viaJasmin, System.err);
+    }
+
+    Compiler(boolean viaJasmin, PrintStream diagnostics) {
+        this(CompilerOptions.DEFAULT.viaJasmin(viaJasmin), diagnostics, null);
+    }
+
+    // Errors in the source program are reported to diagnostics.
+    // Looks up classes in cache before compiling them, and stores them there afterwards.
+    // No cache is used if it is null.
+    Compiler(CompilerOptions options, PrintStream diagnostics, CompilationCache cache) {
+        this(options, diagnostics, cache, Path.of(""));
+    }
+
+    // Relative source files are read from workDir, but reported as given
+    Compiler(CompilerOptions options, PrintStream diagnostics, CompilationCache cache, Path workDir) {
+        this.options = options;
+        this.diagnostics = diagnostics;
+        this.cache = cache;
+        this.workDir = workDir;
+    }
 
     // Attempts to compile a NotC program given by srcFile into a class named className
     // and place it in destDir. Returns true on success, false otherwise.
     boolean compile(Path srcFile, String className, Path destDir) {
-        ParseTree tree;
+        byte[] classBytes = compileToBytes(srcFile, className);
+        if (classBytes == null)
+            return false;
+
+        Path outFile = destDir.resolve(Path.of(className + ".class"));
+        try {
+            Files.write(outFile, classBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No means to handle", e);
+        }
+
+        return true;
+    }
+
+    // Attempts to compile a NotC program given by srcFile into a class named className
+    // and execute it in this JVM with in and out as its standard streams.
+    // Nothing is written to disk. Returns true if the program compiled, false otherwise.
+    boolean compileAndRun(Path srcFile, String className, InputStream in, PrintStream out) {
+        byte[] classBytes = compileToBytes(srcFile, className);
+        if (classBytes == null)
+            return false;
+        ProgramRunner.run(classBytes, className, in, out);
+        return true;
+    }
+
+    // Attempts to compile a NotC program given by srcFile into a class named className.
+    // Returns the contents of the class file on success, null otherwise.
+    byte[] compileToBytes(Path srcFile, String className) {
+        byte[] source;
+        try {
+            source = Files.readAllBytes(workDir.resolve(srcFile));
+        } catch (IOException e) {
+            diagnostics.println(srcFile + ": No such file");
+            return null;
+        }
+
+        // Reports are made while compiling
+        if (cache == null || options.reportInlining || options.reportUnused || options.reportSubexpressions
+                || options.reportPeephole)
+            return compileSource(source, srcFile, className);
+        String key = CompilationCache.key(source, className, options.toString());
+        byte[] classBytes = cache.get(key);
+        if (classBytes == null) {
+            classBytes = compileSource(source, srcFile, className);
+            if (classBytes != null)
+                cache.put(key, classBytes);
+        }
+        return classBytes;
+    }
+
+    private byte[] compileSource(byte[] source, Path srcFile, String className) {
+        ProgramContext tree;
         SymbolTable symTab;
 
         // Analyzes program
         try {
-            CharStream input = CharStreams.fromPath(srcFile);
+            CharStream input = CharStreams.fromString(new String(source, UTF_8), srcFile.toString());
             ANTLRErrorListener listener = new BailingErrorListener();
 
             NotCLexer lexer = new NotCLexer(input);
@@ -48,33 +145,54 @@ class Compiler {
             parser.addErrorListener(listener);
             tree = parser.program();
 
-            symTab = tree.accept(new ProgramChecker());
-        } catch (IOException e) {
-            System.err.println(srcFile + ": No such file");
-            return false;
+            String builtinClass = options.sharedRuntime ? RUNTIME_CLASS : className;
+            symTab = tree.accept(new ProgramChecker(builtinClass));
+            if (options.optimizations.contains(Optimization.CONSTANT_FOLDING))
+                tree.accept(new ConstantFolder(symTab));
         } catch (ParseCancellationException e) {
-            System.err.println("Syntax error: " + e.getMessage());
-            return false;
+            diagnostics.println("Syntax error: " + e.getMessage());
+            return null;
         } catch (SemanticException e) {
-            System.err.println("Semantic error: " + e.getMessage());
-            return false;
+            diagnostics.println("Semantic error: " + e.getMessage());
+            return null;
         }
 
-        // Generates Jasmin representation and assembles it
-        String jasmText = tree.accept(new ProgramGenerator(symTab, className));
+        if (options.reportInlining && options.optimizations.contains(Optimization.INLINING))
+            new Inliner(tree.funDefs, symTab, options.inlineLimit).report().forEach(diagnostics::println);
+        if (options.reportUnused && options.optimizations.contains(Optimization.UNUSED_FUNCTIONS))
+            new CallGraph(tree.funDefs, symTab).report(!options.sharedRuntime).forEach(diagnostics::println);
+        if (options.reportSubexpressions && options.optimizations.contains(Optimization.COMMON_SUBEXPRESSIONS))
+            new CommonSubexpressions(tree.funDefs, symTab).report().forEach(diagnostics::println);
+
+        // Generates the class file, directly or via Jasmin
+        byte[] classBytes;
+        List<String> peepholeReport;
+        if (options.viaJasmin) {
+            ProgramGenerator generator = new ProgramGenerator(symTab, className, options.codegen());
+            classBytes = assembleJasmin(tree.accept(generator), className);
+            peepholeReport = generator.peepholeReport();
+        } else {
+            ClassFileGenerator generator = new ClassFileGenerator(symTab, className, options.codegen());
+            classBytes = tree.accept(generator);
+            peepholeReport = generator.peepholeReport();
+        }
+        // Counted while generating
+        if (options.reportPeephole && options.optimizations.contains(Optimization.PEEPHOLE))
+            peepholeReport.forEach(diagnostics::println);
+        return classBytes;
+    }
+
+    // Assembles the Jasmin representation of a class
+    private byte[] assembleJasmin(String jasmText, String className) {
         ClassFile classFile = new ClassFile();
-        Path outFile = destDir.resolve(Path.of(className + ".class"));
-        try (StringReader sr = new StringReader(jasmText);
-            OutputStream os = Files.newOutputStream(outFile)) {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (StringReader sr = new StringReader(jasmText)) {
             classFile.readJasmin(sr, className, /* numberLines = */ true);
             classFile.write(os);
-        } catch (IOException e) {
-            throw new UncheckedIOException("No means to handle", e);
         } catch (Exception e) {
             throw new AssemblyException(jasmText, e);
         }
-
-        return true;
+        return os.toByteArray();
     }
 
     // Wraps general Exceptions from the Jasmin API
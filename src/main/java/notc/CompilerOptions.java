@@ -0,0 +1,143 @@
+package notc;
+
+import notc.codegen.CodegenOptions;
+import notc.codegen.Inliner;
+import notc.codegen.Memoization;
+import notc.codegen.Optimization;
+import notc.codegen.Peephole;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// Settings of the compiler. All but the reports affect the generated class files.
+// Immutable; each setter returns a modified copy.
+final class CompilerOptions {
+    static final CompilerOptions DEFAULT =
+        new CompilerOptions(false, false, Collections.unmodifiableSet(EnumSet.allOf(Optimization.class)),
+                            Inliner.DEFAULT_LIMIT, Memoization.NONE,
+                            Collections.unmodifiableSet(EnumSet.allOf(Peephole.Rule.class)),
+                            false, false, false, false);
+
+    // Assemble from Jasmin text instead of generating bytecode directly
+    final boolean viaJasmin;
+    // Call the built-in functions in notc.runtime instead of embedding them
+    final boolean sharedRuntime;
+    // Applied to the generated code. All by default.
+    final Set<Optimization> optimizations;
+    // Largest size of inlined functions
+    final int inlineLimit;
+    // Whether results of recursive pure functions are cached, and their hit rates printed
+    final Memoization memoization;
+    // Applied by the peephole pass. All by default.
+    final Set<Peephole.Rule> peepholeRules;
+    // Print which calls are inlined to the diagnostics
+    final boolean reportInlining;
+    // Print the functions left out of the class file to the diagnostics
+    final boolean reportUnused;
+    // Print the expressions whose values are reused to the diagnostics
+    final boolean reportSubexpressions;
+    // Print the rewrites of each peephole rule to the diagnostics
+    final boolean reportPeephole;
+
+    private CompilerOptions(boolean viaJasmin, boolean sharedRuntime, Set<Optimization> optimizations,
+                            int inlineLimit, Memoization memoization, Set<Peephole.Rule> peepholeRules,
+                            boolean reportInlining, boolean reportUnused, boolean reportSubexpressions,
+                            boolean reportPeephole) {
+        this.viaJasmin = viaJasmin;
+        this.sharedRuntime = sharedRuntime;
+        this.optimizations = optimizations;
+        this.inlineLimit = inlineLimit;
+        this.memoization = memoization;
+        this.peepholeRules = peepholeRules;
+        this.reportInlining = reportInlining;
+        this.reportUnused = reportUnused;
+        this.reportSubexpressions = reportSubexpressions;
+        this.reportPeephole = reportPeephole;
+    }
+
+    CompilerOptions viaJasmin(boolean viaJasmin) {
+        return new CompilerOptions(viaJasmin, sharedRuntime, optimizations, inlineLimit, memoization,
+                                   peepholeRules, reportInlining, reportUnused, reportSubexpressions,
+                                   reportPeephole);
+    }
+
+    CompilerOptions sharedRuntime(boolean sharedRuntime) {
+        return new CompilerOptions(viaJasmin, sharedRuntime, optimizations, inlineLimit, memoization,
+                                   peepholeRules, reportInlining, reportUnused, reportSubexpressions,
+                                   reportPeephole);
+    }
+
+    CompilerOptions optimizations(Set<Optimization> optimizations) {
+        Set<Optimization> copy = EnumSet.noneOf(Optimization.class);
+        copy.addAll(optimizations);
+        return new CompilerOptions(viaJasmin, sharedRuntime, Collections.unmodifiableSet(copy),
+                                   inlineLimit, memoization, peepholeRules, reportInlining, reportUnused,
+                                   reportSubexpressions, reportPeephole);
+    }
+
+    CompilerOptions inlineLimit(int inlineLimit) {
+        return new CompilerOptions(viaJasmin, sharedRuntime, optimizations, inlineLimit, memoization,
+                                   peepholeRules, reportInlining, reportUnused, reportSubexpressions,
+                                   reportPeephole);
+    }
+
+    CompilerOptions memoization(Memoization memoization) {
+        return new CompilerOptions(viaJasmin, sharedRuntime, optimizations, inlineLimit, memoization,
+                                   peepholeRules, reportInlining, reportUnused, reportSubexpressions,
+                                   reportPeephole);
+    }
+
+    CompilerOptions reportInlining(boolean reportInlining) {
+        return new CompilerOptions(viaJasmin, sharedRuntime, optimizations, inlineLimit, memoization,
+                                   peepholeRules, reportInlining, reportUnused, reportSubexpressions,
+                                   reportPeephole);
+    }
+
+    CompilerOptions reportUnused(boolean reportUnused) {
+        return new CompilerOptions(viaJasmin, sharedRuntime, optimizations, inlineLimit, memoization,
+                                   peepholeRules, reportInlining, reportUnused, reportSubexpressions,
+                                   reportPeephole);
+    }
+
+    CompilerOptions reportSubexpressions(boolean reportSubexpressions) {
+        return new CompilerOptions(viaJasmin, sharedRuntime, optimizations, inlineLimit, memoization,
+                                   peepholeRules, reportInlining, reportUnused, reportSubexpressions,
+                                   reportPeephole);
+    }
+
+    CompilerOptions peepholeRules(Set<Peephole.Rule> peepholeRules) {
+        Set<Peephole.Rule> copy = EnumSet.noneOf(Peephole.Rule.class);
+        copy.addAll(peepholeRules);
+        return new CompilerOptions(viaJasmin, sharedRuntime, optimizations, inlineLimit, memoization,
+                                   Collections.unmodifiableSet(copy), reportInlining, reportUnused,
+                                   reportSubexpressions, reportPeephole);
+    }
+
+    CompilerOptions reportPeephole(boolean reportPeephole) {
+        return new CompilerOptions(viaJasmin, sharedRuntime, optimizations, inlineLimit, memoization,
+                                   peepholeRules, reportInlining, reportUnused, reportSubexpressions,
+                                   reportPeephole);
+    }
+
+    // The settings of the code generators
+    CodegenOptions codegen() {
+        return CodegenOptions.DEFAULT
+            .embedBuiltins(!sharedRuntime)
+            .optimizations(optimizations)
+            .inlineLimit(inlineLimit)
+            .memoization(memoization)
+            .peepholeRules(peepholeRules);
+    }
+
+    // Identifies the settings that affect class files in cache keys
+    @Override
+    public String toString() {
+        return "jasmin=" + viaJasmin + ",runtime=" + sharedRuntime + ",optimizations=" +
+               optimizations.stream().map(Optimization::optionName).collect(Collectors.joining("+")) +
+               ",inline-limit=" + inlineLimit + ",memoization=" + memoization + ",peephole-rules=" +
+               peepholeRules.stream().map(Peephole.Rule::optionName).collect(Collectors.joining("+"));
+    }
+
+}
@@ -1,5 +1,10 @@
 package notc;
 
+import notc.codegen.Inliner;
+import notc.codegen.Memoization;
+import notc.codegen.Optimization;
+import notc.codegen.Peephole;
+
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.DefaultParser;
 import org.apache.commons.cli.HelpFormatter;
@@ -8,56 +13,234 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apache.commons.io.FilenameUtils;
 
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 // Validates command line input before calling the compiler
 public class Main {
     private static final String LINE_SEP = System.lineSeparator();
+    private static final String DEFAULT_CACHE_SIZE = "256";
+    private static final String ALL_OPTIMIZATIONS = "all";
 
     public static void main(String[] args) {
+        if (Arrays.asList(args).contains("--serve")) {
+            serve();
+            return;
+        }
+        // The empty path keeps relative paths in messages as given
+        int status = run(args, Path.of(""), System.in, System.out, System.err);
+        System.exit(status);
+    }
+
+    // Whether a command line executes a program with --run, which needs the standard
+    // streams of the process. False if the command line cannot be parsed.
+    static boolean runsProgram(String[] args) {
+        try {
+            return new DefaultParser().parse(setUpOptions(), args).hasOption("run");
+        } catch (ParseException e) {
+            return false;
+        }
+    }
+
+    // Handles a command line as if the process had been started in workDir,
+    // with in, out and err as standard streams. Returns the exit status.
+    static int run(String[] args, Path workDir, InputStream in, PrintStream out, PrintStream err) {
         // Parses flags and their arguments
         Options options = setUpOptions();
-        CommandLine cmd = null;
+        CommandLine cmd;
         try {
             cmd = new DefaultParser().parse(options, args);
         } catch (ParseException e) {
-            error(e.getMessage());
+            return error(err, e.getMessage());
         }
 
         if (cmd.hasOption("help")) {
-            printUsage(options);
-            return;
+            printUsage(options, out);
+            return 0;
         }
 
-        // What should be left is the source file
+        // What should be left are the source files, unless one is given with --run
         String[] remainingArgs = cmd.getArgs();
-        if (remainingArgs.length < 1) {
-            printUsage(options);
-            error("Missing source file argument");
+        if (cmd.hasOption("run") && remainingArgs.length > 0)
+            return error(err, "Option --run takes a single source file");
+        if (remainingArgs.length < 1 && !cmd.hasOption("run")) {
+            printUsage(options, out);
+            return error(err, "Missing source file argument");
+        }
+
+        Path destDir = cmd.hasOption("directory")
+                     ? workDir.resolve(cmd.getOptionValue("directory"))
+                     : workDir;
+
+        Set<Optimization> optimizations = EnumSet.allOf(Optimization.class);
+        if (cmd.hasOption("disable")) {
+            for (String name : cmd.getOptionValue("disable").split(",")) {
+                if (name.equals(ALL_OPTIMIZATIONS)) {
+                    optimizations.clear();
+                    continue;
+                }
+                Optimization opt = optimizationByName(name);
+                if (opt == null)
+                    return error(err, "Unknown optimization " + name);
+                optimizations.remove(opt);
+            }
+        }
+
+        Set<Peephole.Rule> peepholeRules = EnumSet.allOf(Peephole.Rule.class);
+        if (cmd.hasOption("disable-rules")) {
+            for (String name : cmd.getOptionValue("disable-rules").split(",")) {
+                Peephole.Rule rule = peepholeRuleByName(name);
+                if (rule == null)
+                    return error(err, "Unknown peephole rule " + name);
+                peepholeRules.remove(rule);
+            }
+        }
+
+        int inlineLimit;
+        try {
+            inlineLimit = Integer.parseInt(cmd.getOptionValue("inline-limit",
+                                                              String.valueOf(Inliner.DEFAULT_LIMIT)));
+        } catch (NumberFormatException e) {
+            return error(err, "Illegal inline limit");
+        }
+        if (inlineLimit < 0)
+            return error(err, "Illegal inline limit");
+
+        CompilerOptions compilerOptions = CompilerOptions.DEFAULT
+            .viaJasmin(cmd.hasOption("jasmin"))
+            .sharedRuntime(cmd.hasOption("runtime"))
+            .optimizations(optimizations)
+            .inlineLimit(inlineLimit)
+            .peepholeRules(peepholeRules)
+            .memoization(cmd.hasOption("report-memoization") ? Memoization.REPORTED
+                         : cmd.hasOption("memoize") ? Memoization.CACHED
+                         : Memoization.NONE)
+            .reportInlining(cmd.hasOption("report-inlining"))
+            .reportUnused(cmd.hasOption("report-unused"))
+            .reportSubexpressions(cmd.hasOption("report-subexpressions"))
+            .reportPeephole(cmd.hasOption("report-peephole"));
+
+        CompilationCache cache = null;
+        if (cmd.hasOption("cache")) {
+            long maxMegabytes;
+            try {
+                maxMegabytes = Long.parseLong(cmd.getOptionValue("cache-size", DEFAULT_CACHE_SIZE));
+            } catch (NumberFormatException e) {
+                return error(err, "Illegal cache size");
+            }
+            // Larger sizes overflow when converted to bytes
+            if (maxMegabytes < 0 || maxMegabytes > Long.MAX_VALUE >> 20)
+                return error(err, "Illegal cache size");
+            cache = new CompilationCache(workDir.resolve(cmd.getOptionValue("cache")),
+                                         maxMegabytes << 20);
         }
+
+        if (cmd.hasOption("run"))
+            return runInProcess(cmd, cmd.getOptionValue("run"), workDir, compilerOptions, cache, in, out, err);
+
+        if (remainingArgs.length > 1)
+            return runBatch(cmd, remainingArgs, workDir, destDir, compilerOptions, cache, out, err);
+
         Path srcFile = Path.of(remainingArgs[0]);
 
         String className = cmd.getOptionValue("class",
             FilenameUtils.getBaseName(srcFile.toString())
         );
         if (!isLegalClassName(className))
-            error("Illegal class name");
+            return error(err, "Illegal class name");
+
+        Compiler compiler = new Compiler(compilerOptions, err, cache, workDir);
+        boolean result = compiler.compile(srcFile, className, destDir);
+        return result ? 0 : 1;
+    }
+
+    // "--run <source file>" compiles the program and executes it in this JVM
+    private static int runInProcess(CommandLine cmd, String srcArg, Path workDir,
+                                    CompilerOptions compilerOptions, CompilationCache cache,
+                                    InputStream in, PrintStream out, PrintStream err) {
+        Path srcFile = Path.of(srcArg);
 
-        String dirArg = cmd.getOptionValue("directory",
-            System.getProperty("user.dir")
+        String className = cmd.getOptionValue("class",
+            FilenameUtils.getBaseName(srcFile.toString())
         );
-        Path destDir = Path.of(dirArg);
+        if (!isLegalClassName(className))
+            return error(err, "Illegal class name");
 
-        boolean result = new Compiler().compile(srcFile, className, destDir);
-        System.exit(result ? 0 : 1);
+        Compiler compiler = new Compiler(compilerOptions, err, cache, workDir);
+        try {
+            return compiler.compileAndRun(srcFile, className, in, out) ? 0 : 1;
+        } catch (ProgramRunner.ProgramException e) {
+            e.getCause().printStackTrace(err);
+            return 1;
+        }
     }
 
-    private static void printUsage(Options options) {
+    // Several source files are compiled in parallel, each into a class named after it
+    private static int runBatch(CommandLine cmd, String[] srcArgs, Path workDir, Path destDir,
+                                CompilerOptions compilerOptions, CompilationCache cache,
+                                PrintStream out, PrintStream err) {
+        if (cmd.hasOption("class"))
+            return error(err, "Option -c cannot be used with several source files");
+
+        List<Path> srcFiles = new ArrayList<>(srcArgs.length);
+        for (String srcArg : srcArgs) {
+            Path srcFile = Path.of(srcArg);
+            if (!isLegalClassName(FilenameUtils.getBaseName(srcFile.toString())))
+                return error(err, srcFile + ": Illegal class name");
+            srcFiles.add(srcFile);
+        }
+
+        boolean result = new BatchCompiler(compilerOptions, cache, workDir).compile(srcFiles, destDir, out, err);
+        return result ? 0 : 1;
+    }
+
+    // Runs a compile server until the process is killed
+    private static void serve() {
+        int port = CompileClient.port();
+        try {
+            new CompileServer(port, CompileClient.tokenFile()).serve();
+        } catch (IOException e) {
+            System.err.println("Cannot serve on port " + port + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void printUsage(Options options, PrintStream out) {
         String usage = String.join(LINE_SEP,
-            "java -jar notcc.jar <options> <source file>",
+            "java -jar notcc.jar <options> <source files>",
+            "       java -jar notcc.jar <options> --run <source file>",
             "where options include:"
         );
-        new HelpFormatter().printHelp(usage, options);
+        PrintWriter pw = new PrintWriter(out);
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.printHelp(pw, formatter.getWidth(), usage, null, options,
+                            formatter.getLeftPadding(), formatter.getDescPadding(), null);
+        pw.flush();
+    }
+
+    private static Optimization optimizationByName(String name) {
+        for (Optimization opt : Optimization.values()) {
+            if (opt.optionName().equals(name))
+                return opt;
+        }
+        return null;
+    }
+
+    private static Peephole.Rule peepholeRuleByName(String name) {
+        for (Peephole.Rule rule : Peephole.Rule.values()) {
+            if (rule.optionName().equals(name))
+                return rule;
+        }
+        return null;
     }
 
     private static boolean isLegalClassName(String s) {
@@ -71,9 +254,9 @@ public class Main {
         return true;
     }
 
-    private static void error(String... messages) {
-        System.err.println(String.join(LINE_SEP, messages));
-        System.exit(1);
+    private static int error(PrintStream err, String message) {
+        err.println(message);
+        return 1;
     }
 
     private static Options setUpOptions() {
@@ -84,7 +267,9 @@ public class Main {
             .argName("name")
             .desc("Name of generated class." +
                   LINE_SEP +
-                  "Defaults to base name of source file.")
+                  "Defaults to base name of source file." +
+                  LINE_SEP +
+                  "Only for a single source file.")
             .build());
         options.addOption(Option.builder("d")
             .longOpt("directory")
@@ -94,6 +279,125 @@ public class Main {
                   LINE_SEP +
                   "Defaults to working directory of invoking process.")
             .build());
+        options.addOption(Option.builder()
+            .longOpt("jasmin")
+            .desc("Assemble class file from Jasmin text" +
+                  LINE_SEP +
+                  "instead of generating bytecode directly.")
+            .build());
+        options.addOption(Option.builder()
+            .longOpt("run")
+            .hasArg()
+            .argName("file")
+            .desc("Compile a single source file and execute" +
+                  LINE_SEP +
+                  "it in this JVM without writing a class file.")
+            .build());
+        options.addOption(Option.builder()
+            .longOpt("runtime")
+            .desc("Call built-in functions in class notc.runtime" +
+                  LINE_SEP +
+                  "of notcc.jar instead of embedding them." +
+                  LINE_SEP +
+                  "The jar must then be on the class path" +
+                  LINE_SEP +
+                  "of the compiled program.")
+            .build());
+        options.addOption(Option.builder()
+            .longOpt("cache")
+            .hasArg()
+            .argName("path")
+            .desc("Directory of cache of compiled classes," +
+                  LINE_SEP +
+                  "reused for unchanged sources.")
+            .build());
+        options.addOption(Option.builder()
+            .longOpt("cache-size")
+            .hasArg()
+            .argName("MiB")
+            .desc("Size cap of cache, beyond which least" +
+                  LINE_SEP +
+                  "recently used classes are evicted." +
+                  LINE_SEP +
+                  "Defaults to " + DEFAULT_CACHE_SIZE + ".")
+            .build());
+        options.addOption(Option.builder()
+            .longOpt("disable")
+            .hasArg()
+            .argName("list")
+            .desc("Comma-separated optimizations to skip:" +
+                  LINE_SEP +
+                  Arrays.stream(Optimization.values())
+                      .map(Optimization::optionName)
+                      .collect(Collectors.joining(", ")) +
+                  ", or " + ALL_OPTIMIZATIONS + ".")
+            .build());
+        options.addOption(Option.builder()
+            .longOpt("disable-rules")
+            .hasArg()
+            .argName("list")
+            .desc("Comma-separated rules of the peephole" +
+                  LINE_SEP +
+                  "optimization to skip: " +
+                  Arrays.stream(Peephole.Rule.values())
+                      .map(Peephole.Rule::optionName)
+                      .collect(Collectors.joining(", ")) +
+                  ".")
+            .build());
+        options.addOption(Option.builder()
+            .longOpt("inline-limit")
+            .hasArg()
+            .argName("size")
+            .desc("Largest number of statements and" +
+                  LINE_SEP +
+                  "expressions in inlined functions." +
+                  LINE_SEP +
+                  "Defaults to " + Inliner.DEFAULT_LIMIT + ".")
+            .build());
+        options.addOption(Option.builder()
+            .longOpt("memoize")
+            .desc("Cache the results of recursive functions" +
+                  LINE_SEP +
+                  "that only compute from int and bool" +
+                  LINE_SEP +
+                  "arguments.")
+            .build());
+        options.addOption(Option.builder()
+            .longOpt("report-memoization")
+            .desc("Like --memoize, and print the hits and" +
+                  LINE_SEP +
+                  "misses of each cache when main returns.")
+            .build());
+        options.addOption(Option.builder()
+            .longOpt("report-inlining")
+            .desc("Print whether each call of a function" +
+                  LINE_SEP +
+                  "of the program is inlined, and if not, why.")
+            .build());
+        options.addOption(Option.builder()
+            .longOpt("report-unused")
+            .desc("Print the functions, including built-ins," +
+                  LINE_SEP +
+                  "that main never calls and that are left out.")
+            .build());
+        options.addOption(Option.builder()
+            .longOpt("report-subexpressions")
+            .desc("Print the expressions whose values are" +
+                  LINE_SEP +
+                  "reused instead of evaluated again.")
+            .build());
+        options.addOption(Option.builder()
+            .longOpt("report-peephole")
+            .desc("Print how many times each peephole rule" +
+                  LINE_SEP +
+                  "rewrote the generated code.")
+            .build());
+        options.addOption(Option.builder()
+            .longOpt("serve")
+            .desc("Run as compile server for CompileClient" +
+                  LINE_SEP +
+                  "on loopback port $NOTCC_PORT (default " + CompileClient.DEFAULT_PORT + ").")
+            .build());
         options.addOption(Option.builder("h")
             .longOpt("help")
             .desc("Print this message and exit.")
@@ -0,0 +1,69 @@
+package notc;
+
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+// Executes compiled programs in the running JVM, defining their classes
+// straight from memory instead of loading them from class files
+class ProgramRunner {
+
+    // Generated code reads System.in and writes System.out, which are global,
+    // so runs that redirect them take turns
+    private static final Object STDIO_LOCK = new Object();
+
+    private ProgramRunner() {}
+
+    // Defines the class className from classBytes in a class loader of its own
+    // and calls its main method with in and out as the standard streams
+    static void run(byte[] classBytes, String className, InputStream in, PrintStream out) {
+        Class<?> programClass = new ProgramClassLoader().define(className, classBytes);
+        MethodHandle main;
+        try {
+            main = MethodHandles.publicLookup().findStatic(
+                programClass, "main", MethodType.methodType(void.class, String[].class)
+            );
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException(className + " has no entry point", e);
+        }
+
+        synchronized (STDIO_LOCK) {
+            InputStream stdin = System.in;
+            PrintStream stdout = System.out;
+            System.setIn(in);
+            System.setOut(out);
+            try {
+                main.invokeExact(new String[0]);
+            } catch (Throwable t) {
+                throw new ProgramException(className, t);
+            } finally {
+                RuntimeOutput.flushCurrent();
+                out.flush();
+                System.setIn(stdin);
+                System.setOut(stdout);
+            }
+        }
+    }
+
+    // Wraps whatever a program threw, e.g. on division by zero
+    static class ProgramException extends RuntimeException {
+        ProgramException(String className, Throwable cause) {
+            super("Program " + className + " terminated by " + cause, cause);
+        }
+    }
+
+    // One per program so that classes of the same name do not clash
+    // and are unloaded along with the loader
+    private static class ProgramClassLoader extends ClassLoader {
+        ProgramClassLoader() {
+            super(ProgramRunner.class.getClassLoader());
+        }
+
+        Class<?> define(String className, byte[] classBytes) {
+            return defineClass(className, classBytes, 0, classBytes.length);
+        }
+    }
+
+}
@@ -0,0 +1,174 @@
+package notc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Standard input of programs using notc.runtime. One buffer is shared by all
+// reads, and ints and doubles are parsed straight from the bytes of a line.
+// Like the embedded built-ins, the reads skip lines that do not parse and
+// return zero values at end of input.
+final class RuntimeInput {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    private byte[] line;
+    private int lineLength;
+
+    // The stream is read through a buffer of its own
+    RuntimeInput(InputStream in) {
+        this.in = in;
+        buffer = new byte[BUFFER_SIZE];
+        line = new byte[128];
+    }
+
+    private static RuntimeInput current;
+
+    // Follows System.in if it is replaced, e.g. between programs run in the same JVM
+    static synchronized RuntimeInput get() {
+        if (current == null || current.in != System.in)
+            current = new RuntimeInput(System.in);
+        return current;
+    }
+
+    int readInt() {
+        while (nextLine()) {
+            int i = 0;
+            boolean negative = false;
+            if (lineLength > 0 && (line[0] == '-' || line[0] == '+')) {
+                negative = line[0] == '-';
+                ++i;
+            }
+            if (i == lineLength)
+                continue;
+            // Accumulated negatively so that Integer.MIN_VALUE fits
+            int min = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+            int result = 0;
+            for (; i < lineLength; ++i) {
+                int digit = line[i] - '0';
+                if (digit < 0 || digit > 9 || result < (min + digit) / 10)
+                    break;
+                result = result * 10 - digit;
+            }
+            if (i == lineLength)
+                return negative ? result : -result;
+            if (isNonAscii()) {
+                // Other scripts' digits are left to the library
+                try {
+                    return Integer.parseInt(lineAsString());
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+            }
+        }
+        return 0;
+    }
+
+    double readDouble() {
+        while (nextLine()) {
+            double fast = parseSimpleDecimal();
+            if (!Double.isNaN(fast))
+                return fast;
+            try {
+                return Double.parseDouble(lineAsString());
+            } catch (NumberFormatException e) {
+                continue;
+            }
+        }
+        return 0.0;
+    }
+
+    String readString() {
+        return nextLine() ? lineAsString() : "";
+    }
+
+    // Parses lines like "-12.375" whose value can be computed exactly and rounded
+    // once, i.e. at most 15 significant digits and 22 fraction digits.
+    // Returns NaN for anything else, which is then left to Double.parseDouble.
+    private double parseSimpleDecimal() {
+        int i = 0;
+        boolean negative = false;
+        if (lineLength > 0 && (line[0] == '-' || line[0] == '+')) {
+            negative = line[0] == '-';
+            ++i;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1; // Negative until the decimal point
+        for (; i < lineLength; ++i) {
+            byte b = line[i];
+            if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+                continue;
+            }
+            if (b < '0' || b > '9' || digits == 15)
+                return Double.NaN;
+            mantissa = mantissa * 10 + (b - '0');
+            ++digits;
+            if (fractionDigits >= 0)
+                ++fractionDigits;
+        }
+        if (digits == 0 || fractionDigits >= POWERS_OF_TEN.length)
+            return Double.NaN;
+        double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+        return negative ? -value : value;
+    }
+
+    // Copies the next line, without its terminator, into line.
+    // Returns false at end of input.
+    private boolean nextLine() {
+        lineLength = 0;
+        boolean any = false;
+        while (true) {
+            if (position == limit && !fill())
+                return any;
+            any = true;
+            byte b = buffer[position++];
+            if (b == '\n')
+                return true;
+            if (b == '\r')
+                continue;
+            if (lineLength == line.length)
+                line = Arrays.copyOf(line, lineLength * 2);
+            line[lineLength++] = b;
+        }
+    }
+
+    private boolean fill() {
+        // Prompts should be visible before waiting for input
+        RuntimeOutput.flushCurrent();
+        try {
+            int n = in.read(buffer);
+            if (n <= 0)
+                return false;
+            position = 0;
+            limit = n;
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean isNonAscii() {
+        for (int i = 0; i < lineLength; ++i) {
+            if (line[i] < 0)
+                return true;
+        }
+        return false;
+    }
+
+    private String lineAsString() {
+        return new String(line, 0, lineLength, StandardCharsets.UTF_8);
+    }
+
+}
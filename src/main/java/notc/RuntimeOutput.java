@@ -0,0 +1,143 @@
+package notc;
+
+import java.io.PrintStream;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+// Standard output of programs using notc.runtime. Values are formatted straight
+// into one reusable byte buffer, which is written to System.out in large chunks:
+// when full, before reading input, and when the program ends. Set the system
+// property notc.lineOutput to write each line at once instead, as println does.
+// Numbers, ASCII strings and line separators are written as ASCII bytes, which
+// encode the same in the charsets of standard output. Other strings are printed
+// by the wrapped stream, which encodes them with its own charset.
+final class RuntimeOutput {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte[] LINE_SEP = System.lineSeparator().getBytes(US_ASCII);
+    private static final boolean LINE_OUTPUT = Boolean.getBoolean("notc.lineOutput");
+
+    private final PrintStream out;
+    private final byte[] buffer;
+    private int length;
+
+    RuntimeOutput(PrintStream out) {
+        this.out = out;
+        buffer = new byte[BUFFER_SIZE];
+    }
+
+    private static RuntimeOutput current;
+
+    static {
+        // Also runs when the program ends with an uncaught exception
+        Runtime.getRuntime().addShutdownHook(new Thread(RuntimeOutput::flushCurrent));
+    }
+
+    // Follows System.out if it is replaced, e.g. between programs run in the same JVM
+    static synchronized RuntimeOutput get() {
+        if (current == null || current.out != System.out) {
+            if (current != null)
+                current.flush();
+            current = new RuntimeOutput(System.out);
+        }
+        return current;
+    }
+
+    static synchronized void flushCurrent() {
+        if (current != null)
+            current.flush();
+    }
+
+    void printInt(int i) {
+        ensureRoom(11 + LINE_SEP.length);
+        if (i < 0) {
+            buffer[length++] = '-';
+        } else {
+            i = -i; // Formatted as negative so that Integer.MIN_VALUE works
+        }
+        int start = length;
+        do {
+            buffer[length++] = (byte) ('0' - i % 10);
+            i /= 10;
+        } while (i != 0);
+        reverse(start, length - 1);
+        endLine();
+    }
+
+    // Whole numbers below 10^7 are written as digits followed by ".0",
+    // as Double.toString would. Other values are left to Double.toString.
+    void printDouble(double d) {
+        if (d == (int) d && Math.abs(d) < 1e7 && !(d == 0 && 1 / d < 0)) {
+            ensureRoom(11 + LINE_SEP.length);
+            int i = (int) d;
+            if (i < 0) {
+                buffer[length++] = '-';
+                i = -i;
+            }
+            int start = length;
+            do {
+                buffer[length++] = (byte) ('0' + i % 10);
+                i /= 10;
+            } while (i != 0);
+            reverse(start, length - 1);
+            buffer[length++] = '.';
+            buffer[length++] = '0';
+            endLine();
+        } else {
+            printString(Double.toString(d));
+        }
+    }
+
+    void printString(String s) {
+        if (s == null)
+            s = "null";
+        int len = s.length();
+        for (int i = 0; i < len; ++i) {
+            if (s.charAt(i) >= 0x80) {
+                // Kept in order with the buffered output
+                writeBuffer();
+                out.print(s);
+                endLine();
+                return;
+            }
+        }
+        for (int i = 0; i < len; ++i) {
+            if (length == buffer.length)
+                flush();
+            buffer[length++] = (byte) s.charAt(i);
+        }
+        endLine();
+    }
+
+    void flush() {
+        writeBuffer();
+        out.flush();
+    }
+
+    private void writeBuffer() {
+        if (length > 0) {
+            out.write(buffer, 0, length);
+            length = 0;
+        }
+    }
+
+    private void endLine() {
+        ensureRoom(LINE_SEP.length);
+        for (byte b : LINE_SEP)
+            buffer[length++] = b;
+        if (LINE_OUTPUT)
+            flush();
+    }
+
+    private void ensureRoom(int n) {
+        if (buffer.length - length < n)
+            flush();
+    }
+
+    private void reverse(int from, int to) {
+        while (from < to) {
+            byte b = buffer[from];
+            buffer[from++] = buffer[to];
+            buffer[to--] = b;
+        }
+    }
+
+}
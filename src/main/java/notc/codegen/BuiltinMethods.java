@@ -0,0 +1,187 @@
+package notc.codegen;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// The definitions in builtin_definitions.j, read once and replayed into each class
+// that is assembled directly. Only understands the subset of Jasmin the file uses.
+// The definitions refer to the class they end up in as "$this".
+final class BuiltinMethods {
+
+    private static final String THIS_CLASS = "$this/";
+
+    private static final Map<String,Opcode> OPCODE_BY_MNEMONIC = Arrays.stream(Opcode.values())
+        .collect(Collectors.toMap(op -> op.mnemonic, Function.identity()));
+
+    private static final List<Definition> DEFINITIONS = read();
+
+    private BuiltinMethods() {}
+
+    static void addTo(ClassFileWriter classFile, String className) {
+        addTo(classFile, className, names());
+    }
+
+    // Only the definitions of the functions named in called and those they call
+    static void addTo(ClassFileWriter classFile, String className, Set<String> called) {
+        for (Definition def : required(called)) {
+            CodeBuffer code = classFile.newCode();
+            for (String[] line : def.body) {
+                if (line.length == 1) {
+                    code.addLabel(line[0]);
+                } else {
+                    String operand = line[1] == null ? null : line[1].replace(THIS_CLASS, className + "/");
+                    code.addInstruction(OPCODE_BY_MNEMONIC.get(line[0]), operand);
+                }
+            }
+            for (String[] c : def.catches)
+                code.addExceptionHandler(c[1], c[2], c[3], c[0]);
+            classFile.addMethod(def.accessFlags, def.name, def.descriptor,
+                                code, def.maxStack, def.maxLocals);
+        }
+    }
+
+    static String text(String className) {
+        return resource().replace(THIS_CLASS, className + "/");
+    }
+
+    static String text(String className, Set<String> called) {
+        return required(called).stream()
+                               .map(def -> def.text.toString().replace(THIS_CLASS, className + "/"))
+                               .collect(Collectors.joining());
+    }
+
+    // Names of all definitions, including those only called by others
+    static Set<String> names() {
+        return DEFINITIONS.stream().map(def -> def.name).collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    // Names of the definitions of called and of the definitions they call
+    static Set<String> requiredNames(Set<String> called) {
+        Set<String> names = new HashSet<>(called);
+        boolean added;
+        do {
+            added = false;
+            for (Definition def : DEFINITIONS) {
+                if (names.contains(def.name))
+                    added |= names.addAll(def.calls);
+            }
+        } while (added);
+        return names;
+    }
+
+    // In file order
+    private static List<Definition> required(Set<String> called) {
+        Set<String> names = requiredNames(called);
+        return DEFINITIONS.stream().filter(def -> names.contains(def.name)).collect(Collectors.toList());
+    }
+
+    private static String resource() {
+        try (InputStream is = BuiltinMethods.class.getResourceAsStream("/builtin_definitions.j")) {
+            return IOUtils.toString(is, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<Definition> read() {
+        List<Definition> defs = new ArrayList<>();
+        Definition current = null;
+        for (String rawLine : resource().split("\\R")) {
+            String line = rawLine.trim();
+            if (line.startsWith(".method ")) {
+                current = new Definition(line.split("\\s+"));
+                defs.add(current);
+            }
+            if (current != null)
+                current.text.append(rawLine).append(System.lineSeparator());
+            if (line.isEmpty() || line.startsWith(";") || line.startsWith(".method "))
+                continue;
+            String[] words = line.split("\\s+");
+            switch (words[0]) {
+                case ".limit":
+                    int limit = Integer.parseInt(words[2]);
+                    if (words[1].equals("stack"))
+                        current.maxStack = limit;
+                    else
+                        current.maxLocals = limit;
+                    break;
+                case ".catch": // .catch <type> from <label> to <label> using <label>
+                    current.catches.add(new String[] {words[1], words[3], words[5], words[7]});
+                    break;
+                case ".end":
+                    current = null;
+                    break;
+                default:
+                    String[] instruction = parseInstruction(line, words[0]);
+                    if (instruction.length > 1 && instruction[1] != null && instruction[1].startsWith(THIS_CLASS))
+                        current.calls.add(instruction[1].substring(THIS_CLASS.length(), instruction[1].indexOf('(')));
+                    current.body.add(instruction);
+            }
+        }
+        return defs;
+    }
+
+    // Labels are returned as single elements, instructions as mnemonic and operand
+    private static String[] parseInstruction(String line, String mnemonic) {
+        if (line.endsWith(":"))
+            return new String[] {line.substring(0, line.length() - 1)};
+        String operand = line.length() > mnemonic.length()
+                       ? line.substring(mnemonic.length()).trim()
+                       : null;
+        if (!OPCODE_BY_MNEMONIC.containsKey(mnemonic)) {
+            // E.g. "iload_0"
+            int underscore = mnemonic.lastIndexOf('_');
+            operand = mnemonic.substring(underscore + 1);
+            mnemonic = mnemonic.substring(0, underscore);
+        }
+        return new String[] {mnemonic, operand};
+    }
+
+    private static class Definition {
+        final int accessFlags;
+        final String name;
+        final String descriptor;
+        final List<String[]> body;
+        final List<String[]> catches;
+        // Names of the definitions this one calls
+        final Set<String> calls;
+        // As in the file, from .method through .end method
+        final StringBuilder text;
+        int maxStack;
+        int maxLocals;
+
+        // .method <access flags> <name(descriptor)>
+        Definition(String[] header) {
+            int flags = 0;
+            for (int i = 1; i < header.length - 1; ++i) {
+                if (header[i].equals("public"))
+                    flags |= ClassFileWriter.ACC_PUBLIC;
+                else if (header[i].equals("static"))
+                    flags |= ClassFileWriter.ACC_STATIC;
+            }
+            accessFlags = flags;
+            String spec = header[header.length - 1];
+            int paren = spec.indexOf('(');
+            name = spec.substring(0, paren);
+            descriptor = spec.substring(paren);
+            body = new ArrayList<>();
+            catches = new ArrayList<>();
+            calls = new HashSet<>();
+            text = new StringBuilder();
+        }
+    }
+
+}
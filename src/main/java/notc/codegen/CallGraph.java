@@ -0,0 +1,125 @@
+package notc.codegen;
+
+import notc.antlrgen.NotCBaseVisitor;
+import notc.antlrgen.NotCParser.FunctionDefinitionContext;
+import notc.antlrgen.NotCParser.FunctionHeaderContext;
+import notc.antlrgen.NotCParser.StatementContext;
+import notc.antlrgen.NotCParser.FunctionCallExpressionContext;
+import notc.semantics.SymbolTable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// The calls between the functions of a program. Only the functions that main can
+// call, directly or through others, need to be generated, along with the built-ins
+// they call.
+public final class CallGraph {
+    private final List<FunctionDefinitionContext> funDefs;
+    // The defined functions and the names of the built-ins that each function calls
+    private final Map<FunctionDefinitionContext,Set<FunctionDefinitionContext>> callees;
+    private final Map<FunctionDefinitionContext,Set<String>> builtinCallees;
+    private final Set<FunctionDefinitionContext> reachable;
+    // Names of the built-in functions called by reachable functions
+    private final Set<String> calledBuiltins;
+
+    public CallGraph(List<FunctionDefinitionContext> funDefs, SymbolTable symTab) {
+        this.funDefs = funDefs;
+        Map<FunctionHeaderContext,FunctionDefinitionContext> definitions = new HashMap<>();
+        for (FunctionDefinitionContext funDef : funDefs)
+            definitions.put(funDef.header, funDef);
+        callees = new HashMap<>();
+        builtinCallees = new HashMap<>();
+        for (FunctionDefinitionContext funDef : funDefs) {
+            CallFinder finder = new CallFinder();
+            for (StatementContext stm : funDef.body)
+                stm.accept(finder);
+            callees.put(funDef, new LinkedHashSet<>());
+            builtinCallees.put(funDef, new LinkedHashSet<>());
+            for (FunctionCallExpressionContext call : finder.found) {
+                FunctionDefinitionContext callee = definitions.get(symTab.lookupFunction(call.id));
+                // Built-ins have no definitions
+                if (callee == null)
+                    builtinCallees.get(funDef).add(call.id.getText());
+                else
+                    callees.get(funDef).add(callee);
+            }
+        }
+
+        reachable = new HashSet<>();
+        calledBuiltins = new LinkedHashSet<>();
+        for (FunctionDefinitionContext funDef : funDefs) {
+            if (funDef.header.id.getText().equals("main")) {
+                reachable.add(funDef);
+                reachable.addAll(reachableFrom(funDef));
+            }
+        }
+        for (FunctionDefinitionContext funDef : funDefs) {
+            if (reachable.contains(funDef))
+                calledBuiltins.addAll(builtinCallees.get(funDef));
+        }
+    }
+
+    // The functions that caller calls, directly or through others
+    private Set<FunctionDefinitionContext> reachableFrom(FunctionDefinitionContext caller) {
+        Set<FunctionDefinitionContext> visited = new HashSet<>();
+        ArrayDeque<FunctionDefinitionContext> toVisit = new ArrayDeque<>();
+        toVisit.push(caller);
+        while (!toVisit.isEmpty()) {
+            for (FunctionDefinitionContext callee : callees.get(toVisit.pop())) {
+                if (visited.add(callee))
+                    toVisit.push(callee);
+            }
+        }
+        return visited;
+    }
+
+    // Whether funDef calls itself, directly or through others
+    boolean isRecursive(FunctionDefinitionContext funDef) {
+        return reachableFrom(funDef).contains(funDef);
+    }
+
+    // The functions that can be called from main, in the order they are defined
+    List<FunctionDefinitionContext> reachableDefinitions() {
+        return funDefs.stream().filter(reachable::contains).collect(Collectors.toList());
+    }
+
+    Set<String> calledBuiltins() {
+        return calledBuiltins;
+    }
+
+    // One line per function that is left out, with the built-ins if they are
+    // embedded in the generated class
+    public List<String> report(boolean builtinsEmbedded) {
+        List<String> lines = new ArrayList<>();
+        for (FunctionDefinitionContext funDef : funDefs) {
+            if (!reachable.contains(funDef))
+                lines.add("Line " + funDef.header.id.getLine() + ":" + funDef.header.id.getCharPositionInLine() +
+                          ": function " + funDef.header.id.getText() + " unused");
+        }
+        if (builtinsEmbedded) {
+            Set<String> unusedBuiltins = BuiltinMethods.names();
+            unusedBuiltins.removeAll(BuiltinMethods.requiredNames(calledBuiltins));
+            for (String name : unusedBuiltins)
+                lines.add("Built-in function " + name + " unused");
+        }
+        return lines;
+    }
+
+    private static class CallFinder extends NotCBaseVisitor<Void> {
+        final List<FunctionCallExpressionContext> found = new ArrayList<>();
+
+        @Override
+        public Void visitFunctionCallExpression(FunctionCallExpressionContext call) {
+            found.add(call);
+            return visitChildren(call);
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+package notc.codegen;
+
+import notc.antlrgen.NotCBaseVisitor;
+import notc.antlrgen.NotCParser.ProgramContext;
+import notc.semantics.SymbolTable;
+
+import java.util.List;
+
+// Generates the class file of a program directly, without going through Jasmin text
+public class ClassFileGenerator extends NotCBaseVisitor<byte[]> {
+    private final SymbolTable symTab;
+    private final String className;
+    private final CodegenOptions options;
+    // Of the last program generated
+    private List<String> peepholeReport = List.of();
+
+    public ClassFileGenerator(SymbolTable symTab, String className) {
+        this(symTab, className, CodegenOptions.DEFAULT);
+    }
+
+    public ClassFileGenerator(SymbolTable symTab, String className, CodegenOptions options) {
+        this.symTab = symTab;
+        this.className = className;
+        this.options = options;
+    }
+
+    // How often each peephole rule rewrote the methods of the last program generated
+    public List<String> peepholeReport() {
+        return peepholeReport;
+    }
+
+    // Entry point for code generator
+    @Override
+    public byte[] visitProgram(ProgramContext prog) {
+        ClassFileWriter classFile = new ClassFileWriter(className);
+
+        ProgramMethods program = new ProgramMethods(prog, symTab, options);
+        peepholeReport = program.peepholeReport;
+        for (String field : program.staticFields) {
+            int space = field.indexOf(' ');
+            classFile.addField(ClassFileWriter.ACC_STATIC, field.substring(0, space), field.substring(space + 1));
+        }
+
+        // Makes JVM entry point "void main(String[])" call generated "void main()"
+        CodeBuffer entryPoint = classFile.newCode();
+        entryPoint.addInstruction(Opcode.INVOKESTATIC, className + "/main()V");
+        if (program.reportsMemoization)
+            entryPoint.addInstruction(Opcode.INVOKESTATIC, className + "/" + Memoizer.REPORT_SPECIFICATION);
+        entryPoint.addInstruction(Opcode.RETURN, null);
+        classFile.addMethod(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_STATIC,
+                            "main", "([Ljava/lang/String;)V", entryPoint, 0, 1);
+
+        if (options.embedBuiltins && program.calledBuiltins == null)
+            BuiltinMethods.addTo(classFile, className);
+        else if (options.embedBuiltins)
+            BuiltinMethods.addTo(classFile, className, program.calledBuiltins);
+
+        // Assembles JVM methods from parse trees rooted at function definitions
+        for (JvmMethod method : program.methods)
+            method.addTo(classFile);
+
+        return classFile.toByteArray();
+    }
+
+}
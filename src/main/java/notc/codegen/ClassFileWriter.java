@@ -0,0 +1,100 @@
+package notc.codegen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+// Lays out a class file from methods assembled in CodeBuffers sharing its constant pool
+class ClassFileWriter {
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_STATIC = 0x0008;
+    private static final int ACC_SUPER = 0x0020;
+
+    // Java 5: old enough for the verifier to infer stack map frames by itself
+    private static final int MAJOR_VERSION = 49;
+
+    private final String className;
+    private final ConstantPool pool;
+    private final ByteArrayOutputStream fieldBytes;
+    private final DataOutputStream fields;
+    private int fieldCount;
+    private final ByteArrayOutputStream methodBytes;
+    private final DataOutputStream methods;
+    private int methodCount;
+
+    ClassFileWriter(String className) {
+        this.className = className;
+        pool = new ConstantPool();
+        fieldBytes = new ByteArrayOutputStream();
+        fields = new DataOutputStream(fieldBytes);
+        methodBytes = new ByteArrayOutputStream();
+        methods = new DataOutputStream(methodBytes);
+    }
+
+    CodeBuffer newCode() {
+        return new CodeBuffer(pool);
+    }
+
+    // Initialized to the default value of its type
+    void addField(int accessFlags, String name, String descriptor) {
+        try {
+            fields.writeShort(accessFlags);
+            fields.writeShort(pool.utf8(name));
+            fields.writeShort(pool.utf8(descriptor));
+            fields.writeShort(0); // No attributes
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ++fieldCount;
+    }
+
+    void addMethod(int accessFlags, String name, String descriptor,
+                   CodeBuffer code, int maxStack, int maxLocals) {
+        try {
+            ByteArrayOutputStream codeBytes = new ByteArrayOutputStream(code.size() + 16);
+            code.writeTo(new DataOutputStream(codeBytes));
+
+            methods.writeShort(accessFlags);
+            methods.writeShort(pool.utf8(name));
+            methods.writeShort(pool.utf8(descriptor));
+            methods.writeShort(1); // Only attribute is the code
+            methods.writeShort(pool.utf8("Code"));
+            methods.writeInt(2 + 2 + codeBytes.size() + 2);
+            methods.writeShort(maxStack);
+            methods.writeShort(maxLocals);
+            codeBytes.writeTo(methods);
+            methods.writeShort(0); // No attributes of the code
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ++methodCount;
+    }
+
+    byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(fieldBytes.size() + methodBytes.size() + 1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            int thisClass = pool.classRef(className);
+            int superClass = pool.classRef("java/lang/Object");
+            out.writeInt(0xcafebabe);
+            out.writeShort(0); // Minor version
+            out.writeShort(MAJOR_VERSION);
+            pool.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // No interfaces
+            out.writeShort(fieldCount);
+            fieldBytes.writeTo(out);
+            out.writeShort(methodCount);
+            methodBytes.writeTo(out);
+            out.writeShort(0); // No class attributes
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+}
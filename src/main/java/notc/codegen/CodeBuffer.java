@@ -0,0 +1,296 @@
+package notc.codegen;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Assembles instructions straight into the bytes of a method's Code attribute.
+// Operands are given in the same form as in Jasmin text. Constants and member
+// references go into the pool of the enclosing class, and jumps are resolved
+// once all labels are known.
+class CodeBuffer implements InstructionSink {
+
+    private static final int WIDE  = 0xc4;
+    private static final int LDC_W = 0x13;
+
+    // Operands of newarray
+    private static final Map<String,Integer> ARRAY_TYPES = Map.of(
+        "boolean", 4,
+        "double",  7,
+        "int",     10,
+        "long",    11
+    );
+
+    private final ConstantPool pool;
+    private final Map<String,Integer> labelOffsets;
+    private final List<Jump> jumps;
+    private final List<Handler> handlers;
+    private byte[] code;
+    private int length;
+
+    CodeBuffer(ConstantPool pool) {
+        this.pool = pool;
+        labelOffsets = new HashMap<>();
+        jumps = new ArrayList<>();
+        handlers = new ArrayList<>();
+        code = new byte[64];
+    }
+
+    @Override
+    public void addInstruction(Opcode op, String operand) {
+        switch (op) {
+            case ILOAD: case DLOAD: case ALOAD:
+            case ISTORE: case DSTORE: case ASTORE:
+                addLocalVariableInstruction(op, Integer.parseInt(operand));
+                break;
+            case IINC:
+                addIinc(operand);
+                break;
+            case LDC:
+                addLdc(operand);
+                break;
+            case BIPUSH:
+                write1(op.code);
+                write1(Integer.parseInt(operand));
+                break;
+            case SIPUSH:
+                write1(op.code);
+                write2(Integer.parseInt(operand));
+                break;
+            case LDC2_W:
+                write1(op.code);
+                write2(pool.doubleConstant(Double.parseDouble(operand)));
+                break;
+            case IF_ICMPLT: case IF_ICMPGT: case IF_ICMPGE:
+            case IF_ICMPLE: case IF_ICMPEQ: case IF_ICMPNE:
+            case IFEQ: case IFNE: case IFLT: case IFGE: case IFGT: case IFLE:
+            case IFNULL: case IFNONNULL: case GOTO:
+                jumps.add(new Jump(length, operand));
+                write1(op.code);
+                write2(0); // Patched when resolved
+                break;
+            case INVOKESTATIC: case INVOKEVIRTUAL: case INVOKESPECIAL:
+                write1(op.code);
+                write2(methodRef(operand));
+                break;
+            case GETSTATIC: case PUTSTATIC:
+                write1(op.code);
+                write2(fieldRef(operand));
+                break;
+            case NEWARRAY:
+                write1(op.code);
+                write1(ARRAY_TYPES.get(operand));
+                break;
+            case NEW:
+                write1(op.code);
+                write2(pool.classRef(operand));
+                break;
+            default:
+                if (operand != null)
+                    throw new IllegalArgumentException(op.mnemonic + " takes no operand");
+                write1(op.code);
+        }
+    }
+
+    @Override
+    public void addLabel(String label) {
+        if (labelOffsets.putIfAbsent(label, length) != null)
+            throw new IllegalArgumentException("Duplicate label " + label);
+    }
+
+    // Exceptions of class type thrown between labels from and to are handled at label using
+    void addExceptionHandler(String from, String to, String using, String type) {
+        handlers.add(new Handler(from, to, using, type));
+    }
+
+    // Uses the short forms (e.g. "iload_1") when available
+    private void addLocalVariableInstruction(Opcode op, int index) {
+        if (index <= 3) {
+            write1(SHORT_FORM_BASES.get(op) + index);
+        } else if (index <= 0xff) {
+            write1(op.code);
+            write1(index);
+        } else {
+            write1(WIDE);
+            write1(op.code);
+            write2(index);
+        }
+    }
+
+    // "index delta"
+    private void addIinc(String operand) {
+        String[] parts = operand.split(" ");
+        int index = Integer.parseInt(parts[0]);
+        int delta = Integer.parseInt(parts[1]);
+        if (index <= 0xff && delta >= Byte.MIN_VALUE && delta <= Byte.MAX_VALUE) {
+            write1(Opcode.IINC.code);
+            write1(index);
+            write1(delta);
+        } else {
+            write1(WIDE);
+            write1(Opcode.IINC.code);
+            write2(index);
+            write2(delta);
+        }
+    }
+
+    private static final Map<Opcode,Integer> SHORT_FORM_BASES = Map.of(
+        Opcode.ILOAD,  0x1a,
+        Opcode.DLOAD,  0x26,
+        Opcode.ALOAD,  0x2a,
+        Opcode.ISTORE, 0x3b,
+        Opcode.DSTORE, 0x47,
+        Opcode.ASTORE, 0x4b
+    );
+
+    // Quoted operands are strings, others ints.
+    // Like Jasmin, keeps the low 32 bits of literals that do not fit in an int.
+    private void addLdc(String operand) {
+        int index = operand.startsWith("\"") ? pool.string(unquote(operand))
+                                             : pool.integer((int) Long.parseLong(operand));
+        if (index <= 0xff) {
+            write1(Opcode.LDC.code);
+            write1(index);
+        } else {
+            write1(LDC_W);
+            write2(index);
+        }
+    }
+
+    // "owner/name(descriptor)" or "owner.name(descriptor)"
+    private int methodRef(String operand) {
+        int paren = operand.indexOf('(');
+        int sep = Math.max(operand.lastIndexOf('/', paren), operand.lastIndexOf('.', paren));
+        return pool.methodRef(operand.substring(0, sep),
+                              operand.substring(sep + 1, paren),
+                              operand.substring(paren));
+    }
+
+    // "owner.name descriptor"
+    private int fieldRef(String operand) {
+        int space = operand.indexOf(' ');
+        int sep = Math.max(operand.lastIndexOf('/', space), operand.lastIndexOf('.', space));
+        return pool.fieldRef(operand.substring(0, sep),
+                             operand.substring(sep + 1, space),
+                             operand.substring(space + 1).trim());
+    }
+
+    // Strips the quotes and interprets escape sequences the way Jasmin does
+    static String unquote(String literal) {
+        String s = literal.substring(1, literal.length() - 1);
+        if (s.indexOf('\\') < 0)
+            return s;
+        StringBuilder sb = new StringBuilder(s.length());
+        int len = s.length();
+        for (int i = 0; i < len; ++i) {
+            char c = s.charAt(i);
+            if (c != '\\' || i + 1 == len) {
+                sb.append(c);
+                continue;
+            }
+            char escaped = s.charAt(++i);
+            switch (escaped) {
+                case 'n': sb.append('\n'); break;
+                case 't': sb.append('\t'); break;
+                case 'r': sb.append('\r'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'u':
+                    if (i + 4 < len) {
+                        sb.append((char) Integer.parseInt(s.substring(i + 1, i + 5), 16));
+                        i += 4;
+                        break;
+                    }
+                    sb.append(escaped);
+                    break;
+                default:
+                    if (escaped >= '0' && escaped <= '7') {
+                        int end = i;
+                        while (end < len && end < i + 3 && s.charAt(end) >= '0' && s.charAt(end) <= '7')
+                            ++end;
+                        sb.append((char) Integer.parseInt(s.substring(i, end), 8));
+                        i = end - 1;
+                    } else {
+                        sb.append(escaped); // \\, \" and \'
+                    }
+            }
+        }
+        return sb.toString();
+    }
+
+    private void write1(int b) {
+        if (length == code.length)
+            code = Arrays.copyOf(code, length * 2);
+        code[length++] = (byte) b;
+    }
+
+    private void write2(int s) {
+        write1(s >>> 8);
+        write1(s);
+    }
+
+    private int offsetOf(String label) {
+        Integer offset = labelOffsets.get(label);
+        if (offset == null)
+            throw new IllegalArgumentException("Undefined label " + label);
+        return offset;
+    }
+
+    private void resolveJumps() {
+        for (Jump jump : jumps) {
+            int relative = offsetOf(jump.label) - jump.offset;
+            if (relative != (short) relative)
+                throw new IllegalStateException("Jump to " + jump.label + " out of range");
+            code[jump.offset + 1] = (byte) (relative >>> 8);
+            code[jump.offset + 2] = (byte) relative;
+        }
+        jumps.clear();
+    }
+
+    int size() {
+        return length;
+    }
+
+    // Code length, code and exception table, as laid out in the Code attribute
+    void writeTo(DataOutputStream out) throws IOException {
+        resolveJumps();
+        out.writeInt(length);
+        out.write(code, 0, length);
+        out.writeShort(handlers.size());
+        for (Handler h : handlers) {
+            out.writeShort(offsetOf(h.from));
+            out.writeShort(offsetOf(h.to));
+            out.writeShort(offsetOf(h.using));
+            out.writeShort(pool.classRef(h.type));
+        }
+    }
+
+    private static class Jump {
+        final int offset;
+        final String label;
+
+        Jump(int offset, String label) {
+            this.offset = offset;
+            this.label = label;
+        }
+    }
+
+    private static class Handler {
+        final String from;
+        final String to;
+        final String using;
+        final String type;
+
+        Handler(String from, String to, String using, String type) {
+            this.from = from;
+            this.to = to;
+            this.using = using;
+            this.type = type;
+        }
+    }
+
+}
@@ -0,0 +1,45 @@
+package notc.codegen;
+
+import notc.codegen.ControlFlowGraph.BasicBlock;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Checks that the code of a method is well-formed before it is written out,
+// so that mistakes in the generator or in optimization passes are caught
+// with a description rather than as a VerifyError when the program is loaded.
+final class CodeVerifier {
+
+    private CodeVerifier() {}
+
+    // Throws IllegalStateException describing the first problem found
+    static void verify(String methodName, List<Instruction> code) {
+        Set<String> labels = new HashSet<>();
+        for (Instruction instr : code) {
+            if (instr.isLabel() && !labels.add(instr.operand))
+                fail(methodName, "label " + instr.operand + " defined more than once");
+            if (instr.takesOperand() != (instr.operand != null))
+                fail(methodName, instr.op.mnemonic + (instr.operand == null ? " lacks" : " takes no")
+                                 + " operand");
+        }
+        for (Instruction instr : code)
+            if (instr.isJump() && !labels.contains(instr.operand))
+                fail(methodName, "jump to undefined label " + instr.operand);
+
+        ControlFlowGraph cfg = new ControlFlowGraph(code);
+        try {
+            cfg.maxStackDepth(); // Checks stack depths
+        } catch (IllegalStateException e) {
+            fail(methodName, e.getMessage());
+        }
+        for (BasicBlock block : cfg.blocks())
+            if (block.fallsOffEnd && cfg.isReachable(block))
+                fail(methodName, "execution can fall off the end of the code");
+    }
+
+    private static void fail(String methodName, String problem) {
+        throw new IllegalStateException(methodName + ": " + problem);
+    }
+
+}
@@ -0,0 +1,61 @@
+package notc.codegen;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+// Settings of the code generators. Immutable; each setter returns a modified copy.
+public final class CodegenOptions {
+    public static final CodegenOptions DEFAULT =
+        new CodegenOptions(true, Collections.unmodifiableSet(EnumSet.noneOf(Optimization.class)),
+                           Inliner.DEFAULT_LIMIT, Memoization.NONE,
+                           Collections.unmodifiableSet(EnumSet.allOf(Peephole.Rule.class)));
+
+    // Unless set, calls to built-in functions are expected to target
+    // a class other than the generated one
+    final boolean embedBuiltins;
+    // Applied to the methods of the program. None by default.
+    final Set<Optimization> optimizations;
+    // Largest size of inlined functions, if inlining is among optimizations
+    final int inlineLimit;
+    // Whether results of recursive pure functions are cached
+    final Memoization memoization;
+    // Applied by the peephole pass, if it is among optimizations. All by default.
+    final Set<Peephole.Rule> peepholeRules;
+
+    private CodegenOptions(boolean embedBuiltins, Set<Optimization> optimizations, int inlineLimit,
+                           Memoization memoization, Set<Peephole.Rule> peepholeRules) {
+        this.embedBuiltins = embedBuiltins;
+        this.optimizations = optimizations;
+        this.inlineLimit = inlineLimit;
+        this.memoization = memoization;
+        this.peepholeRules = peepholeRules;
+    }
+
+    public CodegenOptions embedBuiltins(boolean embedBuiltins) {
+        return new CodegenOptions(embedBuiltins, optimizations, inlineLimit, memoization, peepholeRules);
+    }
+
+    public CodegenOptions optimizations(Set<Optimization> optimizations) {
+        Set<Optimization> copy = EnumSet.noneOf(Optimization.class);
+        copy.addAll(optimizations);
+        return new CodegenOptions(embedBuiltins, Collections.unmodifiableSet(copy), inlineLimit, memoization,
+                                  peepholeRules);
+    }
+
+    public CodegenOptions inlineLimit(int inlineLimit) {
+        return new CodegenOptions(embedBuiltins, optimizations, inlineLimit, memoization, peepholeRules);
+    }
+
+    public CodegenOptions memoization(Memoization memoization) {
+        return new CodegenOptions(embedBuiltins, optimizations, inlineLimit, memoization, peepholeRules);
+    }
+
+    public CodegenOptions peepholeRules(Set<Peephole.Rule> peepholeRules) {
+        Set<Peephole.Rule> copy = EnumSet.noneOf(Peephole.Rule.class);
+        copy.addAll(peepholeRules);
+        return new CodegenOptions(embedBuiltins, optimizations, inlineLimit, memoization,
+                                  Collections.unmodifiableSet(copy));
+    }
+
+}
@@ -0,0 +1,410 @@
+package notc.codegen;
+
+import notc.antlrgen.NotCBaseVisitor;
+import notc.antlrgen.NotCParser.FunctionDefinitionContext;
+import notc.antlrgen.NotCParser.FunctionHeaderContext;
+import notc.antlrgen.NotCParser.VariableDeclarationContext;
+import notc.antlrgen.NotCParser.StatementContext;
+import notc.antlrgen.NotCParser.InitializationStatementContext;
+import notc.antlrgen.NotCParser.ExpressionStatementContext;
+import notc.antlrgen.NotCParser.ReturnStatementContext;
+import notc.antlrgen.NotCParser.BlockStatementContext;
+import notc.antlrgen.NotCParser.ForStatementContext;
+import notc.antlrgen.NotCParser.WhileStatementContext;
+import notc.antlrgen.NotCParser.IfStatementContext;
+import notc.antlrgen.NotCParser.IfElseStatementContext;
+import notc.antlrgen.NotCParser.ExpressionContext;
+import notc.antlrgen.NotCParser.NegationExpressionContext;
+import notc.antlrgen.NotCParser.FalseLiteralExpressionContext;
+import notc.antlrgen.NotCParser.TrueLiteralExpressionContext;
+import notc.antlrgen.NotCParser.DoubleLiteralExpressionContext;
+import notc.antlrgen.NotCParser.IntLiteralExpressionContext;
+import notc.antlrgen.NotCParser.VariableExpressionContext;
+import notc.antlrgen.NotCParser.FunctionCallExpressionContext;
+import notc.antlrgen.NotCParser.IncrementExpressionContext;
+import notc.antlrgen.NotCParser.DecrementExpressionContext;
+import notc.antlrgen.NotCParser.ArithmeticExpressionContext;
+import notc.antlrgen.NotCParser.ComparisonExpressionContext;
+import notc.antlrgen.NotCParser.BinaryBooleanExpressionContext;
+import notc.antlrgen.NotCParser.AssignmentExpressionContext;
+import notc.antlrgen.NotCParser.ParenthesizedExpressionContext;
+import notc.semantics.ConstantFolder;
+import notc.semantics.Purity;
+import notc.semantics.SymbolTable;
+
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.misc.Interval;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Finds the expressions that are evaluated again with the same operands in
+// straight-line code, so that the first evaluation can be kept in a new local
+// variable for the others. Those are arithmetic and calls of pure functions,
+// without assignments, increments or decrements. Straight-line code runs from
+// the start of a block to the next loop or if, including the condition of the
+// if, and continues into nested blocks and branches, but not past them. The
+// condition and advancement of a loop are each on their own. Assignments,
+// increments and decrements of a variable end the reuse of the values computed
+// from it, while calls cannot assign the variables of their callers. Values
+// computed in the second operand of && and || are only reused within it, as
+// it is not always evaluated.
+public final class CommonSubexpressions {
+    private final SymbolTable symTab;
+    private final Purity purity;
+    private final Map<FunctionHeaderContext,FunctionDefinitionContext> definitions;
+    // Each occurrence of an expression with others, and the first of them
+    private final Map<ExpressionContext,ExpressionContext> firstOccurrences;
+    private final Set<ExpressionContext> lastOccurrences;
+    // Occurrences of each reused expression in each function, in order
+    private final Map<FunctionDefinitionContext,List<List<ExpressionContext>>> reused;
+    // Identifies variables in keys
+    private final Map<VariableDeclarationContext,Integer> variableIds;
+
+    public CommonSubexpressions(List<FunctionDefinitionContext> funDefs, SymbolTable symTab) {
+        this.symTab = symTab;
+        purity = new Purity(funDefs, symTab);
+        definitions = new HashMap<>();
+        for (FunctionDefinitionContext funDef : funDefs)
+            definitions.put(funDef.header, funDef);
+        firstOccurrences = new HashMap<>();
+        lastOccurrences = new HashSet<>();
+        reused = new LinkedHashMap<>();
+        variableIds = new HashMap<>();
+        for (FunctionDefinitionContext funDef : funDefs) {
+            reused.put(funDef, new ArrayList<>());
+            new RegionFinder(funDef).analyze(funDef.body);
+        }
+    }
+
+    // The first occurrence of an expression evaluated again with the same
+    // value, which may be expr itself, or null if it is not reused
+    ExpressionContext firstOccurrence(ExpressionContext expr) {
+        return firstOccurrences.get(expr);
+    }
+
+    boolean isLastOccurrence(ExpressionContext expr) {
+        return lastOccurrences.contains(expr);
+    }
+
+    // One line per expression that is evaluated once for several occurrences,
+    // and a line with the number of evaluations left out in total
+    public List<String> report() {
+        List<String> lines = new ArrayList<>();
+        int eliminated = 0;
+        for (Map.Entry<FunctionDefinitionContext,List<List<ExpressionContext>>> entry : reused.entrySet()) {
+            for (List<ExpressionContext> occurrences : entry.getValue()) {
+                ExpressionContext first = occurrences.get(0);
+                lines.add("Line " + first.start.getLine() + ":" + first.start.getCharPositionInLine() +
+                          ": " + sourceText(first) + " evaluated once for " + occurrences.size() +
+                          " occurrences in " + entry.getKey().header.id.getText());
+                eliminated += occurrences.size() - 1;
+            }
+        }
+        lines.add(eliminated + " evaluations eliminated");
+        return lines;
+    }
+
+    private static String sourceText(ExpressionContext expr) {
+        Interval interval = Interval.of(expr.start.getStartIndex(), expr.stop.getStopIndex());
+        return expr.start.getInputStream().getText(interval);
+    }
+
+    // Whether expr computes a value from its operands alone, and is worth keeping
+    private boolean isCandidate(ExpressionContext expr) {
+        if (expr.type.isVoid() || expr.type.isString())
+            return false;
+        if (expr instanceof ArithmeticExpressionContext)
+            return true;
+        if (!(expr instanceof FunctionCallExpressionContext))
+            return false;
+        FunctionDefinitionContext callee = definitions.get(symTab.lookupFunction(((FunctionCallExpressionContext) expr).id));
+        // Built-ins read or print
+        return callee != null && purity.isPure(callee);
+    }
+
+    // The statements of a function that are evaluated one after the other
+    // without jumps in between
+    private class RegionFinder extends NotCBaseVisitor<Void> {
+        private final FunctionDefinitionContext funDef;
+        // Occurrences of the expressions evaluated in the function, by first occurrence
+        private final List<List<ExpressionContext>> occurrences = new ArrayList<>();
+        // Variables each key reads
+        private final Map<String,Set<VariableDeclarationContext>> operands = new HashMap<>();
+        private Region region;
+
+        RegionFinder(FunctionDefinitionContext funDef) {
+            this.funDef = funDef;
+        }
+
+        void analyze(List<StatementContext> body) {
+            analyze(body, null);
+            for (List<ExpressionContext> occurrencesOfExpr : occurrences) {
+                if (occurrencesOfExpr.size() < 2)
+                    continue;
+                for (ExpressionContext occurrence : occurrencesOfExpr)
+                    firstOccurrences.put(occurrence, occurrencesOfExpr.get(0));
+                lastOccurrences.add(occurrencesOfExpr.get(occurrencesOfExpr.size() - 1));
+                reused.get(funDef).add(occurrencesOfExpr);
+            }
+        }
+
+        // Statements that can reuse the values available at the end of
+        // inherited, if not null, which is where they start
+        private void analyze(List<StatementContext> stms, Region inherited) {
+            Region outer = region;
+            region = new Region(inherited);
+            for (StatementContext stm : stms)
+                stm.accept(this);
+            region = outer;
+        }
+
+        // An expression evaluated by itself, e.g. a loop condition
+        private void analyzeAlone(ExpressionContext expr) {
+            if (expr == null)
+                return;
+            Region outer = region;
+            region = new Region(null);
+            region.walk(expr);
+            region = outer;
+        }
+
+        @Override
+        public Void visitInitializationStatement(InitializationStatementContext initStm) {
+            region.walk(initStm.expr);
+            region.write(initStm.varDecl);
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStatement(ExpressionStatementContext exprStm) {
+            region.walk(exprStm.expr);
+            return null;
+        }
+
+        @Override
+        public Void visitReturnStatement(ReturnStatementContext returnStm) {
+            if (returnStm.expr != null)
+                region.walk(returnStm.expr);
+            region = new Region(null);
+            return null;
+        }
+
+        // Generated in a scope of its own, so that what it computes is gone after it
+        @Override
+        public Void visitBlockStatement(BlockStatementContext block) {
+            analyze(block.statements, region);
+            region = new Region(null);
+            return null;
+        }
+
+        // The branches start where the condition is evaluated
+        @Override
+        public Void visitIfStatement(IfStatementContext ifStm) {
+            region.walk(ifStm.conditionExpr);
+            analyze(List.of(ifStm.consequentStm), region);
+            region = new Region(null);
+            return null;
+        }
+
+        @Override
+        public Void visitIfElseStatement(IfElseStatementContext ifElseStm) {
+            region.walk(ifElseStm.conditionExpr);
+            analyze(List.of(ifElseStm.consequentStm), region);
+            analyze(List.of(ifElseStm.altStm), region);
+            region = new Region(null);
+            return null;
+        }
+
+        // Loop bodies are generated before the conditions that lead to them
+        @Override
+        public Void visitWhileStatement(WhileStatementContext whileStm) {
+            analyzeAlone(whileStm.conditionExpr);
+            analyze(List.of(whileStm.loopedStm), null);
+            region = new Region(null);
+            return null;
+        }
+
+        @Override
+        public Void visitForStatement(ForStatementContext forStm) {
+            if (forStm.initExpr != null)
+                region.walk(forStm.initExpr);
+            analyzeAlone(forStm.conditionExpr);
+            analyze(List.of(forStm.body), null);
+            analyzeAlone(forStm.advanceExpr);
+            region = new Region(null);
+            return null;
+        }
+
+        // Expressions available for reuse at a point of a region
+        private class Region {
+            // Occurrences of the expressions that can still be reused, by key
+            private final Map<String,List<ExpressionContext>> available;
+
+            Region(Region inherited) {
+                available = inherited == null ? new HashMap<>() : new HashMap<>(inherited.available);
+            }
+
+            // Visits the parts of expr in the order they are evaluated
+            void walk(ExpressionContext expr) {
+                if (ConstantFolder.valueOf(expr) != null)
+                    return; // Not generated as operations
+                String key = isCandidate(expr) ? new KeyBuilder().keyOf(expr) : null;
+                if (key != null && available.containsKey(key)) {
+                    available.get(key).add(expr);
+                    return;
+                }
+
+                if (expr instanceof ParenthesizedExpressionContext) {
+                    walk(((ParenthesizedExpressionContext) expr).expr);
+                } else if (expr instanceof NegationExpressionContext) {
+                    walk(((NegationExpressionContext) expr).opnd);
+                } else if (expr instanceof ArithmeticExpressionContext) {
+                    walk(((ArithmeticExpressionContext) expr).opnd1);
+                    walk(((ArithmeticExpressionContext) expr).opnd2);
+                } else if (expr instanceof ComparisonExpressionContext) {
+                    walk(((ComparisonExpressionContext) expr).opnd1);
+                    walk(((ComparisonExpressionContext) expr).opnd2);
+                } else if (expr instanceof BinaryBooleanExpressionContext) {
+                    walk(((BinaryBooleanExpressionContext) expr).opnd1);
+                    walkConditional(((BinaryBooleanExpressionContext) expr).opnd2);
+                } else if (expr instanceof FunctionCallExpressionContext) {
+                    ((FunctionCallExpressionContext) expr).args.forEach(this::walk);
+                } else if (expr instanceof AssignmentExpressionContext) {
+                    walk(((AssignmentExpressionContext) expr).rhs);
+                    write(symTab.lookupVariable(((AssignmentExpressionContext) expr).varId));
+                } else if (expr instanceof IncrementExpressionContext) {
+                    write(symTab.lookupVariable(((IncrementExpressionContext) expr).varId));
+                } else if (expr instanceof DecrementExpressionContext) {
+                    write(symTab.lookupVariable(((DecrementExpressionContext) expr).varId));
+                }
+
+                if (key != null) {
+                    List<ExpressionContext> occurrencesOfKey = new ArrayList<>();
+                    occurrencesOfKey.add(expr);
+                    occurrences.add(occurrencesOfKey);
+                    available.put(key, occurrencesOfKey);
+                    operands.computeIfAbsent(key, k -> new KeyBuilder().variablesOf(expr));
+                }
+            }
+
+            // An operand that may not be evaluated. It can reuse what is computed
+            // before it, but what it computes cannot be reused after it.
+            private void walkConditional(ExpressionContext expr) {
+                Map<String,List<ExpressionContext>> before = new HashMap<>(available);
+                walk(expr);
+                available.entrySet().removeIf(entry -> before.get(entry.getKey()) != entry.getValue());
+            }
+
+            // Values computed from varDecl before can no longer be reused
+            void write(VariableDeclarationContext varDecl) {
+                available.keySet().removeIf(key -> operands.get(key).contains(varDecl));
+            }
+        }
+    }
+
+    // A string that is the same for expressions that compute the same value from
+    // the same variables, or null if the expression has effects besides its value
+    private class KeyBuilder extends NotCBaseVisitor<String> {
+        private final Set<VariableDeclarationContext> variables = new HashSet<>();
+
+        String keyOf(ExpressionContext expr) {
+            return expr.accept(this);
+        }
+
+        Set<VariableDeclarationContext> variablesOf(ExpressionContext expr) {
+            expr.accept(this);
+            return variables;
+        }
+
+        @Override
+        protected String defaultResult() {
+            return null;
+        }
+
+        private String combine(String... parts) {
+            for (String part : parts) {
+                if (part == null)
+                    return null;
+            }
+            return String.join(" ", parts);
+        }
+
+        @Override
+        public String visitParenthesizedExpression(ParenthesizedExpressionContext paren) {
+            return paren.expr.accept(this);
+        }
+
+        @Override
+        public String visitNegationExpression(NegationExpressionContext negation) {
+            return combine("(-", negation.opnd.accept(this), ")");
+        }
+
+        @Override
+        public String visitFalseLiteralExpression(FalseLiteralExpressionContext falseLitExpr) {
+            return "0";
+        }
+
+        @Override
+        public String visitTrueLiteralExpression(TrueLiteralExpressionContext trueLitExpr) {
+            return "1";
+        }
+
+        // Double literals are told apart from ints by their decimal point
+        @Override
+        public String visitDoubleLiteralExpression(DoubleLiteralExpressionContext doubleLitExpr) {
+            return String.valueOf(Double.parseDouble(doubleLitExpr.value.getText()));
+        }
+
+        @Override
+        public String visitIntLiteralExpression(IntLiteralExpressionContext intLitExpr) {
+            return String.valueOf((int) Long.parseLong(intLitExpr.value.getText()));
+        }
+
+        @Override
+        public String visitVariableExpression(VariableExpressionContext varExpr) {
+            VariableDeclarationContext varDecl = symTab.lookupVariable(varExpr.varId);
+            variables.add(varDecl);
+            variableIds.putIfAbsent(varDecl, variableIds.size());
+            return "$" + variableIds.get(varDecl);
+        }
+
+        @Override
+        public String visitFunctionCallExpression(FunctionCallExpressionContext call) {
+            if (!isCandidate(call))
+                return null;
+            List<String> parts = new ArrayList<>();
+            parts.add(symTab.lookupFunction(call.id).fqn);
+            parts.add("(");
+            for (ExpressionContext arg : call.args)
+                parts.add(arg.accept(this));
+            parts.add(")");
+            return combine(parts.toArray(new String[0]));
+        }
+
+        @Override
+        public String visitArithmeticExpression(ArithmeticExpressionContext arithmExpr) {
+            return binary(arithmExpr.opnd1, arithmExpr.op, arithmExpr.opnd2);
+        }
+
+        @Override
+        public String visitComparisonExpression(ComparisonExpressionContext compExpr) {
+            return binary(compExpr.opnd1, compExpr.op, compExpr.opnd2);
+        }
+
+        @Override
+        public String visitBinaryBooleanExpression(BinaryBooleanExpressionContext binBoolExpr) {
+            return binary(binBoolExpr.opnd1, binBoolExpr.op, binBoolExpr.opnd2);
+        }
+
+        private String binary(ExpressionContext opnd1, Token op, ExpressionContext opnd2) {
+            return combine("(", opnd1.accept(this), op.getText(), opnd2.accept(this), ")");
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+package notc.codegen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Constant pool of a class file being written. Entries are added on demand,
+// identical entries are shared, and the returned indices are what instructions refer to.
+class ConstantPool {
+
+    private static final int UTF8         = 1;
+    private static final int INTEGER      = 3;
+    private static final int DOUBLE       = 6;
+    private static final int CLASS        = 7;
+    private static final int STRING       = 8;
+    private static final int FIELDREF     = 9;
+    private static final int METHODREF    = 10;
+    private static final int NAME_AND_TYPE = 12;
+
+    private final Map<List<Object>,Integer> indices;
+    private final ByteArrayOutputStream bytes;
+    private final DataOutputStream entries;
+    private int nextIndex;
+
+    ConstantPool() {
+        indices = new HashMap<>();
+        bytes = new ByteArrayOutputStream();
+        entries = new DataOutputStream(bytes);
+        nextIndex = 1; // Index 0 is reserved
+    }
+
+    int utf8(String s) {
+        List<Object> key = List.of(UTF8, s);
+        Integer index = indices.get(key);
+        if (index != null)
+            return index;
+        try {
+            entries.writeByte(UTF8);
+            entries.writeUTF(s);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return register(key, 1);
+    }
+
+    int integer(int value) {
+        List<Object> key = List.of(INTEGER, value);
+        Integer index = indices.get(key);
+        if (index != null)
+            return index;
+        write(INTEGER);
+        write4(value);
+        return register(key, 1);
+    }
+
+    // Takes up two slots in the pool
+    int doubleConstant(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        List<Object> key = List.of(DOUBLE, bits);
+        Integer index = indices.get(key);
+        if (index != null)
+            return index;
+        write(DOUBLE);
+        write4((int) (bits >>> 32));
+        write4((int) bits);
+        return register(key, 2);
+    }
+
+    int string(String s) {
+        return reference(STRING, utf8(s), 0);
+    }
+
+    // Internal name, e.g. "java/lang/Object"
+    int classRef(String internalName) {
+        return reference(CLASS, utf8(internalName), 0);
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return reference(FIELDREF, classRef(owner), nameAndType(name, descriptor));
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return reference(METHODREF, classRef(owner), nameAndType(name, descriptor));
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        return reference(NAME_AND_TYPE, utf8(name), utf8(descriptor));
+    }
+
+    // Entries made up of one or two indices of other entries (second is 0 if absent)
+    private int reference(int tag, int first, int second) {
+        List<Object> key = List.of(tag, first, second);
+        Integer index = indices.get(key);
+        if (index != null)
+            return index;
+        write(tag);
+        write2(first);
+        if (second != 0)
+            write2(second);
+        return register(key, 1);
+    }
+
+    private int register(List<Object> key, int slotCount) {
+        int index = nextIndex;
+        if (index + slotCount > 0xffff)
+            throw new IllegalStateException("Constant pool overflow");
+        indices.put(key, index);
+        nextIndex += slotCount;
+        return index;
+    }
+
+    private void write(int b) {
+        bytes.write(b);
+    }
+
+    private void write2(int s) {
+        bytes.write(s >>> 8);
+        bytes.write(s);
+    }
+
+    private void write4(int i) {
+        write2(i >>> 16);
+        write2(i);
+    }
+
+    // Count followed by the entries
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeShort(nextIndex);
+        bytes.writeTo(out);
+    }
+
+}
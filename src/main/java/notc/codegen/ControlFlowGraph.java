@@ -0,0 +1,138 @@
+package notc.codegen;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Basic block view of the code of a method. A block starts at the first instruction,
+// at a label, or after a jump or return, and is only entered at its start.
+// Jumps to labels that are not defined get no edge; the verifier reports them.
+final class ControlFlowGraph {
+
+    static final class BasicBlock {
+        final int index;
+        // Range of instructions, end exclusive
+        final int start;
+        final int end;
+        final List<BasicBlock> successors = new ArrayList<>();
+        // Execution can continue past the end of the code from this block
+        boolean fallsOffEnd;
+
+        private BasicBlock(int index, int start, int end) {
+            this.index = index;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private final List<Instruction> code;
+    private final List<BasicBlock> blocks;
+    // Stack depth on entry to each block, or -1 if the block is unreachable
+    private int[] entryDepths;
+    private int maxStackDepth;
+
+    ControlFlowGraph(List<Instruction> code) {
+        this.code = code;
+        blocks = new ArrayList<>();
+        Map<String,BasicBlock> blockByLabel = new HashMap<>();
+
+        int start = 0;
+        for (int i = 0; i < code.size(); ++i) {
+            Instruction instr = code.get(i);
+            if (instr.isLabel() && i > start) {
+                blocks.add(new BasicBlock(blocks.size(), start, i));
+                start = i;
+            }
+            if (instr.isJump() || instr.isReturn()) {
+                blocks.add(new BasicBlock(blocks.size(), start, i + 1));
+                start = i + 1;
+            }
+        }
+        if (start < code.size() || blocks.isEmpty())
+            blocks.add(new BasicBlock(blocks.size(), start, code.size()));
+
+        for (BasicBlock block : blocks)
+            for (int i = block.start; i < block.end && code.get(i).isLabel(); ++i)
+                blockByLabel.putIfAbsent(code.get(i).operand, block);
+
+        for (BasicBlock block : blocks) {
+            Instruction last = (block.end > block.start) ? code.get(block.end - 1) : null;
+            if (last != null && last.isJump()) {
+                BasicBlock target = blockByLabel.get(last.operand);
+                if (target != null)
+                    block.successors.add(target);
+            }
+            if (last == null || !last.endsFlow()) {
+                if (block.index + 1 < blocks.size())
+                    block.successors.add(blocks.get(block.index + 1));
+                else
+                    block.fallsOffEnd = true;
+            }
+        }
+    }
+
+    List<BasicBlock> blocks() {
+        return blocks;
+    }
+
+    List<Instruction> instructions(BasicBlock block) {
+        return code.subList(block.start, block.end);
+    }
+
+    boolean isReachable(BasicBlock block) {
+        return entryDepths()[block.index] >= 0;
+    }
+
+    // Stack depth on entry to a block
+    int entryDepth(BasicBlock block) {
+        return entryDepths()[block.index];
+    }
+
+    // Largest operand stack depth on any path through the code
+    int maxStackDepth() {
+        entryDepths();
+        return maxStackDepth;
+    }
+
+    // Propagates stack depths from the entry block to all reachable blocks.
+    // Throws IllegalStateException if the depth goes negative or differs
+    // between paths into a block.
+    private int[] entryDepths() {
+        if (entryDepths != null)
+            return entryDepths;
+        int[] depths = new int[blocks.size()];
+        Arrays.fill(depths, -1);
+        depths[0] = 0;
+        Deque<BasicBlock> worklist = new ArrayDeque<>();
+        worklist.add(blocks.get(0));
+        int max = 0;
+        while (!worklist.isEmpty()) {
+            BasicBlock block = worklist.poll();
+            int depth = depths[block.index];
+            for (int i = block.start; i < block.end; ++i) {
+                depth += code.get(i).stackChange();
+                if (depth < 0)
+                    throw new IllegalStateException("Negative stack depth at " + code.get(i));
+                max = Math.max(max, depth);
+            }
+            for (BasicBlock succ : block.successors) {
+                if (depths[succ.index] < 0) {
+                    depths[succ.index] = depth;
+                    worklist.add(succ);
+                } else if (depths[succ.index] != depth) {
+                    throw new IllegalStateException(
+                        "Stack depths " + depths[succ.index] + " and " + depth +
+                        " meet at " + code.get(succ.start));
+                }
+            }
+        }
+        maxStackDepth = max;
+        entryDepths = depths;
+        return depths;
+    }
+
+}
@@ -0,0 +1,125 @@
+package notc.codegen;
+
+import notc.antlrgen.NotCBaseVisitor;
+import notc.antlrgen.NotCParser;
+import notc.antlrgen.NotCParser.VariableDeclarationContext;
+import notc.antlrgen.NotCParser.StatementContext;
+import notc.antlrgen.NotCParser.ForStatementContext;
+import notc.antlrgen.NotCParser.ExpressionContext;
+import notc.antlrgen.NotCParser.VariableExpressionContext;
+import notc.antlrgen.NotCParser.IncrementExpressionContext;
+import notc.antlrgen.NotCParser.DecrementExpressionContext;
+import notc.antlrgen.NotCParser.ComparisonExpressionContext;
+import notc.antlrgen.NotCParser.AssignmentExpressionContext;
+import notc.semantics.CompletionChecker;
+import notc.semantics.ConstantFolder;
+import notc.semantics.Parentheses;
+import notc.semantics.SymbolTable;
+import notc.semantics.VariableWrites;
+
+import org.antlr.v4.runtime.tree.RuleNode;
+
+import java.util.List;
+
+// A for statement that counts an int variable by one toward a bound,
+// "for (i = start; i < bound; i++)", or downward with > or >= and i--,
+// where the body does not assign the variable. If the start and the bound
+// are constants, the number of iterations is known at compile time.
+final class CountedLoop {
+    // Largest number of iterations, and of statements and expressions
+    // in all copies of the body, of unrolled loops
+    static final int MAX_UNROLLED_TRIPS = 16;
+    static final int MAX_UNROLLED_SIZE = 128;
+
+    final VariableDeclarationContext counter;
+    // Null if not known at compile time
+    final Long tripCount;
+    private final int bodySize;
+
+    private CountedLoop(VariableDeclarationContext counter, Long tripCount, int bodySize) {
+        this.counter = counter;
+        this.tripCount = tripCount;
+        this.bodySize = bodySize;
+    }
+
+    // The counted loop forStm is, or null if it is not one
+    static CountedLoop of(ForStatementContext forStm, SymbolTable symTab) {
+        ExpressionContext init = Parentheses.unwrap(forStm.initExpr);
+        ExpressionContext condition = Parentheses.unwrap(forStm.conditionExpr);
+        ExpressionContext advance = Parentheses.unwrap(forStm.advanceExpr);
+        if (!(init instanceof AssignmentExpressionContext) || !(condition instanceof ComparisonExpressionContext))
+            return null;
+        AssignmentExpressionContext assExpr = (AssignmentExpressionContext) init;
+        VariableDeclarationContext counter = symTab.lookupVariable(assExpr.varId);
+        if (!counter.type.isInt())
+            return null;
+
+        int step;
+        if (advance instanceof IncrementExpressionContext
+                && symTab.lookupVariable(((IncrementExpressionContext) advance).varId) == counter)
+            step = 1;
+        else if (advance instanceof DecrementExpressionContext
+                && symTab.lookupVariable(((DecrementExpressionContext) advance).varId) == counter)
+            step = -1;
+        else
+            return null;
+
+        // Compared as ints, counter first
+        ComparisonExpressionContext compExpr = (ComparisonExpressionContext) condition;
+        ExpressionContext counterExpr = Parentheses.unwrap(compExpr.opnd1);
+        if (!(counterExpr instanceof VariableExpressionContext)
+                || symTab.lookupVariable(((VariableExpressionContext) counterExpr).varId) != counter
+                || compExpr.opnd1.runtimeConversion != null || compExpr.opnd2.runtimeConversion != null
+                || !compExpr.opnd2.type.isInt())
+            return null;
+        int op = compExpr.op.getType();
+        boolean towardBound = step > 0 ? op == NotCParser.LT || op == NotCParser.LE
+                                       : op == NotCParser.GT || op == NotCParser.GE;
+        if (!towardBound)
+            return null;
+
+        // Neither the body nor the bound assigns the counter
+        VariableWrites writes = new VariableWrites(symTab);
+        forStm.body.accept(writes);
+        compExpr.opnd2.accept(writes);
+        if (writes.count(counter) > 0)
+            return null;
+
+        Long tripCount = null;
+        Object start = ConstantFolder.valueOf(assExpr.rhs);
+        Object bound = ConstantFolder.valueOf(compExpr.opnd2);
+        // A counter that would wrap around before reaching the bound loops forever
+        boolean boundIsExtreme = op == NotCParser.LE && Integer.valueOf(Integer.MAX_VALUE).equals(bound)
+                              || op == NotCParser.GE && Integer.valueOf(Integer.MIN_VALUE).equals(bound);
+        if (start != null && bound != null && !boundIsExtreme) {
+            long distance = step * ((long) (Integer) bound - (Integer) start);
+            if (op == NotCParser.LE || op == NotCParser.GE)
+                ++distance;
+            tripCount = Math.max(0, distance);
+        }
+        SizeCounter size = new SizeCounter();
+        forStm.body.accept(size);
+        return new CountedLoop(counter, tripCount, size.size);
+    }
+
+    // Whether the body can be copied once per iteration instead of looped over.
+    // A body that cannot complete would leave unreachable copies.
+    boolean canBeUnrolled(ForStatementContext forStm) {
+        return tripCount != null && tripCount <= MAX_UNROLLED_TRIPS
+            && tripCount * bodySize <= MAX_UNROLLED_SIZE
+            && CompletionChecker.completesNormally(List.of(forStm.body));
+    }
+
+    // Statements and expressions, as for inlining
+    private static class SizeCounter extends NotCBaseVisitor<Void> {
+        int size;
+
+        @Override
+        public Void visitChildren(RuleNode node) {
+            if (node instanceof StatementContext || node instanceof ExpressionContext)
+                ++size;
+            return super.visitChildren(node);
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+package notc.codegen;
+
+import notc.antlrgen.NotCBaseVisitor;
+import notc.antlrgen.NotCParser.FunctionDefinitionContext;
+import notc.antlrgen.NotCParser.VariableDeclarationContext;
+import notc.antlrgen.NotCParser.StatementContext;
+import notc.antlrgen.NotCParser.VariableExpressionContext;
+import notc.antlrgen.NotCParser.IncrementExpressionContext;
+import notc.antlrgen.NotCParser.DecrementExpressionContext;
+import notc.semantics.ConstantFolder;
+import notc.semantics.SymbolTable;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Finds the variables whose values are never loaded, so that assignments to them
+// need only evaluate the assigned expressions. Reads replaced by constants do not
+// count, while increments and decrements do, as they are generated as loads or
+// iinc of the variable.
+final class DeadStores {
+    private final SymbolTable symTab;
+    private final Set<VariableDeclarationContext> read;
+
+    DeadStores(List<FunctionDefinitionContext> funDefs, SymbolTable symTab) {
+        this.symTab = symTab;
+        read = new HashSet<>();
+        ReadFinder finder = new ReadFinder();
+        for (FunctionDefinitionContext funDef : funDefs) {
+            for (StatementContext stm : funDef.body)
+                stm.accept(finder);
+        }
+    }
+
+    // Whether stores to varDecl can be left out
+    boolean isUnread(VariableDeclarationContext varDecl) {
+        return !read.contains(varDecl);
+    }
+
+    private class ReadFinder extends NotCBaseVisitor<Void> {
+
+        @Override
+        public Void visitVariableExpression(VariableExpressionContext varExpr) {
+            if (ConstantFolder.valueOf(varExpr) == null)
+                read.add(symTab.lookupVariable(varExpr.varId));
+            return null;
+        }
+
+        @Override
+        public Void visitIncrementExpression(IncrementExpressionContext incrExpr) {
+            read.add(symTab.lookupVariable(incrExpr.varId));
+            return null;
+        }
+
+        @Override
+        public Void visitDecrementExpression(DecrementExpressionContext decrExpr) {
+            read.add(symTab.lookupVariable(decrExpr.varId));
+            return null;
+        }
+    }
+
+}
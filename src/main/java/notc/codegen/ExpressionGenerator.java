@@ -18,24 +18,49 @@ import notc.antlrgen.NotCParser.ArithmeticExpressionContext;
 import notc.antlrgen.NotCParser.ComparisonExpressionContext;
 import notc.antlrgen.NotCParser.BinaryBooleanExpressionContext;
 import notc.antlrgen.NotCParser.AssignmentExpressionContext;
+import notc.antlrgen.NotCParser.ParenthesizedExpressionContext;
 import notc.antlrgen.NotCParser.FunctionHeaderContext;
 import notc.antlrgen.NotCParser.VariableDeclarationContext;
+import notc.semantics.ConstantFolder;
 import notc.semantics.SymbolTable;
 
 import org.antlr.v4.runtime.Token;
 
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
 
 class ExpressionGenerator extends NotCBaseVisitor<Void> {
     private final SymbolTable symTab;
+    // Whether comparisons and boolean operations are generated as jumps
+    private final boolean jumpConditions;
+    private final boolean strengthReduction;
     private JvmMethod targetMethod;
-
-    ExpressionGenerator(SymbolTable symTab) {
+    // Generates the bodies of inlined calls
+    private FunctionGenerator funGen;
+    // Variables holding the values of expressions computed before their loops
+    private final Map<ExpressionContext,VariableDeclarationContext> hoistedValues;
+    // Variables holding the values of the first occurrences of expressions evaluated again
+    private final Map<ExpressionContext,VariableDeclarationContext> reusedValues;
+
+    ExpressionGenerator(SymbolTable symTab, Set<Optimization> optimizations) {
         this.symTab = symTab;
+        jumpConditions = optimizations.contains(Optimization.JUMP_CONDITIONS);
+        strengthReduction = optimizations.contains(Optimization.STRENGTH_REDUCTION);
+        hoistedValues = new HashMap<>();
+        reusedValues = new HashMap<>();
     }
 
     void setTarget(JvmMethod targetMethod) {
         this.targetMethod = targetMethod;
+        hoistedValues.clear();
+        reusedValues.clear();
+    }
+
+    void setFunctionGenerator(FunctionGenerator funGen) {
+        this.funGen = funGen;
     }
 
     // Common entry point. Generates expr and performs
@@ -45,7 +70,12 @@ class ExpressionGenerator extends NotCBaseVisitor<Void> {
         if (expr == null)
             return Type.VOID;
 
-        expr.accept(this);
+        Object constant = ConstantFolder.valueOf(expr);
+        if (constant != null)
+            return pushConstant(constant, expr.runtimeConversion != null ? expr.runtimeConversion
+                                                                         : expr.type);
+
+        generateUnconverted(expr);
 
         if (expr.runtimeConversion == null)
             return expr.type;
@@ -54,6 +84,144 @@ class ExpressionGenerator extends NotCBaseVisitor<Void> {
         return expr.runtimeConversion;
     }
 
+    // Computes the value of expr into a new variable in the current scope,
+    // which is then loaded wherever expr would be generated until unhoist.
+    // Evaluated anew each time, as a loop is generated more than once
+    // when unrolled or inlined.
+    void hoist(ExpressionContext expr) {
+        VariableDeclarationContext temp = new VariableDeclarationContext(null, 0);
+        temp.type = expr.type;
+        targetMethod.reserveVarMemory(temp);
+        expr.accept(this);
+        targetMethod.emitStore(temp);
+        hoistedValues.put(expr, temp);
+    }
+
+    // To be called when the scope of the variables of hoisted expressions ends
+    void unhoist(List<ExpressionContext> exprs) {
+        for (ExpressionContext expr : exprs)
+            hoistedValues.remove(expr);
+    }
+
+    private void generateUnconverted(ExpressionContext expr) {
+        VariableDeclarationContext temp = hoistedValues.get(expr);
+        if (temp != null) {
+            targetMethod.emitLoad(temp);
+            return;
+        }
+        ExpressionContext first = funGen == null ? null : funGen.firstOccurrence(expr);
+        if (first == null) {
+            expr.accept(this);
+            return;
+        }
+        temp = reusedValues.get(first);
+        if (first != expr && temp != null) {
+            targetMethod.emitLoad(temp);
+            // Generated again only where the code is, e.g. in an unrolled loop
+            if (funGen.isLastOccurrence(expr))
+                reusedValues.remove(first);
+            return;
+        }
+        // The first occurrence, or a later one if the first was generated some
+        // other way, e.g. as an iinc
+        expr.accept(this);
+        temp = new VariableDeclarationContext(null, 0);
+        temp.type = expr.type;
+        targetMethod.reserveVarMemory(temp);
+        targetMethod.emit(expr.type.isDouble() ? Opcode.DUP2 : Opcode.DUP);
+        targetMethod.emitStore(temp);
+        reusedValues.put(first, temp);
+    }
+
+    // Entry point for expressions whose values are not used,
+    // e.g. expression statements. Leaves nothing on the stack.
+    void generateDiscarded(ExpressionContext expr) {
+        if (expr == null || ConstantFolder.valueOf(expr) != null)
+            return; // No side effects
+        if (expr instanceof ParenthesizedExpressionContext) {
+            generateDiscarded(((ParenthesizedExpressionContext) expr).expr);
+        } else if (expr instanceof AssignmentExpressionContext) {
+            generateAssignment((AssignmentExpressionContext) expr, false);
+        } else if (expr instanceof IncrementExpressionContext) {
+            IncrementExpressionContext incrExpr = (IncrementExpressionContext) expr;
+            generateIncrementDecrement(incrExpr.varId, 1, incrExpr.preOp != null, false);
+        } else if (expr instanceof DecrementExpressionContext) {
+            DecrementExpressionContext decrExpr = (DecrementExpressionContext) expr;
+            generateIncrementDecrement(decrExpr.varId, -1, decrExpr.preOp != null, false);
+        } else {
+            Type t = generate(expr);
+            if (t.size() != 0)
+                targetMethod.emit(t.size() == 1 ? Opcode.POP : Opcode.POP2);
+        }
+    }
+
+    // Entry point for conditions of statements. Generates jumps to target
+    // taken if the truth value of expr is jumpIf. Otherwise falls through.
+    // Leaves nothing on the stack.
+    void generateCondition(ExpressionContext expr, boolean jumpIf, String target) {
+        Object constant = ConstantFolder.valueOf(expr);
+        if (constant != null) {
+            if (ConstantFolder.isTrue(constant) == jumpIf)
+                targetMethod.emit(Opcode.GOTO, target);
+            return;
+        }
+        if (!jumpConditions) {
+            generate(expr);
+            targetMethod.emit(jumpIf ? Opcode.IFNE : Opcode.IFEQ, target);
+            return;
+        }
+        // Conversions apply to int and double values, which are tested below
+        if (expr.runtimeConversion == null) {
+            if (expr instanceof ParenthesizedExpressionContext) {
+                generateCondition(((ParenthesizedExpressionContext) expr).expr, jumpIf, target);
+                return;
+            }
+            if (expr instanceof ComparisonExpressionContext) {
+                generateComparisonJump((ComparisonExpressionContext) expr, jumpIf, target);
+                return;
+            }
+            if (expr instanceof BinaryBooleanExpressionContext) {
+                generateBooleanJump((BinaryBooleanExpressionContext) expr, jumpIf, target);
+                return;
+            }
+            if (expr instanceof TrueLiteralExpressionContext
+                    || expr instanceof FalseLiteralExpressionContext) {
+                if ((expr instanceof TrueLiteralExpressionContext) == jumpIf)
+                    targetMethod.emit(Opcode.GOTO, target);
+                return;
+            }
+        }
+        // Only whether the value is zero matters, so it needs no conversion to bool
+        generateUnconverted(expr);
+        if (expr.type.isDouble()) {
+            targetMethod.emit(Opcode.DCONST_0);
+            targetMethod.emit(Opcode.DCMPL);
+        }
+        targetMethod.emit(jumpIf ? Opcode.IFNE : Opcode.IFEQ, target);
+    }
+
+    // Value found by ConstantFolder, as the type it is needed as
+    private Type pushConstant(Object value, Type t) {
+        if (t.isDouble())
+            targetMethod.emitConstant((Double) value);
+        else
+            targetMethod.emitConstant((Integer) value);
+        return t;
+    }
+
+    // Puts 1 on the stack if a condition holds, 0 otherwise.
+    // jumpGenerator is given the truth value to jump on and the target.
+    private void materializeCondition(BiConsumer<Boolean,String> jumpGenerator) {
+        String falseLabel = targetMethod.newLabel();
+        String endLabel = targetMethod.newLabel();
+        jumpGenerator.accept(false, falseLabel);
+        targetMethod.emit(Opcode.ICONST_1);
+        targetMethod.emit(Opcode.GOTO, endLabel);
+        targetMethod.insertLabel(falseLabel);
+        targetMethod.emit(Opcode.ICONST_0);
+        targetMethod.insertLabel(endLabel);
+    }
+
     private void convertTopOfStack(Type from, Type to) {
         if (to.isDouble())
             targetMethod.emit(Opcode.I2D); // Widens
@@ -69,7 +237,7 @@ class ExpressionGenerator extends NotCBaseVisitor<Void> {
 
     // nonzero double -> 1,  0.0 -> 0
     private void doubleToBool() {
-        targetMethod.emit(Opcode.LDC2_W, "0.0");
+        targetMethod.emitConstant(0.0);
         targetMethod.emit(Opcode.DCMPG);
         intToBool();
     }
@@ -80,10 +248,17 @@ class ExpressionGenerator extends NotCBaseVisitor<Void> {
         targetMethod.emit(Opcode.DUP);
         targetMethod.emit(Opcode.INEG);
         targetMethod.emit(Opcode.IOR);
-        targetMethod.emit(Opcode.LDC, "31");
+        targetMethod.emitConstant(31);
         targetMethod.emit(Opcode.IUSHR);
     }
 
+    // The enclosed expression may be hoisted
+    @Override
+    public Void visitParenthesizedExpression(ParenthesizedExpressionContext paren) {
+        generateUnconverted(paren.expr);
+        return null;
+    }
+
     @Override
     public Void visitNegationExpression(NegationExpressionContext negation) {
         Type t = generate(negation.opnd);
@@ -108,14 +283,15 @@ class ExpressionGenerator extends NotCBaseVisitor<Void> {
     @Override
     public Void visitDoubleLiteralExpression(DoubleLiteralExpressionContext doubleLiteralExpr) {
         String srcText = doubleLiteralExpr.value.getText();
-        targetMethod.emit(Opcode.LDC2_W, srcText);
+        targetMethod.emitConstant(Double.parseDouble(srcText));
         return null;
     }
 
     @Override
     public Void visitIntLiteralExpression(IntLiteralExpressionContext intLitExpr) {
         String srcText = intLitExpr.value.getText();
-        targetMethod.emit(Opcode.LDC, srcText);
+        // Like Jasmin, keeps the low 32 bits of literals that do not fit in an int
+        targetMethod.emitConstant((int) Long.parseLong(srcText));
         return null;
     }
 
@@ -136,6 +312,8 @@ class ExpressionGenerator extends NotCBaseVisitor<Void> {
 
     @Override
     public Void visitFunctionCallExpression(FunctionCallExpressionContext funCallExpr) {
+        if (funGen != null && funGen.generateInlined(funCallExpr))
+            return null;
         funCallExpr.args.forEach(this::generate); // Puts arguments on stack
         FunctionHeaderContext callee = symTab.lookupFunction(funCallExpr.id);
         targetMethod.emitCall(callee);
@@ -144,18 +322,70 @@ class ExpressionGenerator extends NotCBaseVisitor<Void> {
 
     @Override
     public Void visitAssignmentExpression(AssignmentExpressionContext assExpr) {
-        Type exprType = generate(assExpr.rhs);
-        // Stored value is value of expression and is left on stack
-        Opcode dup = exprType.isDouble() ? Opcode.DUP2 : Opcode.DUP;
-        targetMethod.emit(dup);
+        generateAssignment(assExpr, true);
+        return null;
+    }
+
+    // Stored value is value of expression and is left on stack if needed
+    private void generateAssignment(AssignmentExpressionContext assExpr, boolean valueNeeded) {
         VariableDeclarationContext varDecl = symTab.lookupVariable(assExpr.varId);
+        if (funGen != null && funGen.isDeadStore(varDecl)) {
+            if (valueNeeded)
+                generate(assExpr.rhs);
+            else
+                generateDiscarded(assExpr.rhs);
+            return;
+        }
+        Integer delta = incrementOf(varDecl, assExpr.rhs);
+        if (delta != null) {
+            targetMethod.emitIncrement(varDecl, delta);
+            if (valueNeeded)
+                targetMethod.emitLoad(varDecl);
+            return;
+        }
+        Type exprType = generate(assExpr.rhs);
+        if (valueNeeded) {
+            Opcode dup = exprType.isDouble() ? Opcode.DUP2 : Opcode.DUP;
+            targetMethod.emit(dup);
+        }
         targetMethod.emitStore(varDecl);
-        return null;
+    }
+
+    // The constant added to the int variable by "var = var + c", "var = c + var"
+    // or "var = var - c" if it fits in iinc, otherwise null
+    private Integer incrementOf(VariableDeclarationContext varDecl, ExpressionContext rhs) {
+        if (!varDecl.type.isInt() || !(rhs instanceof ArithmeticExpressionContext)
+                || rhs.runtimeConversion != null || !rhs.type.isInt())
+            return null;
+        ArithmeticExpressionContext arithmExpr = (ArithmeticExpressionContext) rhs;
+        int op = arithmExpr.op.getType();
+        Object constant;
+        if (readsVariable(arithmExpr.opnd1, varDecl))
+            constant = ConstantFolder.valueOf(arithmExpr.opnd2);
+        else if (op == NotCParser.ADD && readsVariable(arithmExpr.opnd2, varDecl))
+            constant = ConstantFolder.valueOf(arithmExpr.opnd1);
+        else
+            return null;
+        if (constant == null || (op != NotCParser.ADD && op != NotCParser.SUB))
+            return null;
+        long delta = op == NotCParser.ADD ? (Integer) constant : -(long) (Integer) constant;
+        if (delta < Short.MIN_VALUE || delta > Short.MAX_VALUE)
+            return null;
+        return (int) delta;
+    }
+
+    private boolean readsVariable(ExpressionContext expr, VariableDeclarationContext varDecl) {
+        return expr instanceof VariableExpressionContext && expr.runtimeConversion == null
+            && symTab.lookupVariable(((VariableExpressionContext) expr).varId) == varDecl;
     }
 
     // <, > <=, >=, ==, !=
     @Override
     public Void visitComparisonExpression(ComparisonExpressionContext compExpr) {
+        if (jumpConditions) {
+            materializeCondition((jumpIf, target) -> generateComparisonJump(compExpr, jumpIf, target));
+            return null;
+        }
         Type t1 = generate(compExpr.opnd1);
         Type t2 = generate(compExpr.opnd2);
         // The type is unknown at parse time
@@ -188,11 +418,18 @@ class ExpressionGenerator extends NotCBaseVisitor<Void> {
         NotCParser.NE, Opcode.IF_ICMPNE
     );
 
-    // "dcmpg" is trickier
+    // Compares the doubles on the stack so that comparisons involving NaN are false,
+    // except for !=. NaN makes dcmpg push 1 and dcmpl push -1.
+    private Opcode dcmpFor(int comparisonToken) {
+        boolean less = comparisonToken == NotCParser.LT || comparisonToken == NotCParser.LE;
+        return less ? Opcode.DCMPG : Opcode.DCMPL;
+    }
+
+    // "dcmp<g|l>" is trickier
     private void generateDoubleComparison(ComparisonExpressionContext compExpr) {
         String trueLabel = targetMethod.newLabel();
         String endLabel = targetMethod.newLabel();
-        targetMethod.emit(Opcode.DCMPG);
+        targetMethod.emit(dcmpFor(compExpr.op.getType()));
         switch (compExpr.op.getType()) {
             case NotCParser.LT: // a < b -> TOS = -1
                                 targetMethod.emit(Opcode.ICONST_M1);
@@ -227,9 +464,64 @@ class ExpressionGenerator extends NotCBaseVisitor<Void> {
         targetMethod.insertLabel(endLabel);
     }
 
+    // Jumps to target if the comparison is jumpIf
+    private void generateComparisonJump(ComparisonExpressionContext compExpr,
+                                        boolean jumpIf, String target) {
+        Type t1 = generate(compExpr.opnd1);
+        Type t2 = generate(compExpr.opnd2);
+        int op = compExpr.op.getType();
+        int jumpOp = jumpIf ? op : negatedComparison.get(op);
+        if (t1.isDouble() || t2.isDouble()) {
+            targetMethod.emit(dcmpFor(op));
+            targetMethod.emit(ifByToken.get(jumpOp), target);
+        } else {
+            targetMethod.emit(icmpByToken.get(jumpOp), target);
+        }
+    }
+
+    private final Map<Integer,Integer> negatedComparison = Map.of(
+        NotCParser.LT, NotCParser.GE,
+        NotCParser.GT, NotCParser.LE,
+        NotCParser.GE, NotCParser.LT,
+        NotCParser.LE, NotCParser.GT,
+        NotCParser.EQ, NotCParser.NE,
+        NotCParser.NE, NotCParser.EQ
+    );
+
+    // Compare the result of dcmp<g|l> with 0
+    private final Map<Integer,Opcode> ifByToken = Map.of(
+        NotCParser.LT, Opcode.IFLT,
+        NotCParser.GT, Opcode.IFGT,
+        NotCParser.GE, Opcode.IFGE,
+        NotCParser.LE, Opcode.IFLE,
+        NotCParser.EQ, Opcode.IFEQ,
+        NotCParser.NE, Opcode.IFNE
+    );
+
+    // Jumps to target if the && or || expression is jumpIf.
+    // The second operand is skipped when the first one decides.
+    private void generateBooleanJump(BinaryBooleanExpressionContext binBoolExpr,
+                                     boolean jumpIf, String target) {
+        // Whether the first operand decides the result when it is true (||) or false (&&)
+        boolean decidingValue = binBoolExpr.op.getType() == NotCParser.OR;
+        if (decidingValue == jumpIf) {
+            generateCondition(binBoolExpr.opnd1, jumpIf, target);
+            generateCondition(binBoolExpr.opnd2, jumpIf, target);
+        } else {
+            String skipLabel = targetMethod.newLabel();
+            generateCondition(binBoolExpr.opnd1, decidingValue, skipLabel);
+            generateCondition(binBoolExpr.opnd2, jumpIf, target);
+            targetMethod.insertLabel(skipLabel);
+        }
+    }
+
     // &&, ||
     @Override
     public Void visitBinaryBooleanExpression(BinaryBooleanExpressionContext binBoolExpr) {
+        if (jumpConditions) {
+            materializeCondition((jumpIf, target) -> generateBooleanJump(binBoolExpr, jumpIf, target));
+            return null;
+        }
         String trueLabel = targetMethod.newLabel();
         String falseLabel = targetMethod.newLabel();
         String endLabel = targetMethod.newLabel();
@@ -254,44 +546,44 @@ class ExpressionGenerator extends NotCBaseVisitor<Void> {
     // ++
     @Override
     public Void visitIncrementExpression(IncrementExpressionContext incrExpr) {
-        Opcode arithmOp = incrExpr.type.isDouble() ? Opcode.DADD : Opcode.IADD;
-        generateIncrementDecrement(incrExpr.varId, arithmOp, incrExpr.preOp != null);
+        generateIncrementDecrement(incrExpr.varId, 1, incrExpr.preOp != null, true);
         return null;
     }
 
     // --
     @Override
     public Void visitDecrementExpression(DecrementExpressionContext decrExpr) {
-        Opcode arithmOp = decrExpr.type.isDouble() ? Opcode.DSUB : Opcode.ISUB;
-        generateIncrementDecrement(decrExpr.varId, arithmOp, decrExpr.preOp != null);
+        generateIncrementDecrement(decrExpr.varId, -1, decrExpr.preOp != null, true);
         return null;
     }
 
-    private void generateIncrementDecrement(Token varId, Opcode arithmOp, boolean pre) {
+    // The old value (postfix) or new value (prefix) is left on stack if needed
+    private void generateIncrementDecrement(Token varId, int delta, boolean pre, boolean valueNeeded) {
         VariableDeclarationContext varDecl = symTab.lookupVariable(varId);
-        Opcode dup;
-        Opcode const1;
-        if (varDecl.type.isDouble()) {
-            dup = Opcode.DUP2;
-            const1 = Opcode.DCONST_1;
-        } else {
-            dup = Opcode.DUP;
-            const1 = Opcode.ICONST_1;
+        if (!varDecl.type.isDouble()) {
+            if (valueNeeded && !pre)
+                targetMethod.emitLoad(varDecl);
+            targetMethod.emitIncrement(varDecl, delta);
+            if (valueNeeded && pre)
+                targetMethod.emitLoad(varDecl);
+            return;
         }
 
         targetMethod.emitLoad(varDecl);
-        if (!pre)
-            targetMethod.emit(dup); // Leaves old value on stack
-        targetMethod.emit(const1);
-        targetMethod.emit(arithmOp);
-        if (pre)
-            targetMethod.emit(dup); // Leaves new value on stack
+        if (valueNeeded && !pre)
+            targetMethod.emit(Opcode.DUP2); // Leaves old value on stack
+        targetMethod.emit(Opcode.DCONST_1);
+        targetMethod.emit(delta > 0 ? Opcode.DADD : Opcode.DSUB);
+        if (valueNeeded && pre)
+            targetMethod.emit(Opcode.DUP2); // Leaves new value on stack
         targetMethod.emitStore(varDecl);
     }
 
     // +, -, *, /, %
     @Override
     public Void visitArithmeticExpression(ArithmeticExpressionContext arithmExpr) {
+        if (strengthReduction && arithmExpr.type.isInt() && generateReduced(arithmExpr))
+            return null;
         generate(arithmExpr.opnd1);
         generate(arithmExpr.opnd2);
         Map<Integer,Opcode> lookupTable = arithmExpr.type.isDouble() ? doubleArithmetic
@@ -301,6 +593,122 @@ class ExpressionGenerator extends NotCBaseVisitor<Void> {
         return null;
     }
 
+    // Generates int arithmetic where an operand is known as cheaper operations that
+    // give the same result for every value of the other one, e.g. x * 8 as x << 3.
+    // Returns false if there are none.
+    private boolean generateReduced(ArithmeticExpressionContext arithmExpr) {
+        Object value1 = ConstantFolder.valueOf(arithmExpr.opnd1);
+        Object value2 = ConstantFolder.valueOf(arithmExpr.opnd2);
+        int op = arithmExpr.op.getType();
+        if (value2 != null)
+            return generateReduced(arithmExpr.opnd1, op, (Integer) value2);
+        if (value1 == null)
+            return false;
+        if (op == NotCParser.ADD || op == NotCParser.MUL) // Commutative
+            return generateReduced(arithmExpr.opnd2, op, (Integer) value1);
+        if (op == NotCParser.SUB && (Integer) value1 == 0) {
+            generate(arithmExpr.opnd2);
+            targetMethod.emit(Opcode.INEG);
+            return true;
+        }
+        return false;
+    }
+
+    // x op c
+    private boolean generateReduced(ExpressionContext x, int op, int c) {
+        switch (op) {
+            case NotCParser.ADD:
+            case NotCParser.SUB:
+                if (c != 0)
+                    return false;
+                generate(x);
+                return true;
+            case NotCParser.MUL:
+                if (c == 0) {
+                    generateDiscarded(x); // Keeps any side effects
+                    targetMethod.emitConstant(0);
+                    return true;
+                }
+                if (c == -1) {
+                    generate(x);
+                    targetMethod.emit(Opcode.INEG);
+                    return true;
+                }
+                // Wraps around like imul, also for 2^31
+                if ((c & (c - 1)) != 0)
+                    return false;
+                generate(x);
+                int shift = Integer.numberOfTrailingZeros(c);
+                if (shift > 0) {
+                    targetMethod.emitConstant(shift);
+                    targetMethod.emit(Opcode.ISHL);
+                }
+                return true;
+            case NotCParser.DIV:
+                if (c == 1 || c == -1) {
+                    generate(x);
+                    if (c == -1)
+                        targetMethod.emit(Opcode.INEG); // Wraps around like idiv
+                    return true;
+                }
+                if (!isPowerOfTwo(Math.abs(c)))
+                    return false;
+                generate(x);
+                divideByPowerOfTwo(Integer.numberOfTrailingZeros(Math.abs(c)));
+                if (c < 0)
+                    targetMethod.emit(Opcode.INEG);
+                return true;
+            default: // The sign of the remainder is that of x
+                if (c == 1 || c == -1) {
+                    generateDiscarded(x);
+                    targetMethod.emitConstant(0);
+                    return true;
+                }
+                if (!isPowerOfTwo(Math.abs(c)))
+                    return false;
+                generate(x);
+                remainderOfPowerOfTwo(Integer.numberOfTrailingZeros(Math.abs(c)));
+                return true;
+        }
+    }
+
+    // At least 2 and at most 2^30. Math.abs leaves -2^31 negative.
+    private static boolean isPowerOfTwo(int i) {
+        return i > 1 && (i & (i - 1)) == 0;
+    }
+
+    // Shifting right rounds toward negative infinity, but idiv rounds toward zero.
+    // Negative dividends are therefore biased by 2^k - 1 first.
+    // x / 2^k  ->  (x + (x >> 31 >>> 32 - k)) >> k
+    private void divideByPowerOfTwo(int k) {
+        targetMethod.emit(Opcode.DUP);
+        pushRoundingBias(k);
+        targetMethod.emit(Opcode.IADD);
+        targetMethod.emitConstant(k);
+        targetMethod.emit(Opcode.ISHR);
+    }
+
+    // x % 2^k  ->  x - (x + (x >> 31 >>> 32 - k) & -2^k)
+    private void remainderOfPowerOfTwo(int k) {
+        targetMethod.emit(Opcode.DUP);
+        targetMethod.emit(Opcode.DUP);
+        pushRoundingBias(k);
+        targetMethod.emit(Opcode.IADD);
+        targetMethod.emitConstant(-(1 << k));
+        targetMethod.emit(Opcode.IAND);
+        targetMethod.emit(Opcode.ISUB);
+    }
+
+    // Replaces x on top of the stack with 2^k - 1 if it is negative, 0 otherwise
+    private void pushRoundingBias(int k) {
+        if (k > 1) {
+            targetMethod.emitConstant(31);
+            targetMethod.emit(Opcode.ISHR);
+        }
+        targetMethod.emitConstant(32 - k);
+        targetMethod.emit(Opcode.IUSHR);
+    }
+
     // Ugly but resolving operators with separate parser rules messes up their associativity
 
     private final Map<Integer,Opcode> intArithmetic = Map.of(
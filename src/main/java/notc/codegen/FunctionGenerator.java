@@ -3,6 +3,8 @@ package notc.codegen;
 import notc.antlrgen.NotCBaseVisitor;
 import notc.antlrgen.NotCParser.Type;
 import notc.antlrgen.NotCParser.FunctionDefinitionContext;
+import notc.antlrgen.NotCParser.FunctionHeaderContext;
+import notc.antlrgen.NotCParser.VariableDeclarationContext;
 import notc.antlrgen.NotCParser.StatementContext;
 import notc.antlrgen.NotCParser.DeclarationStatementContext;
 import notc.antlrgen.NotCParser.InitializationStatementContext;
@@ -13,29 +15,326 @@ import notc.antlrgen.NotCParser.WhileStatementContext;
 import notc.antlrgen.NotCParser.IfStatementContext;
 import notc.antlrgen.NotCParser.IfElseStatementContext;
 import notc.antlrgen.NotCParser.ReturnStatementContext;
+import notc.antlrgen.NotCParser.EmptyStatementContext;
+import notc.antlrgen.NotCParser.ExpressionContext;
+import notc.antlrgen.NotCParser.FunctionCallExpressionContext;
+import notc.semantics.CompletionChecker;
+import notc.semantics.ConstantFolder;
+import notc.semantics.Parentheses;
+import notc.semantics.SymbolTable;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 class FunctionGenerator extends NotCBaseVisitor<Void> {
+    private final SymbolTable symTab;
     private final ExpressionGenerator exprGen;
+    private final Set<Optimization> optimizations;
+    private final Peephole peephole;
+    private final int inlineLimit;
+    private final Memoization memoization;
     private JvmMethod targetMethod;
+    // Null unless calls are inlined
+    private Inliner inliner;
+    // Null unless loop-invariant expressions are hoisted
+    private LoopInvariants loopInvariants;
+    // Where returns jump while the body of an inlined call is generated, otherwise null
+    private String inlinedReturnLabel;
+    // Null unless expressions evaluated again are reused
+    private CommonSubexpressions subexpressions;
+    // Null unless stores to unread variables are left out
+    private DeadStores deadStores;
+    // Null unless tail calls are replaced by jumps
+    private TailCalls tailCalls;
+    // Null unless results are cached
+    private Memoizer memoizer;
+    // Function being generated and the labels of the bodies of functions in the target
+    private FunctionDefinitionContext currentFunction;
+    private final Map<FunctionDefinitionContext,String> bodyLabels;
 
-    FunctionGenerator(ExpressionGenerator exprGen) {
+    // Optimizes the generated methods and caches results as given by options
+    FunctionGenerator(SymbolTable symTab, ExpressionGenerator exprGen, CodegenOptions options) {
+        this.symTab = symTab;
         this.exprGen = exprGen;
+        this.optimizations = options.optimizations;
+        this.inlineLimit = options.inlineLimit;
+        this.memoization = options.memoization;
+        peephole = new Peephole(options.peepholeRules);
+        bodyLabels = new HashMap<>();
+        exprGen.setFunctionGenerator(this);
     }
 
-    // Entry point. Sets up target and generates the statements.
+    // Entry point for the functions of a program. Returns their methods, where
+    // functions that call each other in tail position are generated as one, and
+    // functions whose results are cached as two.
+    List<JvmMethod> generate(List<FunctionDefinitionContext> funDefs) {
+        if (optimizations.contains(Optimization.TAIL_CALLS))
+            tailCalls = new TailCalls(funDefs, symTab);
+        if (memoization != Memoization.NONE)
+            memoizer = new Memoizer(funDefs, symTab, tailCalls);
+        if (optimizations.contains(Optimization.INLINING))
+            inliner = new Inliner(funDefs, symTab, inlineLimit);
+        if (optimizations.contains(Optimization.LOOP_INVARIANTS))
+            loopInvariants = new LoopInvariants(funDefs, symTab);
+        if (optimizations.contains(Optimization.COMMON_SUBEXPRESSIONS))
+            subexpressions = new CommonSubexpressions(funDefs, symTab);
+        if (optimizations.contains(Optimization.DEAD_STORES))
+            deadStores = new DeadStores(funDefs, symTab);
+        List<JvmMethod> methods = new ArrayList<>();
+        for (FunctionDefinitionContext funDef : funDefs) {
+            List<FunctionDefinitionContext> group = tailCalls == null ? null : tailCalls.groupOf(funDef);
+            if (isMemoized(funDef)) {
+                methods.add(generateMemoized(funDef));
+                methods.add(memoizer.wrapper(funDef));
+            } else if (group == null) {
+                methods.add(generate(funDef));
+            } else if (group.get(0) == funDef) {
+                methods.addAll(generateGroup(group));
+            }
+        }
+        if (reportsMemoization())
+            methods.add(memoizer.reportMethod());
+        return methods;
+    }
+
+    private boolean isMemoized(FunctionDefinitionContext funDef) {
+        return memoizer != null && memoizer.isMemoized(funDef);
+    }
+
+    // Whether the program needs a call of Memoizer.REPORT_SPECIFICATION after main
+    boolean reportsMemoization() {
+        return memoization == Memoization.REPORTED && memoizer != null && !memoizer.isEmpty();
+    }
+
+    // How often each peephole rule rewrote the methods generated so far
+    List<String> peepholeReport() {
+        return peephole.report();
+    }
+
+    // Names and descriptors of the static fields the generated methods use, e.g. "fib$keys [I"
+    List<String> staticFields() {
+        return memoizer == null ? List.of() : memoizer.fields();
+    }
+
+    // Sets up target, generates the statements and optimizes the result
     JvmMethod generate(FunctionDefinitionContext funDef) {
-        targetMethod = new JvmMethod(funDef.header);
-        exprGen.setTarget(targetMethod);
-        for (StatementContext stm : funDef.body)
-            stm.accept(this);
+        setTarget(new JvmMethod(funDef.header));
+        if (tailCalls != null)
+            insertBodyLabel(funDef); // For jumps from self-calls
+        generateBody(funDef);
+        return finishTarget();
+    }
+
+    // Generates the body of a function whose results are cached, as a method that
+    // the one under the function's name calls on misses. Calls, including those
+    // from the body to itself, go through the cache.
+    private JvmMethod generateMemoized(FunctionDefinitionContext funDef) {
+        setTarget(new JvmMethod(Memoizer.bodySpecification(funDef.header), funDef.header.params));
+        generateBody(funDef);
+        return finishTarget();
+    }
+
+    // Generates a method that takes the parameters of all functions in group, and
+    // a first int that selects the body to start in, so that the functions can
+    // jump to each other. Each function gets a method that calls it with its parameters.
+    private List<JvmMethod> generateGroup(List<FunctionDefinitionContext> group) {
+        FunctionHeaderContext first = group.get(0).header;
+        VariableDeclarationContext selector = new VariableDeclarationContext(null, 0);
+        selector.type = Type.INT;
+        List<VariableDeclarationContext> params = new ArrayList<>();
+        params.add(selector);
+        for (FunctionDefinitionContext funDef : group)
+            params.addAll(funDef.header.params);
+        // "$" is not allowed in identifiers, so no function has this name
+        String specification = group.stream()
+                                    .map(funDef -> funDef.header.id.getText())
+                                    .collect(Collectors.joining("$"))
+                             + params.stream()
+                                     .map(param -> param.type.descriptor())
+                                     .collect(Collectors.joining("", "(", ")"))
+                             + first.returnType.descriptor();
+        String className = first.fqn.substring(0, first.fqn.length() - first.specification.length() - 1);
+        String fqn = className + "/" + specification;
+
+        setTarget(new JvmMethod(specification, params));
+        for (int i = 1; i < group.size(); ++i) {
+            String bodyLabel = targetMethod.newLabel();
+            bodyLabels.put(group.get(i), bodyLabel);
+            targetMethod.emitLoad(selector);
+            targetMethod.emitConstant(i);
+            targetMethod.emit(Opcode.IF_ICMPEQ, bodyLabel);
+        }
+        bodyLabels.put(group.get(0), targetMethod.newLabel()); // Selected otherwise
+        for (FunctionDefinitionContext funDef : group) {
+            targetMethod.insertLabel(bodyLabels.get(funDef));
+            // Each body reuses the memory of the variables of the ones before
+            targetMethod.pushScope();
+            generateBody(funDef);
+            targetMethod.popScope();
+        }
+        List<JvmMethod> methods = new ArrayList<>();
+        methods.add(finishTarget());
+
+        for (int i = 0; i < group.size(); ++i) {
+            FunctionHeaderContext header = group.get(i).header;
+            JvmMethod caller = new JvmMethod(header);
+            caller.emitConstant(i);
+            for (FunctionDefinitionContext funDef : group) {
+                for (VariableDeclarationContext param : funDef.header.params) {
+                    if (funDef.header == header)
+                        caller.emitLoad(param);
+                    else
+                        pushDefaultValue(caller, param.type); // Unused
+                }
+            }
+            caller.emit(Opcode.INVOKESTATIC, fqn);
+            caller.emit(returnOpByType.get(header.returnType));
+            caller.verify();
+            methods.add(caller);
+        }
+        return methods;
+    }
+
+    private static void pushDefaultValue(JvmMethod method, Type t) {
+        if (t.isDouble())
+            method.emitConstant(0.0);
+        else if (t.isString())
+            method.emit(Opcode.ACONST_NULL);
+        else
+            method.emitConstant(0);
+    }
+
+    private void setTarget(JvmMethod method) {
+        targetMethod = method;
+        exprGen.setTarget(method);
+        bodyLabels.clear();
+    }
+
+    private void insertBodyLabel(FunctionDefinitionContext funDef) {
+        String bodyLabel = targetMethod.newLabel();
+        bodyLabels.put(funDef, bodyLabel);
+        targetMethod.insertLabel(bodyLabel);
+    }
+
+    private void generateBody(FunctionDefinitionContext funDef) {
+        currentFunction = funDef;
+        generateStatements(funDef.body);
         // Avoids falling off the end of the code
-        if (funDef.header.returnType.isVoid())
-            targetMethod.emit(Opcode.RETURN);
+        Type returnType = funDef.header.returnType;
+        boolean pruned = optimizations.contains(Optimization.DEAD_CODE);
+        if (returnType.isVoid()) {
+            if (!pruned || targetMethod.canFallThrough())
+                targetMethod.emit(Opcode.RETURN);
+        } else if (targetMethod.canFallThrough()) {
+            // Never reached, as checked by FunctionChecker, but without constant
+            // folding e.g. a loop on true seems to exit
+            pushDefaultValue(targetMethod, returnType);
+            targetMethod.emit(returnOpByType.get(returnType));
+        }
+    }
+
+    // Statements after one that cannot complete are not generated if dead code is left out
+    private void generateStatements(List<StatementContext> stms) {
+        for (StatementContext stm : stms) {
+            stm.accept(this);
+            if (optimizations.contains(Optimization.DEAD_CODE)
+                    && !CompletionChecker.completesNormally(List.of(stm)))
+                return;
+        }
+    }
+
+    // The first occurrence of an expression whose value is reused, or null
+    ExpressionContext firstOccurrence(ExpressionContext expr) {
+        return subexpressions == null ? null : subexpressions.firstOccurrence(expr);
+    }
+
+    boolean isLastOccurrence(ExpressionContext expr) {
+        return subexpressions != null && subexpressions.isLastOccurrence(expr);
+    }
+
+    // Whether assignments to varDecl need not store the assigned value
+    boolean isDeadStore(VariableDeclarationContext varDecl) {
+        return deadStores != null && deadStores.isUnread(varDecl);
+    }
+
+    // Value of the condition of a statement if it is known and dead code is left out,
+    // otherwise null
+    private Boolean knownCondition(ExpressionContext condition) {
+        if (!optimizations.contains(Optimization.DEAD_CODE) || condition == null)
+            return null;
+        Object value = ConstantFolder.valueOf(condition);
+        return value == null ? null : ConstantFolder.isTrue(value);
+    }
+
+    // Whether stm generates no code: empty, or a block of such statements
+    private static boolean isEmpty(StatementContext stm) {
+        if (stm instanceof EmptyStatementContext)
+            return true;
+        return stm instanceof BlockStatementContext
+            && ((BlockStatementContext) stm).statements.stream().allMatch(FunctionGenerator::isEmpty);
+    }
+
+    private JvmMethod finishTarget() {
+        if (optimizations.contains(Optimization.PEEPHOLE))
+            peephole.optimize(targetMethod.code());
+        targetMethod.verify();
         return targetMethod;
     }
 
+    // Generates a tail call to a function in the target method as an assignment
+    // of the arguments to the parameters, followed by a jump to the function's body.
+    // Returns false if expr is not such a call.
+    private boolean generateTailJump(ExpressionContext expr) {
+        if (tailCalls == null || inlinedReturnLabel != null)
+            return false; // A jump from an inlined body would leave the caller's values on the stack
+        ExpressionContext call = Parentheses.unwrap(expr);
+        FunctionDefinitionContext callee = tailCalls.callee(currentFunction, call);
+        String bodyLabel = bodyLabels.get(callee);
+        if (bodyLabel == null)
+            return false;
+        List<ExpressionContext> args = ((FunctionCallExpressionContext) call).args;
+        for (ExpressionContext arg : args)
+            exprGen.generate(arg);
+        // All arguments are evaluated before any parameter is assigned.
+        // The last one is on top of the stack.
+        for (int i = args.size() - 1; i >= 0; --i)
+            targetMethod.emitStore(callee.header.params.get(i));
+        targetMethod.emit(Opcode.GOTO, bodyLabel);
+        return true;
+    }
+
+    // Generates the body of the function called by call in place of the call, with
+    // the arguments stored in new variables for its parameters. Returns jump to the
+    // end of the body, with the returned value on the stack.
+    // Returns false if the call is not inlined.
+    boolean generateInlined(FunctionCallExpressionContext call) {
+        FunctionDefinitionContext callee = inliner == null ? null : inliner.calleeToInline(call);
+        if (callee == null || isMemoized(callee))
+            return false;
+        for (ExpressionContext arg : call.args)
+            exprGen.generate(arg);
+        targetMethod.pushScope();
+        List<VariableDeclarationContext> params = callee.header.params;
+        targetMethod.reserveVarMemory(params);
+        for (int i = params.size() - 1; i >= 0; --i)
+            targetMethod.emitStore(params.get(i));
+        String outerReturnLabel = inlinedReturnLabel;
+        inlinedReturnLabel = targetMethod.newLabel();
+        generateStatements(callee.body);
+        // Never reached, but the returns jump to the label with a value, as in generateBody
+        Type returnType = callee.header.returnType;
+        if (!returnType.isVoid() && targetMethod.canFallThrough())
+            pushDefaultValue(targetMethod, returnType);
+        targetMethod.insertLabel(inlinedReturnLabel);
+        inlinedReturnLabel = outerReturnLabel;
+        targetMethod.popScope();
+        return true;
+    }
+
     // "type id1, id2..."
     @Override
     public Void visitDeclarationStatement(DeclarationStatementContext declStm) {
@@ -47,6 +346,10 @@ class FunctionGenerator extends NotCBaseVisitor<Void> {
     @Override
     public Void visitInitializationStatement(InitializationStatementContext initStm) {
         targetMethod.reserveVarMemory(initStm.varDecl);
+        if (isDeadStore(initStm.varDecl)) {
+            exprGen.generateDiscarded(initStm.expr);
+            return null;
+        }
         exprGen.generate(initStm.expr);
         targetMethod.emitStore(initStm.varDecl);
         return null;
@@ -55,87 +358,187 @@ class FunctionGenerator extends NotCBaseVisitor<Void> {
     // Expression used as statement
     @Override
     public Void visitExpressionStatement(ExpressionStatementContext exprStm) {
-        Type exprType = exprGen.generate(exprStm.expr);
-        // Value is not used
-        pop(exprType.size());
+        if (!generateTailJump(exprStm.expr))
+            exprGen.generateDiscarded(exprStm.expr);
         return null;
     }
 
+    // Loops are generated with the condition after the body,
+    // so that each iteration ends with a single conditional jump
     @Override
     public Void visitForStatement(ForStatementContext forStm) {
-        Type initType = exprGen.generate(forStm.initExpr);
-        pop(initType.size());
+        targetMethod.pushScope();
+        exprGen.generateDiscarded(forStm.initExpr);
+        if (Boolean.FALSE.equals(knownCondition(forStm.conditionExpr))) {
+            targetMethod.popScope();
+            return null;
+        }
+        List<ExpressionContext> hoisted = hoistInvariants(forStm);
+        CountedLoop counted = null;
+        if (optimizations.contains(Optimization.COUNTED_LOOPS)
+                || optimizations.contains(Optimization.LOOP_UNROLLING))
+            counted = CountedLoop.of(forStm, symTab);
+        if (counted != null && optimizations.contains(Optimization.LOOP_UNROLLING)
+                && counted.canBeUnrolled(forStm))
+            generateUnrolled(forStm, counted.tripCount);
+        else if (counted != null && optimizations.contains(Optimization.COUNTED_LOOPS))
+            generateCounted(forStm, counted.tripCount);
+        else
+            generateLoop(forStm);
+        targetMethod.popScope();
+        exprGen.unhoist(hoisted);
+        return null;
+    }
+
+    private void generateLoop(ForStatementContext forStm) {
+        String bodyLabel = targetMethod.newLabel();
         String testLabel = targetMethod.newLabel();
-        String endLabel = targetMethod.newLabel();
+        targetMethod.emit(Opcode.GOTO, testLabel);
+        targetMethod.insertLabel(bodyLabel);
+        forStm.body.accept(this);
+        exprGen.generateDiscarded(forStm.advanceExpr);
         targetMethod.insertLabel(testLabel);
-        Type condType = exprGen.generate(forStm.conditionExpr);
-        if (condType.isVoid()) // for (;;)
-            targetMethod.emit(Opcode.ICONST_1);
-        targetMethod.emit(Opcode.IFEQ, endLabel); // "if TOS = 0"
+        if (forStm.conditionExpr == null) // for (;;)
+            targetMethod.emit(Opcode.GOTO, bodyLabel);
+        else
+            exprGen.generateCondition(forStm.conditionExpr, true, bodyLabel);
+    }
+
+    // The condition is tested before the body instead of by a jump to the test
+    // after it, and not at all if the number of iterations is known. The counter
+    // is advanced with iinc, and the loop back is a single compare and branch.
+    // HotSpot compiles loops of this shape as counted loops.
+    private void generateCounted(ForStatementContext forStm, Long tripCount) {
+        if (tripCount != null && tripCount == 0)
+            return;
+        String bodyLabel = targetMethod.newLabel();
+        String endLabel = targetMethod.newLabel();
+        if (tripCount == null)
+            exprGen.generateCondition(forStm.conditionExpr, false, endLabel);
+        targetMethod.insertLabel(bodyLabel);
         forStm.body.accept(this);
-        Type advType = exprGen.generate(forStm.advanceExpr);
-        pop(advType.size());
-        targetMethod.emit(Opcode.GOTO, testLabel);
+        exprGen.generateDiscarded(forStm.advanceExpr);
+        exprGen.generateCondition(forStm.conditionExpr, true, bodyLabel);
         targetMethod.insertLabel(endLabel);
-        return null;
     }
 
-    private void pop(int stackEntryCount) {
-        if (stackEntryCount == 0)
-            return;
-        Opcode popOp = (stackEntryCount == 1) ? Opcode.POP : Opcode.POP2;
-        targetMethod.emit(popOp);
+    // The body and the advancement of the counter once per iteration
+    private void generateUnrolled(ForStatementContext forStm, long tripCount) {
+        for (long i = 0; i < tripCount; ++i) {
+            forStm.body.accept(this);
+            exprGen.generateDiscarded(forStm.advanceExpr);
+        }
     }
 
     @Override
     public Void visitWhileStatement(WhileStatementContext whileStm) {
+        if (Boolean.FALSE.equals(knownCondition(whileStm.conditionExpr)))
+            return null;
+        targetMethod.pushScope(); // Of the hoisted values
+        List<ExpressionContext> hoisted = hoistInvariants(whileStm);
+        String bodyLabel = targetMethod.newLabel();
         String testLabel = targetMethod.newLabel();
-        String endLabel = targetMethod.newLabel();
-        targetMethod.insertLabel(testLabel);
-        exprGen.generate(whileStm.conditionExpr);
-        targetMethod.emit(Opcode.IFEQ, endLabel);
-        whileStm.loopedStm.accept(this);
         targetMethod.emit(Opcode.GOTO, testLabel);
-        targetMethod.insertLabel(endLabel);
+        targetMethod.insertLabel(bodyLabel);
+        targetMethod.pushScope();
+        whileStm.loopedStm.accept(this);
+        targetMethod.popScope();
+        targetMethod.insertLabel(testLabel);
+        exprGen.generateCondition(whileStm.conditionExpr, true, bodyLabel);
+        targetMethod.popScope();
+        exprGen.unhoist(hoisted);
         return null;
     }
 
+    // Computes the expressions that are the same in every iteration of a loop before it.
+    // Returns them, to be unhoisted when the scope they are computed in ends.
+    private List<ExpressionContext> hoistInvariants(StatementContext loopStm) {
+        if (loopInvariants == null)
+            return List.of();
+        List<ExpressionContext> hoisted = loopInvariants.hoistedBefore(loopStm);
+        for (ExpressionContext expr : hoisted)
+            exprGen.hoist(expr);
+        return hoisted;
+    }
+
     @Override
     public Void visitIfStatement(IfStatementContext ifStm) {
-        String trueLabel = targetMethod.newLabel();
+        Boolean known = knownCondition(ifStm.conditionExpr);
+        if (known != null) {
+            if (known)
+                generateBranch(ifStm.consequentStm);
+            return null;
+        }
+        if (optimizations.contains(Optimization.DEAD_CODE) && isEmpty(ifStm.consequentStm)) {
+            exprGen.generateDiscarded(ifStm.conditionExpr);
+            return null;
+        }
         String endLabel = targetMethod.newLabel();
-        exprGen.generate(ifStm.conditionExpr);
-        targetMethod.emit(Opcode.IFNE, trueLabel); // "if TOS != 0"
-        targetMethod.emit(Opcode.GOTO, endLabel);
-        targetMethod.insertLabel(trueLabel);
+        exprGen.generateCondition(ifStm.conditionExpr, false, endLabel);
+        targetMethod.pushScope();
         ifStm.consequentStm.accept(this);
+        targetMethod.popScope();
         targetMethod.insertLabel(endLabel);
         return null;
     }
 
     @Override
     public Void visitIfElseStatement(IfElseStatementContext ifElseStm) {
+        Boolean known = knownCondition(ifElseStm.conditionExpr);
+        if (known != null) {
+            generateBranch(known ? ifElseStm.consequentStm : ifElseStm.altStm);
+            return null;
+        }
+        if (optimizations.contains(Optimization.DEAD_CODE) && isEmpty(ifElseStm.consequentStm)) {
+            // Only the else branch, on the opposite condition
+            String endLabel = targetMethod.newLabel();
+            exprGen.generateCondition(ifElseStm.conditionExpr, true, endLabel);
+            generateBranch(ifElseStm.altStm);
+            targetMethod.insertLabel(endLabel);
+            return null;
+        }
         String falseLabel = targetMethod.newLabel();
-        String trueLabel = targetMethod.newLabel();
-        exprGen.generate(ifElseStm.conditionExpr);
-        targetMethod.emit(Opcode.IFEQ, falseLabel);
+        String endLabel = targetMethod.newLabel();
+        exprGen.generateCondition(ifElseStm.conditionExpr, false, falseLabel);
+        targetMethod.pushScope();
         ifElseStm.consequentStm.accept(this);
-        targetMethod.emit(Opcode.GOTO, trueLabel);
+        targetMethod.popScope();
+        // A jump after e.g. a return would target the end of the code
+        // when the other branch returns too
+        if (targetMethod.canFallThrough())
+            targetMethod.emit(Opcode.GOTO, endLabel);
         targetMethod.insertLabel(falseLabel);
+        targetMethod.pushScope();
         ifElseStm.altStm.accept(this);
-        targetMethod.insertLabel(trueLabel);
+        targetMethod.popScope();
+        targetMethod.insertLabel(endLabel);
         return null;
     }
 
+    // The statement of an if or else in its own scope
+    private void generateBranch(StatementContext stm) {
+        targetMethod.pushScope();
+        stm.accept(this);
+        targetMethod.popScope();
+    }
+
     @Override
     public Void visitBlockStatement(BlockStatementContext block) {
-        for (StatementContext stm : block.statements)
-            stm.accept(this);
+        targetMethod.pushScope();
+        generateStatements(block.statements);
+        targetMethod.popScope();
         return null;
     }
 
     @Override
     public Void visitReturnStatement(ReturnStatementContext returnStm) {
+        if (inlinedReturnLabel != null) {
+            exprGen.generate(returnStm.expr);
+            targetMethod.emit(Opcode.GOTO, inlinedReturnLabel);
+            return null;
+        }
+        if (returnStm.expr != null && generateTailJump(returnStm.expr))
+            return null;
         Type returnedType = exprGen.generate(returnStm.expr);
         Opcode returnOp = returnOpByType.get(returnedType);
         targetMethod.emit(returnOp);
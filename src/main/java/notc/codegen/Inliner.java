@@ -0,0 +1,162 @@
+package notc.codegen;
+
+import notc.antlrgen.NotCBaseVisitor;
+import notc.antlrgen.NotCParser.FunctionDefinitionContext;
+import notc.antlrgen.NotCParser.FunctionHeaderContext;
+import notc.antlrgen.NotCParser.StatementContext;
+import notc.antlrgen.NotCParser.ExpressionContext;
+import notc.antlrgen.NotCParser.FunctionCallExpressionContext;
+import notc.semantics.SymbolTable;
+
+import org.antlr.v4.runtime.tree.RuleNode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Decides which calls are replaced by the bodies of the functions they call.
+// Those are functions that do not call themselves, directly or through others,
+// and whose size is at most a limit. The size of a function is the number of
+// statements and expressions in its body, where the calls inlined in it count
+// as the sizes of their callees.
+public final class Inliner {
+    public static final int DEFAULT_LIMIT = 20;
+
+    private final SymbolTable symTab;
+    private final int limit;
+    private final Map<FunctionHeaderContext,FunctionDefinitionContext> definitions;
+    // Calls of defined functions in the body of each function, in order
+    private final Map<FunctionDefinitionContext,List<FunctionCallExpressionContext>> calls;
+    private final Set<FunctionDefinitionContext> recursive;
+    // Sizes of the functions that are not recursive, computed as needed
+    private final Map<FunctionDefinitionContext,Integer> sizes;
+
+    public Inliner(List<FunctionDefinitionContext> funDefs, SymbolTable symTab, int limit) {
+        this.symTab = symTab;
+        this.limit = limit;
+        definitions = new HashMap<>();
+        for (FunctionDefinitionContext funDef : funDefs)
+            definitions.put(funDef.header, funDef);
+        calls = new LinkedHashMap<>();
+        for (FunctionDefinitionContext funDef : funDefs) {
+            CallFinder finder = new CallFinder();
+            for (StatementContext stm : funDef.body)
+                stm.accept(finder);
+            calls.put(funDef, finder.found);
+        }
+        recursive = new HashSet<>();
+        for (FunctionDefinitionContext funDef : funDefs) {
+            if (reaches(funDef, funDef))
+                recursive.add(funDef);
+        }
+        sizes = new HashMap<>();
+    }
+
+    // The definition whose body replaces call, or null if the call is not inlined
+    FunctionDefinitionContext calleeToInline(FunctionCallExpressionContext call) {
+        FunctionDefinitionContext callee = definitionOf(call);
+        return callee != null && isInlined(callee) ? callee : null;
+    }
+
+    // One line per call of a defined function in the program,
+    // telling whether it is inlined, and if not, why
+    public List<String> report() {
+        List<String> lines = new ArrayList<>();
+        calls.forEach((caller, callsInCaller) -> {
+            for (FunctionCallExpressionContext call : callsInCaller) {
+                FunctionDefinitionContext callee = definitionOf(call);
+                String site = "Line " + call.id.getLine() + ":" + call.id.getCharPositionInLine() +
+                              ": call of " + call.id.getText();
+                String into = " into " + caller.header.id.getText();
+                if (isInlined(callee))
+                    lines.add(site + " inlined" + into + " (size " + sizes.get(callee) + ")");
+                else
+                    lines.add(site + " not inlined" + into + ": " + reasonNotInlined(callee));
+            }
+        });
+        return lines;
+    }
+
+    private String reasonNotInlined(FunctionDefinitionContext callee) {
+        if (recursive.contains(callee))
+            return "recursive";
+        return "size " + sizeOf(callee) + " over limit " + limit;
+    }
+
+    private boolean isInlined(FunctionDefinitionContext funDef) {
+        return !recursive.contains(funDef) && sizeOf(funDef) <= limit;
+    }
+
+    // Only for functions that are not recursive, so that the sizes of
+    // the functions they inline are known before their own
+    private int sizeOf(FunctionDefinitionContext funDef) {
+        Integer size = sizes.get(funDef);
+        if (size == null) {
+            SizeCounter counter = new SizeCounter();
+            for (StatementContext stm : funDef.body)
+                stm.accept(counter);
+            size = counter.size;
+            sizes.put(funDef, size);
+        }
+        return size;
+    }
+
+    // Built-ins have no definitions
+    private FunctionDefinitionContext definitionOf(FunctionCallExpressionContext call) {
+        return definitions.get(symTab.lookupFunction(call.id));
+    }
+
+    // Whether there is a chain of calls from caller to callee
+    private boolean reaches(FunctionDefinitionContext caller, FunctionDefinitionContext callee) {
+        Set<FunctionDefinitionContext> visited = new HashSet<>();
+        ArrayDeque<FunctionDefinitionContext> toVisit = new ArrayDeque<>();
+        toVisit.push(caller);
+        while (!toVisit.isEmpty()) {
+            for (FunctionCallExpressionContext call : calls.get(toVisit.pop())) {
+                FunctionDefinitionContext next = definitionOf(call);
+                if (next == callee)
+                    return true;
+                if (visited.add(next))
+                    toVisit.push(next);
+            }
+        }
+        return false;
+    }
+
+    private class CallFinder extends NotCBaseVisitor<Void> {
+        final List<FunctionCallExpressionContext> found = new ArrayList<>();
+
+        @Override
+        public Void visitFunctionCallExpression(FunctionCallExpressionContext call) {
+            if (definitionOf(call) != null)
+                found.add(call);
+            return visitChildren(call);
+        }
+    }
+
+    private class SizeCounter extends NotCBaseVisitor<Void> {
+        int size;
+
+        @Override
+        public Void visitChildren(RuleNode node) {
+            if (node instanceof StatementContext || node instanceof ExpressionContext)
+                ++size;
+            return super.visitChildren(node);
+        }
+
+        // The body of an inlined callee replaces the call
+        @Override
+        public Void visitFunctionCallExpression(FunctionCallExpressionContext call) {
+            FunctionDefinitionContext callee = definitionOf(call);
+            if (callee != null && isInlined(callee))
+                size += sizeOf(callee) - 1;
+            return visitChildren(call);
+        }
+    }
+
+}
@@ -0,0 +1,188 @@
+package notc.codegen;
+
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.Set;
+
+// An element of the code of a method: either an opcode with its operand, given
+// in the same form as in Jasmin text, or a label that jumps can target.
+// Immutable, so passes rewrite code by replacing instructions.
+final class Instruction {
+
+    private static final Set<Opcode> CONDITIONAL_JUMPS = EnumSet.of(
+        Opcode.IF_ICMPLT, Opcode.IF_ICMPGT, Opcode.IF_ICMPGE,
+        Opcode.IF_ICMPLE, Opcode.IF_ICMPEQ, Opcode.IF_ICMPNE,
+        Opcode.IFEQ, Opcode.IFNE, Opcode.IFLT, Opcode.IFGE, Opcode.IFGT, Opcode.IFLE,
+        Opcode.IFNULL, Opcode.IFNONNULL
+    );
+
+    private static final Set<Opcode> WITH_OPERAND = EnumSet.of(
+        Opcode.ISTORE, Opcode.DSTORE, Opcode.ASTORE,
+        Opcode.ILOAD, Opcode.DLOAD, Opcode.ALOAD, Opcode.IINC,
+        Opcode.LDC, Opcode.LDC2_W, Opcode.BIPUSH, Opcode.SIPUSH, Opcode.NEW, Opcode.NEWARRAY,
+        Opcode.GETSTATIC, Opcode.PUTSTATIC,
+        Opcode.INVOKESTATIC, Opcode.INVOKEVIRTUAL, Opcode.INVOKESPECIAL
+    );
+
+    private static final Set<Opcode> RETURNS = EnumSet.of(
+        Opcode.IRETURN, Opcode.DRETURN, Opcode.ARETURN, Opcode.RETURN
+    );
+
+    // Null for labels
+    final Opcode op;
+    // Label name for labels and jumps, otherwise null if the opcode takes no operand
+    final String operand;
+
+    private Instruction(Opcode op, String operand) {
+        this.op = op;
+        this.operand = operand;
+    }
+
+    static Instruction of(Opcode op) {
+        return new Instruction(op, null);
+    }
+
+    static Instruction of(Opcode op, String operand) {
+        return new Instruction(op, operand);
+    }
+
+    // Pushes an int with the shortest encoding
+    static Instruction intConstant(int value) {
+        if (value >= -1 && value <= 5)
+            return of(INT_CONSTANTS[value + 1]);
+        if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE)
+            return of(Opcode.BIPUSH, Integer.toString(value));
+        if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)
+            return of(Opcode.SIPUSH, Integer.toString(value));
+        return of(Opcode.LDC, Integer.toString(value));
+    }
+
+    private static final Opcode[] INT_CONSTANTS = {
+        Opcode.ICONST_M1, Opcode.ICONST_0, Opcode.ICONST_1, Opcode.ICONST_2,
+        Opcode.ICONST_3, Opcode.ICONST_4, Opcode.ICONST_5
+    };
+
+    // Pushes a double with the shortest encoding
+    static Instruction doubleConstant(double value) {
+        if (Double.doubleToRawLongBits(value) == 0) // Not -0.0
+            return of(Opcode.DCONST_0);
+        if (value == 1.0)
+            return of(Opcode.DCONST_1);
+        return of(Opcode.LDC2_W, Double.toString(value));
+    }
+
+    static Instruction label(String name) {
+        return new Instruction(null, name);
+    }
+
+    boolean isLabel() {
+        return op == null;
+    }
+
+    boolean isJump() {
+        return op == Opcode.GOTO || isConditionalJump();
+    }
+
+    boolean isConditionalJump() {
+        return op != null && CONDITIONAL_JUMPS.contains(op);
+    }
+
+    boolean isReturn() {
+        return op != null && RETURNS.contains(op);
+    }
+
+    // Whether the opcode is written with an operand
+    boolean takesOperand() {
+        return op == null || isJump() || WITH_OPERAND.contains(op);
+    }
+
+    // Execution never continues with the next instruction
+    boolean endsFlow() {
+        return op == Opcode.GOTO || isReturn();
+    }
+
+    // Label jumped to, or null if this is not a jump
+    String target() {
+        return isJump() ? operand : null;
+    }
+
+    boolean is(Opcode op) {
+        return this.op == op;
+    }
+
+    // Change in operand stack depth when executed.
+    // Depends on the descriptor for member references.
+    int stackChange() {
+        if (op == null)
+            return 0;
+        switch (op) {
+            case INVOKESTATIC:
+                return methodStackChange(operand);
+            case INVOKEVIRTUAL: case INVOKESPECIAL:
+                return methodStackChange(operand) - 1; // Receiver
+            case GETSTATIC:
+                return typeSize(operand.substring(operand.indexOf(' ') + 1).trim(), 0);
+            case PUTSTATIC:
+                return -typeSize(operand.substring(operand.indexOf(' ') + 1).trim(), 0);
+            default:
+                return op.defaultStackChange;
+        }
+    }
+
+    // Returned minus passed, e.g. -2 for "(II)V"
+    private static int methodStackChange(String reference) {
+        String descriptor = reference.substring(reference.indexOf('('));
+        int change = 0;
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            change -= typeSize(descriptor, i);
+            i = endOfType(descriptor, i);
+        }
+        return change + typeSize(descriptor, i + 1);
+    }
+
+    private static int typeSize(String descriptor, int start) {
+        switch (descriptor.charAt(start)) {
+            case 'V':           return 0;
+            case 'D': case 'J': return 2;
+            default:            return 1;
+        }
+    }
+
+    private static int endOfType(String descriptor, int start) {
+        int i = start;
+        while (descriptor.charAt(i) == '[')
+            ++i;
+        if (descriptor.charAt(i) == 'L')
+            i = descriptor.indexOf(';', i);
+        return i + 1;
+    }
+
+    void writeTo(InstructionSink sink) {
+        if (isLabel())
+            sink.addLabel(operand);
+        else
+            sink.addInstruction(op, operand);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Instruction))
+            return false;
+        Instruction other = (Instruction) o;
+        return op == other.op && Objects.equals(operand, other.operand);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(op, operand);
+    }
+
+    @Override
+    public String toString() {
+        if (isLabel())
+            return operand + ":";
+        return operand == null ? op.mnemonic : op.mnemonic + " " + operand;
+    }
+
+}
@@ -0,0 +1,10 @@
+package notc.codegen;
+
+// Receives the instructions of a method in the order they are generated
+interface InstructionSink {
+
+    void addInstruction(Opcode op, String operand);
+
+    void addLabel(String label);
+
+}
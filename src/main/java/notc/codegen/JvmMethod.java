@@ -6,11 +6,15 @@ import notc.antlrgen.NotCParser.FunctionHeaderContext;
 
 import org.apache.commons.text.TextStringBuilder;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 
 // Instantiated as code generator targets. Tracks state of method being generated.
+// The instructions are kept as a list until the method is written out,
+// either as Jasmin text or assembled directly.
 class JvmMethod {
 
     private static final Map<Type,Opcode> STORE_OP_BY_TYPE = Map.of(
@@ -28,24 +32,32 @@ class JvmMethod {
     );
 
     private final String specification;
-    private final TextStringBuilder body;
+    private final List<Instruction> code;
     private final Map<VariableDeclarationContext,Integer> varAddresses;
+    // Values of nextVarAddress when the enclosing scopes were entered
+    private final ArrayDeque<Integer> scopeStarts;
 
     private int nextVarAddress;
-    private int currentStackDepth;
-    private int maxStackDepth;
+    // Most memory used by variables in scope at the same time
+    private int varMemorySize;
     private int nextLabel;
 
     JvmMethod(FunctionHeaderContext header) {
-        specification = header.specification;
-        body = new TextStringBuilder();
+        this(header.specification, header.params);
+    }
+
+    JvmMethod(String specification, List<VariableDeclarationContext> params) {
+        this.specification = specification;
+        code = new ArrayList<>();
         varAddresses = new HashMap<>();
-        reserveVarMemory(header.params);
+        scopeStarts = new ArrayDeque<>();
+        reserveVarMemory(params);
     }
 
     void reserveVarMemory(VariableDeclarationContext varDecl) {
         varAddresses.put(varDecl, nextVarAddress);
         nextVarAddress += varDecl.type.size();
+        varMemorySize = Math.max(varMemorySize, nextVarAddress);
     }
 
     void reserveVarMemory(List<VariableDeclarationContext> varDecls) {
@@ -53,13 +65,31 @@ class JvmMethod {
             reserveVarMemory(decl);
     }
 
+    // Should be called at the same places as during semantic analysis.
+    // When a scope is exited, the memory of its variables is reused
+    // by variables declared after it.
+    void pushScope() {
+        scopeStarts.push(nextVarAddress);
+    }
+
+    void popScope() {
+        nextVarAddress = scopeStarts.pop();
+    }
+
     void emit(Opcode op) {
         emit(op, null);
     }
 
     void emit(Opcode op, String operand) {
-        addInstruction(op.mnemonic, operand);
-        updateStack(op.defaultStackChange);
+        code.add(Instruction.of(op, operand));
+    }
+
+    void emitConstant(int value) {
+        code.add(Instruction.intConstant(value));
+    }
+
+    void emitConstant(double value) {
+        code.add(Instruction.doubleConstant(value));
     }
 
     void emitLoad(VariableDeclarationContext varDecl) {
@@ -74,32 +104,15 @@ class JvmMethod {
         emit(storeOp, varAddr.toString());
     }
 
-    // Arguments should be generated before call
-    void emitCall(FunctionHeaderContext callee) {
-        Opcode op = Opcode.INVOKESTATIC;
-        addInstruction(op.mnemonic, callee.fqn);
-        int returnStackSize = callee.returnType.size();
-        int paramsStackSize = callee.params.stream()
-            .map(p -> p.type)
-            .mapToInt(Type::size)
-            .sum();
-        // Arguments are popped, return value is pushed
-        int stackChange = returnStackSize - paramsStackSize;
-        updateStack(stackChange);
-    }
-
-    private void addInstruction(String mnemonic, String operand) {
-        body.append(mnemonic);
-        if (operand != null)
-            body.append(" ").append(operand);
-        body.appendNewLine();
+    // Adds delta to an int or bool variable without using the stack
+    void emitIncrement(VariableDeclarationContext varDecl, int delta) {
+        Integer varAddr = varAddresses.get(varDecl);
+        emit(Opcode.IINC, varAddr + " " + delta);
     }
 
-    private void updateStack(int stackChange) {
-        currentStackDepth += stackChange;
-        if (currentStackDepth < 0)
-            throw new IllegalStateException("Negative stack depth");
-        maxStackDepth = Math.max(maxStackDepth, currentStackDepth);
+    // Arguments should be generated before call
+    void emitCall(FunctionHeaderContext callee) {
+        emit(Opcode.INVOKESTATIC, callee.fqn);
     }
 
     // Returns a new label for jump instructions
@@ -108,17 +121,77 @@ class JvmMethod {
     }
 
     void insertLabel(String label) {
-        body.append(label).appendln(":");
+        code.add(Instruction.label(label));
+    }
+
+    // False if the last instruction so far is a return or an unconditional jump
+    boolean canFallThrough() {
+        return code.isEmpty() || !code.get(code.size() - 1).endsFlow();
+    }
+
+    // The instructions generated so far, open to rewriting by optimization passes
+    List<Instruction> code() {
+        return code;
+    }
+
+    // Throws IllegalStateException if the code is not well-formed
+    void verify() {
+        CodeVerifier.verify(specification, code);
     }
 
+    // Jasmin text of the method
     String collectCode() {
+        JasminText body = new JasminText();
+        writeCode(body);
         return String.join(System.lineSeparator(),
             ".method public static " + specification,
-            ".limit locals " + nextVarAddress,
-            ".limit stack " + maxStackDepth,
-            body,
+            ".limit locals " + varMemorySize,
+            ".limit stack " + maxStackDepth(),
+            body.toString(),
             ".end method"
         );
     }
 
+    // Assembles the method into classFile
+    void addTo(ClassFileWriter classFile) {
+        CodeBuffer body = classFile.newCode();
+        writeCode(body);
+        int paren = specification.indexOf('(');
+        classFile.addMethod(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_STATIC,
+                            specification.substring(0, paren),
+                            specification.substring(paren),
+                            body, maxStackDepth(), varMemorySize);
+    }
+
+    private void writeCode(InstructionSink sink) {
+        for (Instruction instr : code)
+            instr.writeTo(sink);
+    }
+
+    private int maxStackDepth() {
+        return new ControlFlowGraph(code).maxStackDepth();
+    }
+
+    private static class JasminText implements InstructionSink {
+        private final TextStringBuilder text = new TextStringBuilder();
+
+        @Override
+        public void addInstruction(Opcode op, String operand) {
+            text.append(op.mnemonic);
+            if (operand != null)
+                text.append(" ").append(operand);
+            text.appendNewLine();
+        }
+
+        @Override
+        public void addLabel(String label) {
+            text.append(label).appendln(":");
+        }
+
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+
 }
\ No newline at end of file
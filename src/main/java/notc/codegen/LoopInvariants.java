@@ -0,0 +1,232 @@
+package notc.codegen;
+
+import notc.antlrgen.NotCBaseVisitor;
+import notc.antlrgen.NotCParser;
+import notc.antlrgen.NotCParser.FunctionDefinitionContext;
+import notc.antlrgen.NotCParser.VariableDeclarationContext;
+import notc.antlrgen.NotCParser.StatementContext;
+import notc.antlrgen.NotCParser.ForStatementContext;
+import notc.antlrgen.NotCParser.WhileStatementContext;
+import notc.antlrgen.NotCParser.ExpressionContext;
+import notc.antlrgen.NotCParser.NegationExpressionContext;
+import notc.antlrgen.NotCParser.FalseLiteralExpressionContext;
+import notc.antlrgen.NotCParser.TrueLiteralExpressionContext;
+import notc.antlrgen.NotCParser.DoubleLiteralExpressionContext;
+import notc.antlrgen.NotCParser.IntLiteralExpressionContext;
+import notc.antlrgen.NotCParser.StringLiteralExpressionContext;
+import notc.antlrgen.NotCParser.VariableExpressionContext;
+import notc.antlrgen.NotCParser.ArithmeticExpressionContext;
+import notc.antlrgen.NotCParser.ComparisonExpressionContext;
+import notc.antlrgen.NotCParser.BinaryBooleanExpressionContext;
+import notc.antlrgen.NotCParser.ParenthesizedExpressionContext;
+import notc.semantics.ConstantFolder;
+import notc.semantics.SymbolTable;
+import notc.semantics.VariableWrites;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.RuleNode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Finds the expressions in loops that compute the same value in every iteration,
+// so that they can be computed once before the loop instead. Those are operations
+// without calls or assignments, on variables that are declared outside the loop
+// and not assigned in it. As the loop might not have evaluated them at all, int
+// divisions that could throw are left in place. Loops are analyzed from the inside
+// out, and each expression is hoisted out of the outermost loop it is invariant in.
+final class LoopInvariants {
+    private final SymbolTable symTab;
+    private final Map<StatementContext,List<ExpressionContext>> hoisted;
+    // The loop each hoisted expression is computed before
+    private final Map<ExpressionContext,StatementContext> loops;
+
+    LoopInvariants(List<FunctionDefinitionContext> funDefs, SymbolTable symTab) {
+        this.symTab = symTab;
+        hoisted = new HashMap<>();
+        loops = new HashMap<>();
+        LoopFinder finder = new LoopFinder();
+        for (FunctionDefinitionContext funDef : funDefs) {
+            for (StatementContext stm : funDef.body)
+                stm.accept(finder);
+        }
+    }
+
+    // The expressions to compute before loopStm, in the order they are evaluated
+    List<ExpressionContext> hoistedBefore(StatementContext loopStm) {
+        return hoisted.getOrDefault(loopStm, List.of());
+    }
+
+    // The parts of a loop that are evaluated in each iteration
+    private void analyze(StatementContext loopStm, ParserRuleContext... parts) {
+        VariableWrites writes = new VariableWrites(symTab);
+        for (ParserRuleContext part : parts) {
+            if (part != null)
+                part.accept(writes);
+        }
+        InvariantFinder finder = new InvariantFinder(loopStm, writes.written());
+        for (ParserRuleContext part : parts) {
+            if (part != null)
+                part.accept(finder);
+        }
+        for (ExpressionContext expr : finder.found) {
+            // Already hoisted out of an inner loop
+            StatementContext innerLoop = loops.put(expr, loopStm);
+            if (innerLoop != null)
+                hoisted.get(innerLoop).remove(expr);
+        }
+        hoisted.put(loopStm, finder.found);
+    }
+
+    private static boolean isInside(ParserRuleContext node, StatementContext loopStm) {
+        for (ParserRuleContext n = node; n != null; n = n.getParent()) {
+            if (n == loopStm)
+                return true;
+        }
+        return false;
+    }
+
+    private class LoopFinder extends NotCBaseVisitor<Void> {
+
+        @Override
+        public Void visitForStatement(ForStatementContext forStm) {
+            visitChildren(forStm);
+            // The initialization is evaluated once, before the hoisted expressions
+            analyze(forStm, forStm.conditionExpr, forStm.body, forStm.advanceExpr);
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStatement(WhileStatementContext whileStm) {
+            visitChildren(whileStm);
+            analyze(whileStm, whileStm.conditionExpr, whileStm.loopedStm);
+            return null;
+        }
+    }
+
+    // Finds the largest invariant expressions worth hoisting
+    private class InvariantFinder extends NotCBaseVisitor<Void> {
+        final List<ExpressionContext> found = new ArrayList<>();
+        private final InvarianceChecker checker;
+
+        InvariantFinder(StatementContext loopStm, Set<VariableDeclarationContext> written) {
+            checker = new InvarianceChecker(loopStm, written);
+        }
+
+        @Override
+        public Void visitChildren(RuleNode node) {
+            if (node instanceof ExpressionContext) {
+                ExpressionContext expr = (ExpressionContext) node;
+                if (isWorthHoisting(expr) && expr.accept(checker)) {
+                    found.add(expr);
+                    return null;
+                }
+            }
+            return super.visitChildren(node);
+        }
+
+        // An operation that reads a variable. Loads of variables and
+        // constants are no more expensive than loads of hoisted values.
+        private boolean isWorthHoisting(ExpressionContext expr) {
+            if (!(expr instanceof ArithmeticExpressionContext || expr instanceof NegationExpressionContext))
+                return false;
+            return ConstantFolder.valueOf(expr) == null && readsVariable(expr);
+        }
+
+        private boolean readsVariable(ParserRuleContext node) {
+            if (node instanceof VariableExpressionContext)
+                return true;
+            for (int i = 0; i < node.getChildCount(); ++i) {
+                if (node.getChild(i) instanceof ParserRuleContext
+                        && readsVariable((ParserRuleContext) node.getChild(i)))
+                    return true;
+            }
+            return false;
+        }
+    }
+
+    // Whether an expression has the same value in every iteration of a loop.
+    // Calls, assignments, increments and decrements are not.
+    private class InvarianceChecker extends NotCBaseVisitor<Boolean> {
+        private final StatementContext loopStm;
+        private final Set<VariableDeclarationContext> written;
+
+        InvarianceChecker(StatementContext loopStm, Set<VariableDeclarationContext> written) {
+            this.loopStm = loopStm;
+            this.written = written;
+        }
+
+        @Override
+        protected Boolean defaultResult() {
+            return false;
+        }
+
+        // Declared in the loop means initialized in each iteration
+        @Override
+        public Boolean visitVariableExpression(VariableExpressionContext varExpr) {
+            VariableDeclarationContext varDecl = symTab.lookupVariable(varExpr.varId);
+            return !written.contains(varDecl) && !isInside(varDecl, loopStm);
+        }
+
+        @Override
+        public Boolean visitFalseLiteralExpression(FalseLiteralExpressionContext falseLitExpr) {
+            return true;
+        }
+
+        @Override
+        public Boolean visitTrueLiteralExpression(TrueLiteralExpressionContext trueLitExpr) {
+            return true;
+        }
+
+        @Override
+        public Boolean visitDoubleLiteralExpression(DoubleLiteralExpressionContext doubleLitExpr) {
+            return true;
+        }
+
+        @Override
+        public Boolean visitIntLiteralExpression(IntLiteralExpressionContext intLitExpr) {
+            return true;
+        }
+
+        @Override
+        public Boolean visitStringLiteralExpression(StringLiteralExpressionContext stringLitExpr) {
+            return true;
+        }
+
+        @Override
+        public Boolean visitParenthesizedExpression(ParenthesizedExpressionContext paren) {
+            return paren.expr.accept(this);
+        }
+
+        @Override
+        public Boolean visitNegationExpression(NegationExpressionContext negation) {
+            return negation.opnd.accept(this);
+        }
+
+        // idiv and irem throw on division by zero
+        @Override
+        public Boolean visitArithmeticExpression(ArithmeticExpressionContext arithmExpr) {
+            int op = arithmExpr.op.getType();
+            if (!arithmExpr.type.isDouble() && (op == NotCParser.DIV || op == NotCParser.REM)) {
+                Object divisor = ConstantFolder.valueOf(arithmExpr.opnd2);
+                if (divisor == null || (Integer) divisor == 0)
+                    return false;
+            }
+            return arithmExpr.opnd1.accept(this) && arithmExpr.opnd2.accept(this);
+        }
+
+        @Override
+        public Boolean visitComparisonExpression(ComparisonExpressionContext compExpr) {
+            return compExpr.opnd1.accept(this) && compExpr.opnd2.accept(this);
+        }
+
+        @Override
+        public Boolean visitBinaryBooleanExpression(BinaryBooleanExpressionContext binBoolExpr) {
+            return binBoolExpr.opnd1.accept(this) && binBoolExpr.opnd2.accept(this);
+        }
+    }
+
+}
@@ -0,0 +1,11 @@
+package notc.codegen;
+
+// Whether the results of recursive pure functions are cached. Unlike
+// optimizations, caching costs memory, so it is off unless requested. See Memoizer.
+public enum Memoization {
+    NONE,
+    CACHED,
+    // Also prints the hits and misses of each cache when main returns
+    REPORTED
+
+}
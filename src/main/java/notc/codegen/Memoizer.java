@@ -0,0 +1,297 @@
+package notc.codegen;
+
+import notc.antlrgen.NotCParser.Type;
+import notc.antlrgen.NotCParser.FunctionDefinitionContext;
+import notc.antlrgen.NotCParser.FunctionHeaderContext;
+import notc.antlrgen.NotCParser.VariableDeclarationContext;
+import notc.semantics.Purity;
+import notc.semantics.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// Caches the results of recursive functions that are pure, whose parameters are
+// between one and three ints or bools, and that return an int, bool or double.
+// Such a function is generated as a method with its body under another name, and
+// a method under its own name that calls it only for arguments not in the cache.
+//
+// Each cache is a hash table of static arrays that is allocated on the first call.
+// A key is looked for in up to PROBES slots from the one its hash selects. If all
+// of them hold other keys, the entry in the selected slot is replaced, so that
+// the table never grows. Hits and misses are counted for the report.
+final class Memoizer {
+    // Entries per table
+    static final int TABLE_BITS = 12;
+    static final int TABLE_SIZE = 1 << TABLE_BITS;
+    static final int PROBES = 4;
+    static final int MAX_KEY_PARAMS = 3;
+    // Prints the counts of all caches
+    static final String REPORT_SPECIFICATION = "$memoReport()V";
+
+    // Fibonacci hashing: the golden ratio scaled to 32 bits
+    private static final int HASH_MULTIPLIER = 0x9e3779b9;
+
+    private final Set<FunctionDefinitionContext> memoized;
+
+    // Functions that tail calls merge with others are left alone, if tailCalls is not null
+    Memoizer(List<FunctionDefinitionContext> funDefs, SymbolTable symTab, TailCalls tailCalls) {
+        Purity purity = new Purity(funDefs, symTab);
+        CallGraph callGraph = new CallGraph(funDefs, symTab);
+        memoized = new LinkedHashSet<>();
+        for (FunctionDefinitionContext funDef : funDefs) {
+            if (purity.isPure(funDef) && callGraph.isRecursive(funDef) && hasPrimitiveKey(funDef.header)
+                    && (tailCalls == null || tailCalls.groupOf(funDef) == null))
+                memoized.add(funDef);
+        }
+    }
+
+    private static boolean hasPrimitiveKey(FunctionHeaderContext header) {
+        Type returnType = header.returnType;
+        if (!returnType.isInt() && !returnType.isBool() && !returnType.isDouble())
+            return false;
+        if (header.params.isEmpty() || header.params.size() > MAX_KEY_PARAMS)
+            return false;
+        return header.params.stream().allMatch(param -> param.type.isInt() || param.type.isBool());
+    }
+
+    boolean isMemoized(FunctionDefinitionContext funDef) {
+        return memoized.contains(funDef);
+    }
+
+    boolean isEmpty() {
+        return memoized.isEmpty();
+    }
+
+    // The method that the body of header is generated as
+    static String bodySpecification(FunctionHeaderContext header) {
+        // "$" is not allowed in identifiers, so no function has this name
+        return header.id.getText() + "$body" + header.specification.substring(header.id.getText().length());
+    }
+
+    // Names and descriptors of the static fields the caches are kept in, e.g. "fib$keys [I"
+    List<String> fields() {
+        List<String> fields = new ArrayList<>();
+        for (FunctionDefinitionContext funDef : memoized) {
+            Cache cache = new Cache(funDef.header);
+            fields.add(cache.keys);
+            fields.add(cache.used);
+            fields.add(cache.values);
+            fields.add(cache.hits);
+            fields.add(cache.misses);
+        }
+        return fields;
+    }
+
+    // Static field names of a function's cache, as "name descriptor", and in
+    // references as "owner/name descriptor"
+    private static class Cache {
+        final String owner;
+        // Arguments of each entry, one after the other
+        final String keys;
+        // 1 for slots that hold entries
+        final String used;
+        final String values;
+        final String hits;
+        final String misses;
+
+        Cache(FunctionHeaderContext header) {
+            owner = header.fqn.substring(0, header.fqn.length() - header.specification.length());
+            String name = header.id.getText();
+            keys = name + "$keys [I";
+            used = name + "$used [I";
+            values = name + "$values " + (header.returnType.isDouble() ? "[D" : "[I");
+            hits = name + "$hits J";
+            misses = name + "$misses J";
+        }
+
+        String ref(String field) {
+            return owner + field;
+        }
+    }
+
+    // The method under the function's own name, which looks up the arguments
+    // in the cache and calls the body on a miss
+    JvmMethod wrapper(FunctionDefinitionContext funDef) {
+        FunctionHeaderContext header = funDef.header;
+        Cache cache = new Cache(header);
+        List<VariableDeclarationContext> params = header.params;
+        int keySize = params.size();
+        boolean doubleValues = header.returnType.isDouble();
+        Opcode valueLoad = doubleValues ? Opcode.DALOAD : Opcode.IALOAD;
+        Opcode valueStore = doubleValues ? Opcode.DASTORE : Opcode.IASTORE;
+        Opcode valueReturn = doubleValues ? Opcode.DRETURN : Opcode.IRETURN;
+
+        JvmMethod method = new JvmMethod(header);
+        VariableDeclarationContext home = newVariable(method, Type.INT);
+        VariableDeclarationContext probe = newVariable(method, Type.INT);
+        VariableDeclarationContext slot = newVariable(method, Type.INT);
+        VariableDeclarationContext result = newVariable(method, header.returnType);
+
+        String readyLabel = method.newLabel();
+        method.emit(Opcode.GETSTATIC, cache.ref(cache.keys));
+        method.emit(Opcode.IFNONNULL, readyLabel);
+        method.emitConstant(TABLE_SIZE * keySize);
+        method.emit(Opcode.NEWARRAY, "int");
+        method.emit(Opcode.PUTSTATIC, cache.ref(cache.keys));
+        method.emitConstant(TABLE_SIZE);
+        method.emit(Opcode.NEWARRAY, "int");
+        method.emit(Opcode.PUTSTATIC, cache.ref(cache.used));
+        method.emitConstant(TABLE_SIZE);
+        method.emit(Opcode.NEWARRAY, doubleValues ? "double" : "int");
+        method.emit(Opcode.PUTSTATIC, cache.ref(cache.values));
+        method.insertLabel(readyLabel);
+
+        // home = (((p0 * 31 + p1) * 31 + p2) * HASH_MULTIPLIER) >>> (32 - TABLE_BITS)
+        method.emitLoad(params.get(0));
+        for (int i = 1; i < keySize; ++i) {
+            method.emitConstant(31);
+            method.emit(Opcode.IMUL);
+            method.emitLoad(params.get(i));
+            method.emit(Opcode.IADD);
+        }
+        method.emitConstant(HASH_MULTIPLIER);
+        method.emit(Opcode.IMUL);
+        method.emitConstant(32 - TABLE_BITS);
+        method.emit(Opcode.IUSHR);
+        method.emitStore(home);
+        method.emitConstant(0);
+        method.emitStore(probe);
+
+        String probeLabel = method.newLabel();
+        String nextLabel = method.newLabel();
+        String missLabel = method.newLabel();
+        method.insertLabel(probeLabel);
+        method.emitLoad(home);
+        method.emitLoad(probe);
+        method.emit(Opcode.IADD);
+        method.emitConstant(TABLE_SIZE - 1);
+        method.emit(Opcode.IAND);
+        method.emitStore(slot);
+        method.emit(Opcode.GETSTATIC, cache.ref(cache.used));
+        method.emitLoad(slot);
+        method.emit(Opcode.IALOAD);
+        method.emit(Opcode.IFEQ, missLabel); // Free slot
+        for (int i = 0; i < keySize; ++i) {
+            emitKeyAddress(method, cache, slot, keySize, i);
+            method.emit(Opcode.IALOAD);
+            method.emitLoad(params.get(i));
+            method.emit(Opcode.IF_ICMPNE, nextLabel);
+        }
+        emitCount(method, cache.ref(cache.hits));
+        method.emit(Opcode.GETSTATIC, cache.ref(cache.values));
+        method.emitLoad(slot);
+        method.emit(valueLoad);
+        method.emit(valueReturn);
+
+        method.insertLabel(nextLabel);
+        method.emitIncrement(probe, 1);
+        method.emitLoad(probe);
+        method.emitConstant(PROBES);
+        method.emit(Opcode.IF_ICMPLT, probeLabel);
+        // Evicts the entry in the selected slot
+        method.emitLoad(home);
+        method.emitStore(slot);
+
+        method.insertLabel(missLabel);
+        emitCount(method, cache.ref(cache.misses));
+        for (VariableDeclarationContext param : params)
+            method.emitLoad(param);
+        method.emit(Opcode.INVOKESTATIC, cache.owner + bodySpecification(header));
+        method.emitStore(result);
+        // The body may have filled the slot with other entries in the meantime
+        for (int i = 0; i < keySize; ++i) {
+            emitKeyAddress(method, cache, slot, keySize, i);
+            method.emitLoad(params.get(i));
+            method.emit(Opcode.IASTORE);
+        }
+        method.emit(Opcode.GETSTATIC, cache.ref(cache.used));
+        method.emitLoad(slot);
+        method.emitConstant(1);
+        method.emit(Opcode.IASTORE);
+        method.emit(Opcode.GETSTATIC, cache.ref(cache.values));
+        method.emitLoad(slot);
+        method.emitLoad(result);
+        method.emit(valueStore);
+        method.emitLoad(result);
+        method.emit(valueReturn);
+        return method;
+    }
+
+    private static VariableDeclarationContext newVariable(JvmMethod method, Type t) {
+        VariableDeclarationContext var = new VariableDeclarationContext(null, 0);
+        var.type = t;
+        method.reserveVarMemory(var);
+        return var;
+    }
+
+    // Pushes the keys array and the index of argument i of the entry in slot
+    private static void emitKeyAddress(JvmMethod method, Cache cache, VariableDeclarationContext slot,
+                                       int keySize, int i) {
+        method.emit(Opcode.GETSTATIC, cache.ref(cache.keys));
+        method.emitLoad(slot);
+        if (keySize > 1) {
+            method.emitConstant(keySize);
+            method.emit(Opcode.IMUL);
+        }
+        if (i > 0) {
+            method.emitConstant(i);
+            method.emit(Opcode.IADD);
+        }
+    }
+
+    private static void emitCount(JvmMethod method, String counter) {
+        method.emit(Opcode.GETSTATIC, counter);
+        method.emit(Opcode.LCONST_1);
+        method.emit(Opcode.LADD);
+        method.emit(Opcode.PUTSTATIC, counter);
+    }
+
+    // Prints a line per cache to standard error, e.g.
+    // "fib: 29 misses, 27 hits, hit rate 48.2%"
+    JvmMethod reportMethod() {
+        JvmMethod method = new JvmMethod(REPORT_SPECIFICATION, List.of());
+        String builder = "java/lang/StringBuilder";
+        String append = builder + ".append";
+        for (FunctionDefinitionContext funDef : memoized) {
+            Cache cache = new Cache(funDef.header);
+            method.emit(Opcode.GETSTATIC, "java/lang/System.err Ljava/io/PrintStream;");
+            method.emit(Opcode.NEW, builder);
+            method.emit(Opcode.DUP);
+            method.emit(Opcode.INVOKESPECIAL, builder + ".<init>()V");
+            method.emit(Opcode.LDC, "\"" + funDef.header.id.getText() + ": \"");
+            method.emit(Opcode.INVOKEVIRTUAL, append + "(Ljava/lang/String;)Ljava/lang/StringBuilder;");
+            method.emit(Opcode.GETSTATIC, cache.ref(cache.misses));
+            method.emit(Opcode.INVOKEVIRTUAL, append + "(J)Ljava/lang/StringBuilder;");
+            method.emit(Opcode.LDC, "\" misses, \"");
+            method.emit(Opcode.INVOKEVIRTUAL, append + "(Ljava/lang/String;)Ljava/lang/StringBuilder;");
+            method.emit(Opcode.GETSTATIC, cache.ref(cache.hits));
+            method.emit(Opcode.INVOKEVIRTUAL, append + "(J)Ljava/lang/StringBuilder;");
+            method.emit(Opcode.LDC, "\" hits, hit rate \"");
+            method.emit(Opcode.INVOKEVIRTUAL, append + "(Ljava/lang/String;)Ljava/lang/StringBuilder;");
+            // Math.round(hits * 1000.0 / (hits + misses)) / 10.0, which is 0 without calls
+            method.emit(Opcode.GETSTATIC, cache.ref(cache.hits));
+            method.emit(Opcode.L2D);
+            method.emitConstant(1000.0);
+            method.emit(Opcode.DMUL);
+            method.emit(Opcode.GETSTATIC, cache.ref(cache.hits));
+            method.emit(Opcode.GETSTATIC, cache.ref(cache.misses));
+            method.emit(Opcode.LADD);
+            method.emit(Opcode.L2D);
+            method.emit(Opcode.DDIV);
+            method.emit(Opcode.INVOKESTATIC, "java/lang/Math.round(D)J");
+            method.emit(Opcode.L2D);
+            method.emitConstant(10.0);
+            method.emit(Opcode.DDIV);
+            method.emit(Opcode.INVOKEVIRTUAL, append + "(D)Ljava/lang/StringBuilder;");
+            method.emit(Opcode.LDC, "\"%\"");
+            method.emit(Opcode.INVOKEVIRTUAL, append + "(Ljava/lang/String;)Ljava/lang/StringBuilder;");
+            method.emit(Opcode.INVOKEVIRTUAL, builder + ".toString()Ljava/lang/String;");
+            method.emit(Opcode.INVOKEVIRTUAL, "java/io/PrintStream.println(Ljava/lang/String;)V");
+        }
+        method.emit(Opcode.RETURN);
+        return method;
+    }
+
+}
@@ -1,61 +1,96 @@
 package notc.codegen;
 
-// Opcodes and their impact on the stack depth when executed
-enum Opcode {                          // Stack:
-    IADD         ("iadd",        -1),  // [ i i ] -> [ i ]
-    ISUB         ("isub",        -1),
-    IMUL         ("imul",        -1),
-    IDIV         ("idiv",        -1),
-    IREM         ("irem",        -1),
-    IOR          ("ior",         -1),
-    IUSHR        ("iushr",       -1),
-    DADD         ("dadd",        -2),  // [ d d ] -> [ d ]
-    DSUB         ("dsub",        -2),
-    DMUL         ("dmul",        -2),
-    DDIV         ("ddiv",        -2),
-    DREM         ("drem",        -2),
-    ISTORE       ("istore",      -1),  // [ val ] -> [ ]
-    DSTORE       ("dstore",      -2),
-    ASTORE       ("astore",      -1),
-    ILOAD        ("iload",        1),  // [ ] -> [ val ]
-    DLOAD        ("dload",        2),
-    ALOAD        ("aload",        1),
-    LDC          ("ldc",          1),
-    LDC2_W       ("ldc2_w",       2),
-    ICONST_0     ("iconst_0",     1),
-    ICONST_1     ("iconst_1",     1),
-    ICONST_M1    ("iconst_m1",    1),
-    DCONST_1     ("dconst_1",     2),
-    IF_ICMPLT    ("if_icmplt",   -2),  // [ i i ] -> [ ]
-    IF_ICMPGT    ("if_icmpgt",   -2),
-    IF_ICMPGE    ("if_icmpge",   -2),
-    IF_ICMPLE    ("if_icmple",   -2),
-    IF_ICMPEQ    ("if_icmpeq",   -2),
-    IF_ICMPNE    ("if_icmpne",   -2),
-    DUP          ("dup",          1),  // [ val ] -> [ val val ]
-    DUP2         ("dup2",         2),
-    POP          ("pop",         -1),  // [ val ] -> [ ]
-    POP2         ("pop2",        -2),
-    DCMPG        ("dcmpg",       -3),  // [ d d ] -> [ i ]
-    IFEQ         ("ifeq",        -1),  // [ i ] -> [ ]
-    IFNE         ("ifne",        -1),
-    I2D          ("i2d",          1),  // [ i ] -> [ d ]
-    D2I          ("d2i",         -1),  // [ d ] -> [ i ]
-    INEG         ("ineg",         0),  // [ val ] -> [ val ]
-    DNEG         ("dneg",         0),
-    IRETURN      ("ireturn",     -1),  // [ returnval ] -> [ ]
-    DRETURN      ("dreturn",     -2),
-    ARETURN      ("areturn",     -1),
-    RETURN       ("return",       0),  // [ ] -> [ ]
-    GOTO         ("goto",         0),
-    INVOKESTATIC ("invokestatic", 0);
+// Opcodes, their encodings, and their impact on the stack depth when executed
+enum Opcode {                                // Stack:
+    IADD          ("iadd",          0x60, -1),  // [ i i ] -> [ i ]
+    ISUB          ("isub",          0x64, -1),
+    IMUL          ("imul",          0x68, -1),
+    IDIV          ("idiv",          0x6c, -1),
+    IREM          ("irem",          0x70, -1),
+    IOR           ("ior",           0x80, -1),
+    IUSHR         ("iushr",         0x7c, -1),
+    ISHL          ("ishl",          0x78, -1),
+    ISHR          ("ishr",          0x7a, -1),
+    IAND          ("iand",          0x7e, -1),
+    LADD          ("ladd",          0x61, -2),  // [ l l ] -> [ l ]
+    DADD          ("dadd",          0x63, -2),  // [ d d ] -> [ d ]
+    DSUB          ("dsub",          0x67, -2),
+    DMUL          ("dmul",          0x6b, -2),
+    DDIV          ("ddiv",          0x6f, -2),
+    DREM          ("drem",          0x73, -2),
+    ISTORE        ("istore",        0x36, -1),  // [ val ] -> [ ]
+    DSTORE        ("dstore",        0x39, -2),
+    ASTORE        ("astore",        0x3a, -1),
+    ILOAD         ("iload",         0x15,  1),  // [ ] -> [ val ]
+    DLOAD         ("dload",         0x18,  2),
+    ALOAD         ("aload",         0x19,  1),
+    LDC           ("ldc",           0x12,  1),
+    LDC2_W        ("ldc2_w",        0x14,  2),
+    ICONST_0      ("iconst_0",      0x03,  1),
+    ICONST_1      ("iconst_1",      0x04,  1),
+    ICONST_2      ("iconst_2",      0x05,  1),
+    ICONST_3      ("iconst_3",      0x06,  1),
+    ICONST_4      ("iconst_4",      0x07,  1),
+    ICONST_5      ("iconst_5",      0x08,  1),
+    ICONST_M1     ("iconst_m1",     0x02,  1),
+    BIPUSH        ("bipush",        0x10,  1),
+    SIPUSH        ("sipush",        0x11,  1),
+    ACONST_NULL   ("aconst_null",   0x01,  1),
+    DCONST_0      ("dconst_0",      0x0e,  2),
+    DCONST_1      ("dconst_1",      0x0f,  2),
+    LCONST_1      ("lconst_1",      0x0a,  2),
+    IF_ICMPLT     ("if_icmplt",     0xa1, -2),  // [ i i ] -> [ ]
+    IF_ICMPGT     ("if_icmpgt",     0xa3, -2),
+    IF_ICMPGE     ("if_icmpge",     0xa2, -2),
+    IF_ICMPLE     ("if_icmple",     0xa4, -2),
+    IF_ICMPEQ     ("if_icmpeq",     0x9f, -2),
+    IF_ICMPNE     ("if_icmpne",     0xa0, -2),
+    DUP           ("dup",           0x59,  1),  // [ val ] -> [ val val ]
+    DUP2          ("dup2",          0x5c,  2),
+    POP           ("pop",           0x57, -1),  // [ val ] -> [ ]
+    POP2          ("pop2",          0x58, -2),
+    DCMPG         ("dcmpg",         0x98, -3),  // [ d d ] -> [ i ]
+    DCMPL         ("dcmpl",         0x97, -3),
+    IFEQ          ("ifeq",          0x99, -1),  // [ i ] -> [ ]
+    IFNE          ("ifne",          0x9a, -1),
+    IFLT          ("iflt",          0x9b, -1),
+    IFGE          ("ifge",          0x9c, -1),
+    IFGT          ("ifgt",          0x9d, -1),
+    IFLE          ("ifle",          0x9e, -1),
+    IFNULL        ("ifnull",        0xc6, -1),
+    IFNONNULL     ("ifnonnull",     0xc7, -1),
+    I2D           ("i2d",           0x87,  1),  // [ i ] -> [ d ]
+    D2I           ("d2i",           0x8e, -1),  // [ d ] -> [ i ]
+    L2D           ("l2d",           0x8a,  0),  // [ l ] -> [ d ]
+    INEG          ("ineg",          0x74,  0),  // [ val ] -> [ val ]
+    DNEG          ("dneg",          0x77,  0),
+    IRETURN       ("ireturn",       0xac, -1),  // [ returnval ] -> [ ]
+    DRETURN       ("dreturn",       0xaf, -2),
+    ARETURN       ("areturn",       0xb0, -1),
+    RETURN        ("return",        0xb1,  0),  // [ ] -> [ ]
+    GOTO          ("goto",          0xa7,  0),
+    IINC          ("iinc",          0x84,  0),  // Adds constant to local int
+    NEW           ("new",           0xbb,  1),  // [ ] -> [ ref ]
+    NEWARRAY      ("newarray",      0xbc,  0),  // [ length ] -> [ ref ]
+    IALOAD        ("iaload",        0x2e, -1),  // [ ref index ] -> [ val ]
+    DALOAD        ("daload",        0x31,  0),
+    IASTORE       ("iastore",       0x4f, -3),  // [ ref index val ] -> [ ]
+    DASTORE       ("dastore",       0x52, -4),
+    // Depend on the member referenced
+    GETSTATIC     ("getstatic",     0xb2,  0),
+    PUTSTATIC     ("putstatic",     0xb3,  0),
+    INVOKESTATIC  ("invokestatic",  0xb8,  0),
+    INVOKEVIRTUAL ("invokevirtual", 0xb6,  0),
+    INVOKESPECIAL ("invokespecial", 0xb7,  0);
 
     final String mnemonic;
+    final int code;
     final int defaultStackChange;
 
-    Opcode(String mnemonic, int defaultStackChange) {
+    Opcode(String mnemonic, int code, int defaultStackChange) {
         this.mnemonic = mnemonic;
+        this.code = code;
         this.defaultStackChange = defaultStackChange;
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,50 @@
+package notc.codegen;
+
+// Optional transformations of the generated code. The generators apply those
+// in the set they are given, and the compiler runs the analyses they need.
+public enum Optimization {
+    // Computes expressions whose values are known at compile time,
+    // including reads of variables assigned such values once. See ConstantFolder.
+    CONSTANT_FOLDING,
+    // Rewrites short instruction sequences within methods. See Peephole.
+    PEEPHOLE,
+    // Compiles conditions of statements and operands of && and || to jumps
+    // instead of computing a 0 or 1 and testing it
+    JUMP_CONDITIONS,
+    // Replaces calls that end their functions by jumps, where the callee is the
+    // caller or calls it back the same way. See TailCalls.
+    TAIL_CALLS,
+    // Replaces calls of small functions that are not recursive by their bodies.
+    // See Inliner.
+    INLINING,
+    // Generates int arithmetic with a constant operand as cheaper operations,
+    // e.g. multiplications by powers of two as shifts
+    STRENGTH_REDUCTION,
+    // Computes expressions that have the same value in every iteration of a loop
+    // once before it. See LoopInvariants.
+    LOOP_INVARIANTS,
+    // Keeps the values of expressions in new variables where straight-line code
+    // evaluates them again with the same operands. See CommonSubexpressions.
+    COMMON_SUBEXPRESSIONS,
+    // Generates for loops that count a variable toward a bound with the
+    // condition tested before the first iteration only if not known to hold.
+    // See CountedLoop.
+    COUNTED_LOOPS,
+    // Repeats the bodies of short counted loops with constant bounds instead
+    // of looping
+    LOOP_UNROLLING,
+    // Leaves out statements that cannot be reached, branches whose conditions
+    // are known, and the return at the end of functions that always return
+    DEAD_CODE,
+    // Leaves out stores to variables that are never read. See DeadStores.
+    DEAD_STORES,
+    // Generates only the functions that main can call, directly or through
+    // others, and the built-ins they call. See CallGraph.
+    UNUSED_FUNCTIONS;
+
+    // Name on the command line
+    public String optionName() {
+        return name().toLowerCase().replace('_', '-');
+    }
+
+}
@@ -0,0 +1,410 @@
+package notc.codegen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Rewrites short instruction sequences of a method into cheaper equivalent ones.
+// The rules are tried at every position until none applies, so the result of
+// one rewrite can be matched by another. Every rule shortens the code or moves
+// a jump closer to its final destination, which guarantees termination.
+// Each instance applies a set of the rules, and counts the rewrites made by each
+// in the code it optimized.
+public final class Peephole {
+    private final Set<Rule> rules;
+    private final Map<Rule,Integer> hits = new EnumMap<>(Rule.class);
+
+    Peephole() {
+        this(EnumSet.allOf(Rule.class));
+    }
+
+    Peephole(Set<Rule> rules) {
+        this.rules = rules;
+    }
+
+    public enum Rule {
+        // Instructions after a goto or return that no jump reaches
+        UNREACHABLE_CODE {
+            boolean rewrite(Code code, int i) {
+                if (!code.at(i).endsFlow() || !code.isInstruction(i + 1))
+                    return false;
+                code.replace(i + 1, 1);
+                return true;
+            }
+        },
+        UNUSED_LABEL {
+            boolean rewrite(Code code, int i) {
+                if (!code.isLabel(i) || code.references(code.at(i).operand) > 0)
+                    return false;
+                code.replace(i, 1);
+                return true;
+            }
+        },
+        // goto L; L:  ->  L:
+        JUMP_TO_NEXT {
+            boolean rewrite(Code code, int i) {
+                if (!code.is(i, Opcode.GOTO) || !code.labelsAt(i + 1).contains(code.at(i).operand))
+                    return false;
+                code.replace(i, 1);
+                return true;
+            }
+        },
+        // Jumps to a goto are sent to where the goto leads
+        JUMP_TO_JUMP {
+            boolean rewrite(Code code, int i) {
+                if (!code.at(i).isJump())
+                    return false;
+                String target = code.at(i).operand;
+                String destination = code.finalDestination(target);
+                if (destination.equals(target))
+                    return false;
+                code.replace(i, 1, Instruction.of(code.at(i).op, destination));
+                return true;
+            }
+        },
+        // goto L; ... L: return  ->  return
+        JUMP_TO_RETURN {
+            boolean rewrite(Code code, int i) {
+                if (!code.is(i, Opcode.GOTO))
+                    return false;
+                Instruction atTarget = code.at(code.firstInstructionAt(code.at(i).operand));
+                if (!atTarget.isReturn())
+                    return false;
+                code.replace(i, 1, atTarget);
+                return true;
+            }
+        },
+        // ifXX L1; goto L2; L1:  ->  if!XX L2; L1:
+        INVERTED_BRANCH {
+            boolean rewrite(Code code, int i) {
+                if (!code.at(i).isConditionalJump() || !code.is(i + 1, Opcode.GOTO)
+                        || !code.labelsAt(i + 2).contains(code.at(i).operand))
+                    return false;
+                code.replace(i, 2, Instruction.of(NEGATED.get(code.at(i).op), code.at(i + 1).operand));
+                return true;
+            }
+        },
+        // A 0 or 1 pushed by a comparison only to be tested at once:
+        // iconst_0; goto Le; Lt: iconst_1; Le: ifeq X  ->  goto X; Lt:
+        // iconst_0; goto Le; Lt: iconst_1; Le: ifne X  ->  goto Le; Lt: goto X; Le:
+        BOOLEAN_THEN_BRANCH {
+            boolean rewrite(Code code, int i) {
+                if (!code.is(i, Opcode.ICONST_0) || !code.is(i + 1, Opcode.GOTO)
+                        || !code.isLabel(i + 2) || !code.is(i + 3, Opcode.ICONST_1)
+                        || !code.isLabel(i + 4) || !code.is(i + 5, Opcode.IFEQ, Opcode.IFNE))
+                    return false;
+                Instruction end = code.at(i + 4);
+                if (!code.at(i + 1).operand.equals(end.operand) || code.references(end.operand) != 1)
+                    return false;
+                Instruction trueLabel = code.at(i + 2);
+                Instruction test = code.at(i + 5);
+                if (test.is(Opcode.IFEQ))
+                    code.replace(i, 6, Instruction.of(Opcode.GOTO, test.operand), trueLabel);
+                else
+                    code.replace(i, 6, Instruction.of(Opcode.GOTO, end.operand), trueLabel,
+                                       Instruction.of(Opcode.GOTO, test.operand), end);
+                return true;
+            }
+        },
+        // iconst_1; ifne X  ->  goto X
+        // iconst_1; ifeq X  ->
+        CONSTANT_BRANCH {
+            boolean rewrite(Code code, int i) {
+                if (!code.is(i, Opcode.ICONST_0, Opcode.ICONST_1) || !code.is(i + 1, Opcode.IFEQ, Opcode.IFNE))
+                    return false;
+                boolean jumps = code.is(i, Opcode.ICONST_0) == code.is(i + 1, Opcode.IFEQ);
+                if (jumps)
+                    code.replace(i, 2, Instruction.of(Opcode.GOTO, code.at(i + 1).operand));
+                else
+                    code.replace(i, 2);
+                return true;
+            }
+        },
+        // iconst_0; if_icmpXX L  ->  ifXX L
+        COMPARISON_WITH_ZERO {
+            boolean rewrite(Code code, int i) {
+                if (!code.is(i, Opcode.ICONST_0) || !code.is(i + 1, ZERO_COMPARISON.keySet()))
+                    return false;
+                Instruction jump = code.at(i + 1);
+                code.replace(i, 2, Instruction.of(ZERO_COMPARISON.get(jump.op), jump.operand));
+                return true;
+            }
+        },
+        // The result of dcmpg and dcmpl is -1, 0 or 1, so comparing it with -1 or 1
+        // is a comparison with 0: dcmpg; iconst_m1; if_icmpeq L  ->  dcmpg; iflt L
+        DOUBLE_COMPARISON_RESULT {
+            boolean rewrite(Code code, int i) {
+                if (!code.is(i, Opcode.DCMPG, Opcode.DCMPL) || !code.is(i + 1, Opcode.ICONST_M1, Opcode.ICONST_1)
+                        || !code.is(i + 2, Opcode.IF_ICMPEQ, Opcode.IF_ICMPNE))
+                    return false;
+                boolean minusOne = code.is(i + 1, Opcode.ICONST_M1);
+                boolean equal = code.is(i + 2, Opcode.IF_ICMPEQ);
+                Opcode jump = minusOne ? (equal ? Opcode.IFLT : Opcode.IFGE)
+                                       : (equal ? Opcode.IFGT : Opcode.IFLE);
+                code.replace(i + 1, 2, Instruction.of(jump, code.at(i + 2).operand));
+                return true;
+            }
+        },
+        // Converting to 0 or 1 does not change whether a value is 0
+        BOOLEAN_CONVERSION_THEN_BRANCH {
+            boolean rewrite(Code code, int i) {
+                if (!code.matches(i, BOOLEAN_CONVERSION) || !code.is(i + 5, Opcode.IFEQ, Opcode.IFNE))
+                    return false;
+                code.replace(i, 5);
+                return true;
+            }
+        },
+        // Conversion of a value that is already 0 or 1
+        REDUNDANT_BOOLEAN_CONVERSION {
+            boolean rewrite(Code code, int i) {
+                boolean zeroOrOne = code.is(i, Opcode.ICONST_0, Opcode.ICONST_1)
+                    || code.is(i, Opcode.IUSHR) && code.at(i - 1).equals(Instruction.intConstant(31));
+                if (!zeroOrOne || !code.matches(i + 1, BOOLEAN_CONVERSION))
+                    return false;
+                code.replace(i + 1, 5);
+                return true;
+            }
+        },
+        // Assignment as statement: dup; istore n; pop  ->  istore n
+        STORE_THEN_POP {
+            boolean rewrite(Code code, int i) {
+                boolean single = code.is(i, Opcode.DUP) && code.is(i + 1, Opcode.ISTORE, Opcode.ASTORE)
+                              && code.is(i + 2, Opcode.POP);
+                boolean wide = code.is(i, Opcode.DUP2) && code.is(i + 1, Opcode.DSTORE)
+                            && code.is(i + 2, Opcode.POP2);
+                if (!single && !wide)
+                    return false;
+                code.replace(i, 3, code.at(i + 1));
+                return true;
+            }
+        },
+        // Postfix increment or decrement as statement:
+        // dup; iconst_1; iadd; istore n; pop  ->  iconst_1; iadd; istore n
+        UNUSED_OLD_VALUE {
+            boolean rewrite(Code code, int i) {
+                boolean single = code.is(i, Opcode.DUP) && code.is(i + 1, Opcode.ICONST_1)
+                              && code.is(i + 2, Opcode.IADD, Opcode.ISUB)
+                              && code.is(i + 3, Opcode.ISTORE) && code.is(i + 4, Opcode.POP);
+                boolean wide = code.is(i, Opcode.DUP2) && code.is(i + 1, Opcode.DCONST_1)
+                            && code.is(i + 2, Opcode.DADD, Opcode.DSUB)
+                            && code.is(i + 3, Opcode.DSTORE) && code.is(i + 4, Opcode.POP2);
+                if (!single && !wide)
+                    return false;
+                code.replace(i, 5, code.at(i + 1), code.at(i + 2), code.at(i + 3));
+                return true;
+            }
+        },
+        // A value pushed without side effects and popped at once
+        PUSH_THEN_POP {
+            boolean rewrite(Code code, int i) {
+                boolean single = code.is(i, SINGLE_PUSHES) && code.is(i + 1, Opcode.POP);
+                boolean wide = code.is(i, WIDE_PUSHES) && code.is(i + 1, Opcode.POP2);
+                if (!single && !wide)
+                    return false;
+                code.replace(i, 2);
+                return true;
+            }
+        };
+
+        // Rewrites the code at position i and returns true if the rule matched there
+        abstract boolean rewrite(Code code, int i);
+
+        // Name on the command line
+        public String optionName() {
+            return name().toLowerCase().replace('_', '-');
+        }
+    }
+
+    private static final Map<Opcode,Opcode> NEGATED = new HashMap<>();
+    static {
+        Opcode[][] pairs = {
+            { Opcode.IF_ICMPLT, Opcode.IF_ICMPGE },
+            { Opcode.IF_ICMPGT, Opcode.IF_ICMPLE },
+            { Opcode.IF_ICMPEQ, Opcode.IF_ICMPNE },
+            { Opcode.IFEQ,      Opcode.IFNE      },
+            { Opcode.IFLT,      Opcode.IFGE      },
+            { Opcode.IFGT,      Opcode.IFLE      },
+            { Opcode.IFNULL,    Opcode.IFNONNULL }
+        };
+        for (Opcode[] pair : pairs) {
+            NEGATED.put(pair[0], pair[1]);
+            NEGATED.put(pair[1], pair[0]);
+        }
+    }
+
+    private static final Map<Opcode,Opcode> ZERO_COMPARISON = Map.of(
+        Opcode.IF_ICMPLT, Opcode.IFLT,
+        Opcode.IF_ICMPGT, Opcode.IFGT,
+        Opcode.IF_ICMPGE, Opcode.IFGE,
+        Opcode.IF_ICMPLE, Opcode.IFLE,
+        Opcode.IF_ICMPEQ, Opcode.IFEQ,
+        Opcode.IF_ICMPNE, Opcode.IFNE
+    );
+
+    // As emitted by ExpressionGenerator for int to bool
+    private static final List<Instruction> BOOLEAN_CONVERSION = List.of(
+        Instruction.of(Opcode.DUP),
+        Instruction.of(Opcode.INEG),
+        Instruction.of(Opcode.IOR),
+        Instruction.intConstant(31),
+        Instruction.of(Opcode.IUSHR)
+    );
+
+    private static final Set<Opcode> SINGLE_PUSHES = EnumSet.of(
+        Opcode.ILOAD, Opcode.ALOAD, Opcode.LDC, Opcode.BIPUSH, Opcode.SIPUSH, Opcode.DUP,
+        Opcode.ACONST_NULL, Opcode.ICONST_M1, Opcode.ICONST_0, Opcode.ICONST_1, Opcode.ICONST_2,
+        Opcode.ICONST_3, Opcode.ICONST_4, Opcode.ICONST_5
+    );
+
+    private static final Set<Opcode> WIDE_PUSHES = EnumSet.of(
+        Opcode.DLOAD, Opcode.LDC2_W, Opcode.DUP2, Opcode.DCONST_0, Opcode.DCONST_1
+    );
+
+    // Rewrites the code of a method in place
+    void optimize(List<Instruction> instrs) {
+        Code code = new Code(instrs);
+        boolean changed;
+        do {
+            changed = false;
+            for (int i = 0; i < instrs.size(); ++i) {
+                for (Rule rule : rules) {
+                    if (rule.rewrite(code, i)) {
+                        hits.merge(rule, 1, Integer::sum);
+                        changed = true;
+                    }
+                }
+            }
+        } while (changed);
+    }
+
+    // Number of rewrites by each applied rule in the code optimized so far
+    Map<String,Integer> hitCounts() {
+        Map<String,Integer> counts = new LinkedHashMap<>();
+        for (Rule rule : rules)
+            counts.put(rule.optionName(), hits.getOrDefault(rule, 0));
+        return counts;
+    }
+
+    // One line per rule, telling how often it rewrote the code optimized so far,
+    // or that it was not applied
+    List<String> report() {
+        List<String> lines = new ArrayList<>();
+        int total = 0;
+        for (Rule rule : Rule.values()) {
+            if (!rules.contains(rule)) {
+                lines.add("Rule " + rule.optionName() + " disabled");
+                continue;
+            }
+            int count = hits.getOrDefault(rule, 0);
+            lines.add("Rule " + rule.optionName() + ": " + count + " rewrites");
+            total += count;
+        }
+        lines.add(total + " peephole rewrites");
+        return lines;
+    }
+
+    // Positional queries over the instructions being rewritten.
+    // Positions outside the code hold no instruction.
+    private static final class Code {
+        private static final Instruction NONE = Instruction.label("");
+
+        private final List<Instruction> instrs;
+        // Recomputed after changes
+        private Map<String,Integer> referenceCounts;
+        private Map<String,Integer> labelIndices;
+
+        Code(List<Instruction> instrs) {
+            this.instrs = instrs;
+        }
+
+        Instruction at(int i) {
+            return (i >= 0 && i < instrs.size()) ? instrs.get(i) : NONE;
+        }
+
+        boolean isLabel(int i) {
+            return at(i) != NONE && at(i).isLabel();
+        }
+
+        boolean isInstruction(int i) {
+            return !at(i).isLabel();
+        }
+
+        boolean is(int i, Opcode... ops) {
+            return Arrays.asList(ops).contains(at(i).op);
+        }
+
+        boolean is(int i, Set<Opcode> ops) {
+            return at(i).op != null && ops.contains(at(i).op);
+        }
+
+        boolean matches(int i, List<Instruction> sequence) {
+            for (int j = 0; j < sequence.size(); ++j)
+                if (!at(i + j).equals(sequence.get(j)))
+                    return false;
+            return true;
+        }
+
+        // Names of the labels starting at position i
+        Set<String> labelsAt(int i) {
+            Set<String> labels = new HashSet<>();
+            for (; isLabel(i); ++i)
+                labels.add(at(i).operand);
+            return labels;
+        }
+
+        int references(String label) {
+            if (referenceCounts == null) {
+                referenceCounts = new HashMap<>();
+                for (Instruction instr : instrs)
+                    if (instr.isJump())
+                        referenceCounts.merge(instr.operand, 1, Integer::sum);
+            }
+            return referenceCounts.getOrDefault(label, 0);
+        }
+
+        // Position of the first instruction executed after a jump to label
+        int firstInstructionAt(String label) {
+            if (labelIndices == null) {
+                labelIndices = new HashMap<>();
+                for (int i = 0; i < instrs.size(); ++i)
+                    if (instrs.get(i).isLabel())
+                        labelIndices.putIfAbsent(instrs.get(i).operand, i);
+            }
+            Integer i = labelIndices.get(label);
+            if (i == null)
+                return -1;
+            while (isLabel(i))
+                ++i;
+            return i;
+        }
+
+        // Label reached from label by following gotos, stopping at cycles
+        String finalDestination(String label) {
+            Set<String> visited = new HashSet<>();
+            String destination = label;
+            while (visited.add(destination)) {
+                Instruction next = at(firstInstructionAt(destination));
+                if (!next.is(Opcode.GOTO))
+                    return destination;
+                destination = next.operand;
+            }
+            return label; // Loops forever; left alone
+        }
+
+        void replace(int i, int count, Instruction... replacement) {
+            List<Instruction> range = instrs.subList(i, i + count);
+            range.clear();
+            range.addAll(Arrays.asList(replacement));
+            referenceCounts = null;
+            labelIndices = null;
+        }
+    }
+
+}
@@ -2,25 +2,34 @@ package notc.codegen;
 
 import notc.antlrgen.NotCBaseVisitor;
 import notc.antlrgen.NotCParser.ProgramContext;
-import notc.antlrgen.NotCParser.FunctionDefinitionContext;
 import notc.semantics.SymbolTable;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.text.TextStringBuilder;
 
-import java.io.InputStream;
-import java.io.IOException;
-import java.io.UncheckedIOException;
-import java.nio.charset.StandardCharsets;
-
+import java.util.List;
 
+// Generates the Jasmin representation of a program.
+// See ClassFileGenerator for the direct path to bytecode.
 public class ProgramGenerator extends NotCBaseVisitor<String> {
     private final SymbolTable symTab;
     private final String className;
+    private final CodegenOptions options;
+    // Of the last program generated
+    private List<String> peepholeReport = List.of();
 
     public ProgramGenerator(SymbolTable symTab, String className) {
+        this(symTab, className, CodegenOptions.DEFAULT);
+    }
+
+    public ProgramGenerator(SymbolTable symTab, String className, CodegenOptions options) {
         this.symTab = symTab;
         this.className = className;
+        this.options = options;
+    }
+
+    // How often each peephole rule rewrote the methods of the last program generated
+    public List<String> peepholeReport() {
+        return peepholeReport;
     }
 
     // Entry point for code generator
@@ -28,31 +37,34 @@ public class ProgramGenerator extends NotCBaseVisitor<String> {
     public String visitProgram(ProgramContext prog) {
         TextStringBuilder finalOutput = new TextStringBuilder();
 
-        // Makes JVM entry point "void main(String[])" call generated "void main()"
+        ProgramMethods program = new ProgramMethods(prog, symTab, options);
+        peepholeReport = program.peepholeReport;
+
         finalOutput
             .appendln(".class public " + className)
-            .appendln(".super java/lang/Object")
+            .appendln(".super java/lang/Object");
+        for (String field : program.staticFields)
+            finalOutput.appendln(".field static " + field);
+
+        // Makes JVM entry point "void main(String[])" call generated "void main()"
+        finalOutput
             .appendln(".method public static main([Ljava/lang/String;)V")
-            .appendln("invokestatic " + className + "/main()V")
+            .appendln("invokestatic " + className + "/main()V");
+        if (program.reportsMemoization)
+            finalOutput.appendln("invokestatic " + className + "/" + Memoizer.REPORT_SPECIFICATION);
+        finalOutput
             .appendln("return")
             .appendln(".end method");
 
         // Adds built-in functions
-        try (InputStream is = getClass().getResourceAsStream("/builtin_definitions.j")) {
-            String builtins = IOUtils.toString(is, StandardCharsets.UTF_8);
-            finalOutput.appendln(builtins);
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
-        }
-
-        ExpressionGenerator exprGen = new ExpressionGenerator(symTab);
-        FunctionGenerator funGen = new FunctionGenerator(exprGen);
+        if (options.embedBuiltins && program.calledBuiltins == null)
+            finalOutput.appendln(BuiltinMethods.text(className));
+        else if (options.embedBuiltins)
+            finalOutput.appendln(BuiltinMethods.text(className, program.calledBuiltins));
 
         // Generates JVM methods from parse trees rooted at function definitions
-        for (FunctionDefinitionContext funDef : prog.funDefs) {
-            JvmMethod method = funGen.generate(funDef);
+        for (JvmMethod method : program.methods)
             finalOutput.appendln(method.collectCode());
-        }
 
         return finalOutput.toString();
     }
@@ -0,0 +1,43 @@
+package notc.codegen;
+
+import notc.antlrgen.NotCParser.ProgramContext;
+import notc.antlrgen.NotCParser.FunctionDefinitionContext;
+import notc.semantics.SymbolTable;
+
+import java.util.List;
+import java.util.Set;
+
+// The methods generated for the functions of a program, and what the class
+// around them needs: static fields, the call after main and the built-ins.
+// Shared by ClassFileGenerator and ProgramGenerator, which only differ in
+// how they write the class out.
+final class ProgramMethods {
+    final List<JvmMethod> methods;
+    // Names and descriptors, e.g. "fib$keys [I"
+    final List<String> staticFields;
+    // Whether main is to be followed by a call of Memoizer.REPORT_SPECIFICATION
+    final boolean reportsMemoization;
+    // Names of the built-in functions the methods call, or null if not known
+    final Set<String> calledBuiltins;
+    // How often each peephole rule rewrote the methods
+    final List<String> peepholeReport;
+
+    ProgramMethods(ProgramContext prog, SymbolTable symTab, CodegenOptions options) {
+        // Leaves out the functions that main cannot reach
+        List<FunctionDefinitionContext> funDefs = prog.funDefs;
+        CallGraph callGraph = null;
+        if (options.optimizations.contains(Optimization.UNUSED_FUNCTIONS)) {
+            callGraph = new CallGraph(prog.funDefs, symTab);
+            funDefs = callGraph.reachableDefinitions();
+        }
+
+        ExpressionGenerator exprGen = new ExpressionGenerator(symTab, options.optimizations);
+        FunctionGenerator funGen = new FunctionGenerator(symTab, exprGen, options);
+        methods = funGen.generate(funDefs);
+        staticFields = funGen.staticFields();
+        reportsMemoization = funGen.reportsMemoization();
+        calledBuiltins = callGraph == null ? null : callGraph.calledBuiltins();
+        peepholeReport = funGen.peepholeReport();
+    }
+
+}
@@ -0,0 +1,194 @@
+package notc.codegen;
+
+import notc.antlrgen.NotCBaseVisitor;
+import notc.antlrgen.NotCParser.FunctionDefinitionContext;
+import notc.antlrgen.NotCParser.FunctionHeaderContext;
+import notc.antlrgen.NotCParser.StatementContext;
+import notc.antlrgen.NotCParser.ExpressionStatementContext;
+import notc.antlrgen.NotCParser.BlockStatementContext;
+import notc.antlrgen.NotCParser.ForStatementContext;
+import notc.antlrgen.NotCParser.WhileStatementContext;
+import notc.antlrgen.NotCParser.IfStatementContext;
+import notc.antlrgen.NotCParser.IfElseStatementContext;
+import notc.antlrgen.NotCParser.ReturnStatementContext;
+import notc.antlrgen.NotCParser.ExpressionContext;
+import notc.antlrgen.NotCParser.FunctionCallExpressionContext;
+import notc.semantics.Parentheses;
+import notc.semantics.SymbolTable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Finds the calls that are the last action of their functions, e.g. "return f(x)",
+// between functions of the program that return the same type. Such calls can be
+// replaced by assigning the arguments to the parameters of the callee and jumping
+// to its body, if that is in the same method. Functions that call each other
+// this way are grouped so that they can be generated as one method.
+final class TailCalls {
+    private final SymbolTable symTab;
+    private final Map<FunctionHeaderContext,FunctionDefinitionContext> definitions;
+    // Tail calls of each function and the definitions they call
+    private final Map<FunctionDefinitionContext,Map<FunctionCallExpressionContext,FunctionDefinitionContext>> calls;
+    private final Map<FunctionDefinitionContext,List<FunctionDefinitionContext>> groups;
+
+    TailCalls(List<FunctionDefinitionContext> funDefs, SymbolTable symTab) {
+        this.symTab = symTab;
+        definitions = new HashMap<>();
+        for (FunctionDefinitionContext funDef : funDefs)
+            definitions.put(funDef.header, funDef);
+        calls = new LinkedHashMap<>();
+        for (FunctionDefinitionContext funDef : funDefs) {
+            TailCallFinder finder = new TailCallFinder(funDef);
+            finder.visitList(funDef.body, true);
+            calls.put(funDef, finder.found);
+        }
+        groups = new HashMap<>();
+        new GroupFinder().findAll(funDefs);
+    }
+
+    // The definition called if call is a tail call, otherwise null
+    FunctionDefinitionContext callee(FunctionDefinitionContext caller, ExpressionContext call) {
+        return calls.get(caller).get(call);
+    }
+
+    // The functions that funDef is in a cycle of tail calls with, including itself, if
+    // they are more than one and can be generated as one method. Otherwise null.
+    List<FunctionDefinitionContext> groupOf(FunctionDefinitionContext funDef) {
+        return groups.get(funDef);
+    }
+
+    // Visits statements, knowing whether they are the last of their function
+    private class TailCallFinder extends NotCBaseVisitor<Void> {
+        final FunctionDefinitionContext caller;
+        final Map<FunctionCallExpressionContext,FunctionDefinitionContext> found = new LinkedHashMap<>();
+        private boolean inTailPosition;
+
+        TailCallFinder(FunctionDefinitionContext caller) {
+            this.caller = caller;
+        }
+
+        // A statement is last if it is followed by "return;",
+        // or if it ends a list that is last
+        void visitList(List<StatementContext> stms, boolean listInTailPosition) {
+            for (int i = 0; i < stms.size(); ++i) {
+                boolean last = i == stms.size() - 1 ? listInTailPosition
+                                                    : isEmptyReturn(stms.get(i + 1));
+                visit(stms.get(i), last);
+            }
+        }
+
+        private void visit(StatementContext stm, boolean tailPosition) {
+            boolean outer = inTailPosition;
+            inTailPosition = tailPosition;
+            stm.accept(this);
+            inTailPosition = outer;
+        }
+
+        private boolean isEmptyReturn(StatementContext stm) {
+            return stm instanceof ReturnStatementContext && ((ReturnStatementContext) stm).expr == null;
+        }
+
+        private void addIfCall(ExpressionContext expr) {
+            expr = Parentheses.unwrap(expr);
+            if (!(expr instanceof FunctionCallExpressionContext) || expr.runtimeConversion != null)
+                return;
+            FunctionCallExpressionContext call = (FunctionCallExpressionContext) expr;
+            FunctionDefinitionContext callee = definitions.get(symTab.lookupFunction(call.id));
+            // Built-ins have no definitions
+            if (callee != null && callee.header.returnType == caller.header.returnType)
+                found.put(call, callee);
+        }
+
+        @Override
+        public Void visitReturnStatement(ReturnStatementContext returnStm) {
+            if (returnStm.expr != null)
+                addIfCall(returnStm.expr);
+            return null;
+        }
+
+        // The value of the call is discarded, so it must be void as the caller
+        @Override
+        public Void visitExpressionStatement(ExpressionStatementContext exprStm) {
+            if (inTailPosition && caller.header.returnType.isVoid())
+                addIfCall(exprStm.expr);
+            return null;
+        }
+
+        @Override
+        public Void visitBlockStatement(BlockStatementContext block) {
+            visitList(block.statements, inTailPosition);
+            return null;
+        }
+
+        @Override
+        public Void visitIfStatement(IfStatementContext ifStm) {
+            visit(ifStm.consequentStm, inTailPosition);
+            return null;
+        }
+
+        @Override
+        public Void visitIfElseStatement(IfElseStatementContext ifElseStm) {
+            visit(ifElseStm.consequentStm, inTailPosition);
+            visit(ifElseStm.altStm, inTailPosition);
+            return null;
+        }
+
+        // Loop bodies are followed by their conditions
+        @Override
+        public Void visitForStatement(ForStatementContext forStm) {
+            visit(forStm.body, false);
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStatement(WhileStatementContext whileStm) {
+            visit(whileStm.loopedStm, false);
+            return null;
+        }
+    }
+
+    // Finds the strongly connected components of the graph of tail calls (Tarjan)
+    private class GroupFinder {
+        private final Map<FunctionDefinitionContext,Integer> index = new HashMap<>();
+        private final Map<FunctionDefinitionContext,Integer> lowLink = new HashMap<>();
+        private final ArrayDeque<FunctionDefinitionContext> stack = new ArrayDeque<>();
+
+        void findAll(List<FunctionDefinitionContext> funDefs) {
+            for (FunctionDefinitionContext funDef : funDefs) {
+                if (!index.containsKey(funDef))
+                    connect(funDef);
+            }
+        }
+
+        private void connect(FunctionDefinitionContext funDef) {
+            index.put(funDef, index.size());
+            lowLink.put(funDef, index.get(funDef));
+            stack.push(funDef);
+            for (FunctionDefinitionContext callee : calls.get(funDef).values()) {
+                if (!index.containsKey(callee)) {
+                    connect(callee);
+                    lowLink.put(funDef, Math.min(lowLink.get(funDef), lowLink.get(callee)));
+                } else if (stack.contains(callee)) {
+                    lowLink.put(funDef, Math.min(lowLink.get(funDef), index.get(callee)));
+                }
+            }
+            if (!lowLink.get(funDef).equals(index.get(funDef)))
+                return;
+            List<FunctionDefinitionContext> group = new ArrayList<>();
+            FunctionDefinitionContext member;
+            do {
+                member = stack.pop();
+                group.add(0, member);
+            } while (member != funDef);
+            if (group.size() > 1) {
+                for (FunctionDefinitionContext m : group)
+                    groups.put(m, group);
+            }
+        }
+    }
+
+}
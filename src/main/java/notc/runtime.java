@@ -0,0 +1,36 @@
+package notc;
+
+// The built-in functions of NotC, prebuilt for programs compiled with --runtime.
+// Such programs call these methods instead of carrying their own copies of the
+// definitions in builtin_definitions.j, whose behavior these mirror.
+// Input and output go through shared buffers; see RuntimeInput and RuntimeOutput.
+// Named in lower case to keep clear of java.lang.Runtime within this package.
+public final class runtime {
+
+    private runtime() {}
+
+    public static void printInt(int i) {
+        RuntimeOutput.get().printInt(i);
+    }
+
+    public static void printDouble(double d) {
+        RuntimeOutput.get().printDouble(d);
+    }
+
+    public static void printString(String s) {
+        RuntimeOutput.get().printString(s);
+    }
+
+    public static int readInt() {
+        return RuntimeInput.get().readInt();
+    }
+
+    public static double readDouble() {
+        return RuntimeInput.get().readDouble();
+    }
+
+    public static String readString() {
+        return RuntimeInput.get().readString();
+    }
+
+}
@@ -0,0 +1,78 @@
+package notc.semantics;
+
+import notc.antlrgen.NotCBaseVisitor;
+import notc.antlrgen.NotCParser.StatementContext;
+import notc.antlrgen.NotCParser.BlockStatementContext;
+import notc.antlrgen.NotCParser.ForStatementContext;
+import notc.antlrgen.NotCParser.WhileStatementContext;
+import notc.antlrgen.NotCParser.IfStatementContext;
+import notc.antlrgen.NotCParser.IfElseStatementContext;
+import notc.antlrgen.NotCParser.ReturnStatementContext;
+import notc.antlrgen.NotCParser.ExpressionContext;
+import notc.antlrgen.NotCParser.TrueLiteralExpressionContext;
+
+import java.util.List;
+
+// Whether execution can continue after statements. Errs on the side of yes.
+// Before constant folding, only loops on the literal true are known to be endless.
+public final class CompletionChecker extends NotCBaseVisitor<Boolean> {
+    private static final CompletionChecker INSTANCE = new CompletionChecker();
+
+    private CompletionChecker() {}
+
+    public static boolean completesNormally(List<StatementContext> stms) {
+        return INSTANCE.visitList(stms);
+    }
+
+    private boolean visitList(List<StatementContext> stms) {
+        for (StatementContext stm : stms) {
+            if (!stm.accept(this))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    protected Boolean defaultResult() {
+        return true;
+    }
+
+    @Override
+    public Boolean visitReturnStatement(ReturnStatementContext returnStm) {
+        return false;
+    }
+
+    @Override
+    public Boolean visitBlockStatement(BlockStatementContext block) {
+        return visitList(block.statements);
+    }
+
+    @Override
+    public Boolean visitIfStatement(IfStatementContext ifStm) {
+        return true;
+    }
+
+    @Override
+    public Boolean visitIfElseStatement(IfElseStatementContext ifElseStm) {
+        return ifElseStm.consequentStm.accept(this) || ifElseStm.altStm.accept(this);
+    }
+
+    // Loops end only when their conditions are false
+    @Override
+    public Boolean visitForStatement(ForStatementContext forStm) {
+        return forStm.conditionExpr != null && !isKnownTrue(forStm.conditionExpr);
+    }
+
+    @Override
+    public Boolean visitWhileStatement(WhileStatementContext whileStm) {
+        return !isKnownTrue(whileStm.conditionExpr);
+    }
+
+    private static boolean isKnownTrue(ExpressionContext condition) {
+        if (Parentheses.unwrap(condition) instanceof TrueLiteralExpressionContext)
+            return true;
+        Object value = ConstantFolder.valueOf(condition);
+        return value != null && ConstantFolder.isTrue(value);
+    }
+
+}
@@ -0,0 +1,260 @@
+package notc.semantics;
+
+import notc.antlrgen.NotCBaseVisitor;
+import notc.antlrgen.NotCParser;
+import notc.antlrgen.NotCParser.Type;
+import notc.antlrgen.NotCParser.FunctionDefinitionContext;
+import notc.antlrgen.NotCParser.StatementContext;
+import notc.antlrgen.NotCParser.DeclarationStatementContext;
+import notc.antlrgen.NotCParser.InitializationStatementContext;
+import notc.antlrgen.NotCParser.ExpressionStatementContext;
+import notc.antlrgen.NotCParser.VariableDeclarationContext;
+import notc.antlrgen.NotCParser.ExpressionContext;
+import notc.antlrgen.NotCParser.NegationExpressionContext;
+import notc.antlrgen.NotCParser.ParenthesizedExpressionContext;
+import notc.antlrgen.NotCParser.FalseLiteralExpressionContext;
+import notc.antlrgen.NotCParser.TrueLiteralExpressionContext;
+import notc.antlrgen.NotCParser.DoubleLiteralExpressionContext;
+import notc.antlrgen.NotCParser.IntLiteralExpressionContext;
+import notc.antlrgen.NotCParser.VariableExpressionContext;
+import notc.antlrgen.NotCParser.ArithmeticExpressionContext;
+import notc.antlrgen.NotCParser.ComparisonExpressionContext;
+import notc.antlrgen.NotCParser.BinaryBooleanExpressionContext;
+import notc.antlrgen.NotCParser.AssignmentExpressionContext;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Optional pass after semantic analysis that annotates expressions whose values
+// are known at compile time with those values, so that only the values need to
+// be generated. Operations are evaluated as the JVM would evaluate them, and
+// are left to run time where they would throw or yield NaN or infinity.
+// Variables that are assigned a known value exactly once are replaced by it.
+public class ConstantFolder extends NotCBaseVisitor<Void> {
+    private final SymbolTable symTab;
+    // Per function
+    private final Map<VariableDeclarationContext,Object> constantVariables;
+    private VariableUses uses;
+
+    public ConstantFolder(SymbolTable symTab) {
+        this.symTab = symTab;
+        constantVariables = new HashMap<>();
+    }
+
+    // Value of expr after its runtime conversion, or null if it is not known
+    public static Object valueOf(ExpressionContext expr) {
+        if (expr.constant == null || expr.runtimeConversion == null)
+            return expr.constant;
+        return convert(expr.constant, expr.type, expr.runtimeConversion);
+    }
+
+    // Whether a value of type bool, int or double counts as true in a condition
+    public static boolean isTrue(Object value) {
+        if (value instanceof Double)
+            return (Double) value != 0.0; // Includes NaN
+        return (Integer) value != 0;
+    }
+
+    private static Object convert(Object value, Type from, Type to) {
+        if (to.isDouble())
+            return ((Number) value).doubleValue();
+        if (from.isDouble() && to.isInt())
+            return (int) (double) (Double) value; // Truncates like d2i
+        if (to.isBool())
+            return isTrue(value) ? 1 : 0;
+        return value; // bools used as ints
+    }
+
+    // Finds the variables that can be replaced before visiting the function
+    @Override
+    public Void visitFunctionDefinition(FunctionDefinitionContext funDef) {
+        constantVariables.clear();
+        uses = new VariableUses();
+        funDef.accept(uses);
+        for (StatementContext stm : funDef.body)
+            stm.accept(this);
+        return null;
+    }
+
+    // "type id = expr"
+    @Override
+    public Void visitInitializationStatement(InitializationStatementContext initStm) {
+        initStm.expr.accept(this);
+        Object value = valueOf(initStm.expr);
+        if (value != null && uses.count(initStm.varDecl) == 0)
+            constantVariables.put(initStm.varDecl, value);
+        return null;
+    }
+
+    // "id = expr" as the only assignment of a variable declared without value.
+    // Holds for reads after it in the same statement list.
+    @Override
+    public Void visitExpressionStatement(ExpressionStatementContext exprStm) {
+        exprStm.expr.accept(this);
+        if (!(exprStm.expr instanceof AssignmentExpressionContext))
+            return null;
+        AssignmentExpressionContext assExpr = (AssignmentExpressionContext) exprStm.expr;
+        VariableDeclarationContext varDecl = symTab.lookupVariable(assExpr.varId);
+        Object value = valueOf(assExpr.rhs);
+        if (value == null || uses.count(varDecl) != 1
+                || !(varDecl.getParent() instanceof DeclarationStatementContext)
+                || varDecl.getParent().getParent() != exprStm.getParent()
+                || uses.firstRead.getOrDefault(varDecl, Integer.MAX_VALUE) < exprStm.getStop().getTokenIndex())
+            return null;
+        // Stored as the type of the variable
+        Type storedType = assExpr.rhs.runtimeConversion != null ? assExpr.rhs.runtimeConversion
+                                                                : assExpr.rhs.type;
+        if (storedType == varDecl.type)
+            constantVariables.put(varDecl, value);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpression(VariableExpressionContext varExpr) {
+        varExpr.constant = constantVariables.get(symTab.lookupVariable(varExpr.varId));
+        return null;
+    }
+
+    @Override
+    public Void visitFalseLiteralExpression(FalseLiteralExpressionContext falseLitExpr) {
+        falseLitExpr.constant = 0;
+        return null;
+    }
+
+    @Override
+    public Void visitTrueLiteralExpression(TrueLiteralExpressionContext trueLitExpr) {
+        trueLitExpr.constant = 1;
+        return null;
+    }
+
+    @Override
+    public Void visitIntLiteralExpression(IntLiteralExpressionContext intLitExpr) {
+        try {
+            intLitExpr.constant = Integer.parseInt(intLitExpr.value.getText());
+        } catch (NumberFormatException e) {
+            // Out of range; left as is
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitDoubleLiteralExpression(DoubleLiteralExpressionContext doubleLitExpr) {
+        doubleLitExpr.constant = Double.parseDouble(doubleLitExpr.value.getText());
+        return null;
+    }
+
+    @Override
+    public Void visitParenthesizedExpression(ParenthesizedExpressionContext paren) {
+        paren.expr.accept(this);
+        paren.constant = valueOf(paren.expr);
+        return null;
+    }
+
+    @Override
+    public Void visitNegationExpression(NegationExpressionContext negation) {
+        negation.opnd.accept(this);
+        Object value = valueOf(negation.opnd);
+        if (value instanceof Double)
+            negation.constant = -(Double) value;
+        else if (value != null)
+            negation.constant = -(Integer) value; // Wraps around like ineg
+        return null;
+    }
+
+    // +, -, *, /, %
+    @Override
+    public Void visitArithmeticExpression(ArithmeticExpressionContext arithmExpr) {
+        visitChildren(arithmExpr);
+        Object value1 = valueOf(arithmExpr.opnd1);
+        Object value2 = valueOf(arithmExpr.opnd2);
+        if (value1 == null || value2 == null)
+            return null;
+        int op = arithmExpr.op.getType();
+        if (arithmExpr.type.isDouble()) {
+            double result = doubleArithmetic(op, (Double) value1, (Double) value2);
+            if (Double.isFinite(result))
+                arithmExpr.constant = result;
+        } else if (!((op == NotCParser.DIV || op == NotCParser.REM) && (Integer) value2 == 0)) {
+            arithmExpr.constant = intArithmetic(op, (Integer) value1, (Integer) value2);
+        }
+        return null;
+    }
+
+    private static double doubleArithmetic(int op, double d1, double d2) {
+        switch (op) {
+            case NotCParser.ADD: return d1 + d2;
+            case NotCParser.SUB: return d1 - d2;
+            case NotCParser.MUL: return d1 * d2;
+            case NotCParser.DIV: return d1 / d2;
+            default:             return d1 % d2; // Same as drem
+        }
+    }
+
+    private static int intArithmetic(int op, int i1, int i2) {
+        switch (op) {
+            case NotCParser.ADD: return i1 + i2;
+            case NotCParser.SUB: return i1 - i2;
+            case NotCParser.MUL: return i1 * i2;
+            case NotCParser.DIV: return i1 / i2;
+            default:             return i1 % i2;
+        }
+    }
+
+    // <, > <=, >=, ==, !=
+    @Override
+    public Void visitComparisonExpression(ComparisonExpressionContext compExpr) {
+        visitChildren(compExpr);
+        Object value1 = valueOf(compExpr.opnd1);
+        Object value2 = valueOf(compExpr.opnd2);
+        if (value1 == null || value2 == null)
+            return null;
+        // Comparisons involving NaN are false, except for !=
+        double d1 = ((Number) value1).doubleValue();
+        double d2 = ((Number) value2).doubleValue();
+        boolean result;
+        switch (compExpr.op.getType()) {
+            case NotCParser.LT: result = d1 <  d2; break;
+            case NotCParser.GT: result = d1 >  d2; break;
+            case NotCParser.GE: result = d1 >= d2; break;
+            case NotCParser.LE: result = d1 <= d2; break;
+            case NotCParser.EQ: result = d1 == d2; break;
+            default:            result = d1 != d2;
+        }
+        compExpr.constant = result ? 1 : 0;
+        return null;
+    }
+
+    // &&, ||
+    // Known if the first operand decides, as the second one is then not evaluated
+    @Override
+    public Void visitBinaryBooleanExpression(BinaryBooleanExpressionContext binBoolExpr) {
+        visitChildren(binBoolExpr);
+        Object value1 = valueOf(binBoolExpr.opnd1);
+        if (value1 == null)
+            return null;
+        boolean decidingValue = binBoolExpr.op.getType() == NotCParser.OR;
+        if (isTrue(value1) == decidingValue)
+            binBoolExpr.constant = decidingValue ? 1 : 0;
+        else
+            binBoolExpr.constant = valueOf(binBoolExpr.opnd2);
+        return null;
+    }
+
+    // Counts the assignments of each variable in a function and
+    // finds the position of its first read
+    private class VariableUses extends VariableWrites {
+        final Map<VariableDeclarationContext,Integer> firstRead = new HashMap<>();
+
+        VariableUses() {
+            super(symTab);
+        }
+
+        @Override
+        public Void visitVariableExpression(VariableExpressionContext varExpr) {
+            firstRead.merge(symTab.lookupVariable(varExpr.varId),
+                            varExpr.varId.getTokenIndex(), Math::min);
+            return null;
+        }
+    }
+
+}
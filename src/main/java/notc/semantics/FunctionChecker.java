@@ -27,13 +27,19 @@ class FunctionChecker extends NotCBaseVisitor<Void> {
         exprChecker = new ExpressionChecker(symTab);
     }
 
-    // Entry point: adds parameters as local variables, then visits each statement
+    // Entry point: adds parameters as local variables, then visits each statement.
+    // Non-void functions must not be able to reach their end.
     void checkDefinition(FunctionDefinitionContext funDef) {
         symTab.resetScope();
         symTab.declareVariables(funDef.header.params);
         expectedReturn = funDef.header.returnType;
         for (StatementContext stm : funDef.body)
             stm.accept(this);
+        if (!expectedReturn.isVoid() && CompletionChecker.completesNormally(funDef.body)) {
+            throw new SemanticException(funDef.getStop(),
+                "Missing return at end of non-void function"
+            );
+        }
     }
 
     // "type id1, id2...": adds variables to symbol table
@@ -0,0 +1,19 @@
+package notc.semantics;
+
+import notc.antlrgen.NotCParser.ExpressionContext;
+import notc.antlrgen.NotCParser.ParenthesizedExpressionContext;
+
+// Parentheses only group, so analyses that match the shape of
+// an expression look at what they enclose
+public final class Parentheses {
+
+    private Parentheses() {}
+
+    // expr without the parentheses around it, if any
+    public static ExpressionContext unwrap(ExpressionContext expr) {
+        while (expr instanceof ParenthesizedExpressionContext)
+            expr = ((ParenthesizedExpressionContext) expr).expr;
+        return expr;
+    }
+
+}
@@ -23,6 +23,13 @@ import java.util.List;
 
 // Entry point for semantic analysis of a program
 public class ProgramChecker extends NotCBaseVisitor<SymbolTable> {
+    private final String builtinClass;
+
+    // The built-in functions are called in builtinClass, which is either
+    // the class of the program itself or a shared runtime class
+    public ProgramChecker(String builtinClass) {
+        this.builtinClass = builtinClass;
+    }
 
     // Instantiates the symbol table and declares the built-in functions.
     // Then checks the functions of the program in two passes:
@@ -60,7 +67,7 @@ public class ProgramChecker extends NotCBaseVisitor<SymbolTable> {
         }
         NotCLexer lexer = new NotCLexer(input);
         CommonTokenStream tokens = new CommonTokenStream(lexer);
-        NotCParser parser = new NotCParser(tokens);
+        NotCParser parser = NotCParser.from(tokens, builtinClass);
         ParseTree tree = parser.headerDeclarations();
         return tree.accept(
             new NotCBaseVisitor<List<FunctionHeaderContext>>() {
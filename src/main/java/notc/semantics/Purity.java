@@ -0,0 +1,76 @@
+package notc.semantics;
+
+import notc.antlrgen.NotCBaseVisitor;
+import notc.antlrgen.NotCParser.FunctionDefinitionContext;
+import notc.antlrgen.NotCParser.FunctionHeaderContext;
+import notc.antlrgen.NotCParser.StatementContext;
+import notc.antlrgen.NotCParser.FunctionCallExpressionContext;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Finds the functions whose results depend only on their arguments and that have
+// no effects besides returning them, so that calls with the same arguments can
+// share one result. As variables are local and passed by value, those are the
+// functions that neither call a built-in, which all read or print, nor call
+// another function that is not pure. Functions that call each other are pure
+// unless something in the cycle is not.
+public final class Purity {
+    private final Set<FunctionDefinitionContext> pure;
+
+    public Purity(List<FunctionDefinitionContext> funDefs, SymbolTable symTab) {
+        Map<FunctionHeaderContext,FunctionDefinitionContext> definitions = new HashMap<>();
+        for (FunctionDefinitionContext funDef : funDefs)
+            definitions.put(funDef.header, funDef);
+        // The defined functions each one calls, or null if it calls a built-in
+        Map<FunctionDefinitionContext,Set<FunctionDefinitionContext>> callees = new HashMap<>();
+        for (FunctionDefinitionContext funDef : funDefs) {
+            CallFinder finder = new CallFinder();
+            for (StatementContext stm : funDef.body)
+                stm.accept(finder);
+            Set<FunctionDefinitionContext> called = new HashSet<>();
+            for (FunctionCallExpressionContext call : finder.found) {
+                FunctionDefinitionContext callee = definitions.get(symTab.lookupFunction(call.id));
+                if (callee == null) {
+                    called = null;
+                    break;
+                }
+                called.add(callee);
+            }
+            callees.put(funDef, called);
+        }
+
+        // Assumed pure until found to call something that is not
+        pure = new HashSet<>(funDefs);
+        boolean changed;
+        do {
+            changed = false;
+            for (FunctionDefinitionContext funDef : funDefs) {
+                Set<FunctionDefinitionContext> called = callees.get(funDef);
+                if (pure.contains(funDef) && (called == null || !pure.containsAll(called))) {
+                    pure.remove(funDef);
+                    changed = true;
+                }
+            }
+        } while (changed);
+    }
+
+    public boolean isPure(FunctionDefinitionContext funDef) {
+        return pure.contains(funDef);
+    }
+
+    private static class CallFinder extends NotCBaseVisitor<Void> {
+        final List<FunctionCallExpressionContext> found = new ArrayList<>();
+
+        @Override
+        public Void visitFunctionCallExpression(FunctionCallExpressionContext call) {
+            found.add(call);
+            return visitChildren(call);
+        }
+    }
+
+}
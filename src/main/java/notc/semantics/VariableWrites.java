@@ -0,0 +1,55 @@
+package notc.semantics;
+
+import notc.antlrgen.NotCBaseVisitor;
+import notc.antlrgen.NotCParser.VariableDeclarationContext;
+import notc.antlrgen.NotCParser.IncrementExpressionContext;
+import notc.antlrgen.NotCParser.DecrementExpressionContext;
+import notc.antlrgen.NotCParser.AssignmentExpressionContext;
+
+import org.antlr.v4.runtime.Token;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Counts the assignments, increments and decrements of each variable in the
+// parse trees it visits. Subclasses may look for more along the way.
+public class VariableWrites extends NotCBaseVisitor<Void> {
+    private final SymbolTable symTab;
+    private final Map<VariableDeclarationContext,Integer> counts = new HashMap<>();
+
+    public VariableWrites(SymbolTable symTab) {
+        this.symTab = symTab;
+    }
+
+    public int count(VariableDeclarationContext varDecl) {
+        return counts.getOrDefault(varDecl, 0);
+    }
+
+    public Set<VariableDeclarationContext> written() {
+        return counts.keySet();
+    }
+
+    private void write(Token varId) {
+        counts.merge(symTab.lookupVariable(varId), 1, Integer::sum);
+    }
+
+    @Override
+    public Void visitAssignmentExpression(AssignmentExpressionContext assExpr) {
+        write(assExpr.varId);
+        return visitChildren(assExpr);
+    }
+
+    @Override
+    public Void visitIncrementExpression(IncrementExpressionContext incrExpr) {
+        write(incrExpr.varId);
+        return null;
+    }
+
+    @Override
+    public Void visitDecrementExpression(DecrementExpressionContext decrExpr) {
+        write(decrExpr.varId);
+        return null;
+    }
+
+}
@@ -0,0 +1,122 @@
+package notc;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class BatchCompilerTest {
+
+    private final Path semanticErrors = getResourcePath("semantic_errors");
+    private final Path validPrograms  = getResourcePath("valid_programs");
+
+    private Path getResourcePath(String resourceName) {
+        return Path.of(URI.create(getClass().getResource("/" + resourceName).toString()));
+    }
+
+    @Test
+    void compilesAllValidPrograms() throws IOException {
+        List<Path> srcFiles = sources(validPrograms);
+        Path destDir = Files.createTempDirectory("notcc-batch");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        boolean result = new BatchCompiler(CompilerOptions.DEFAULT, 4, null, Path.of("")).compile(
+            srcFiles, destDir, new PrintStream(out, true, UTF_8), new PrintStream(err, true, UTF_8)
+        );
+
+        assertTrue(result, err.toString(UTF_8));
+        assertEquals("", err.toString(UTF_8));
+        assertTrue(out.toString(UTF_8).startsWith("Compiled " + srcFiles.size() + " of " + srcFiles.size()));
+        for (Path srcFile : srcFiles) {
+            String className = FilenameUtils.getBaseName(srcFile.toString());
+            assertTrue(Files.exists(destDir.resolve(className + ".class")));
+        }
+    }
+
+    // Diagnostics should come in input order however the work is scheduled
+    @Test
+    void reportsDiagnosticsInInputOrder() throws IOException {
+        List<Path> srcFiles = sources(semanticErrors);
+        StringBuilder expected = new StringBuilder();
+        for (Path srcFile : srcFiles) {
+            String className = FilenameUtils.getBaseName(srcFile.toString());
+            ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+            try (PrintStream ps = new PrintStream(diagnostics, true, UTF_8)) {
+                new Compiler(false, ps).compileToBytes(srcFile, className);
+            }
+            diagnostics.toString(UTF_8).lines()
+                .forEach(line -> expected.append(srcFile + ": " + line + System.lineSeparator()));
+        }
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        boolean result = new BatchCompiler(CompilerOptions.DEFAULT, 8, null, Path.of("")).compile(
+            srcFiles, Files.createTempDirectory("notcc-batch"),
+            new PrintStream(new ByteArrayOutputStream()), new PrintStream(err, true, UTF_8)
+        );
+
+        assertFalse(result);
+        assertEquals(expected.toString(), err.toString(UTF_8));
+    }
+
+    // Reports span several lines, each of which should name its file
+    @Test
+    void prefixesEveryDiagnosticLine() throws IOException {
+        List<Path> srcFiles = sources(validPrograms).subList(0, 3);
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        boolean result = new BatchCompiler(CompilerOptions.DEFAULT.reportPeephole(true), 4, null, Path.of(""))
+            .compile(srcFiles, Files.createTempDirectory("notcc-batch"),
+                     new PrintStream(new ByteArrayOutputStream()), new PrintStream(err, true, UTF_8));
+
+        assertTrue(result, err.toString(UTF_8));
+        List<String> lines = err.toString(UTF_8).lines().collect(Collectors.toList());
+        assertTrue(lines.size() > srcFiles.size(), err.toString(UTF_8));
+        for (String line : lines)
+            assertTrue(srcFiles.stream().anyMatch(srcFile -> line.startsWith(srcFile + ": ")), line);
+    }
+
+    // A class file that cannot be written should fail only its own source file
+    @Test
+    void reportsUnwritableClassFileAndCompletesOthers() throws IOException {
+        List<Path> srcFiles = sources(validPrograms).subList(0, 3);
+        Path destDir = Files.createTempDirectory("notcc-batch");
+        String blockedName = FilenameUtils.getBaseName(srcFiles.get(1).toString());
+        Files.createDirectory(destDir.resolve(blockedName + ".class"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        boolean result = new BatchCompiler(CompilerOptions.DEFAULT, 4, null, Path.of("")).compile(
+            srcFiles, destDir, new PrintStream(out, true, UTF_8), new PrintStream(err, true, UTF_8)
+        );
+
+        assertFalse(result);
+        assertTrue(err.toString(UTF_8).startsWith(srcFiles.get(1) + ": Cannot write "), err.toString(UTF_8));
+        assertTrue(out.toString(UTF_8).startsWith("Compiled 2 of 3"));
+        for (Path srcFile : List.of(srcFiles.get(0), srcFiles.get(2))) {
+            String className = FilenameUtils.getBaseName(srcFile.toString());
+            assertTrue(Files.isRegularFile(destDir.resolve(className + ".class")));
+        }
+    }
+
+    private List<Path> sources(Path testDir) throws IOException {
+        try (Stream<Path> files = Files.list(testDir)) {
+            return files.filter(path -> path.toString().endsWith(".notc"))
+                        .sorted()
+                        .collect(Collectors.toList());
+        }
+    }
+
+}
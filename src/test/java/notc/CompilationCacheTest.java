@@ -0,0 +1,106 @@
+package notc;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class CompilationCacheTest {
+
+    private final Path factorial = Path.of(URI.create(
+        getClass().getResource("/valid_programs/factorial.notc").toString()
+    ));
+
+    @Test
+    void secondCompilationIsHit() throws IOException {
+        CompilationCache cache = new CompilationCache(Files.createTempDirectory("notcc-cache"), 1 << 20);
+        Compiler compiler = new Compiler(CompilerOptions.DEFAULT, System.err, cache);
+
+        byte[] compiled = compiler.compileToBytes(factorial, "factorial");
+        byte[] cached = compiler.compileToBytes(factorial, "factorial");
+
+        assertNotNull(compiled);
+        assertArrayEquals(compiled, cached);
+        assertEquals(1, cache.misses());
+        assertEquals(1, cache.hits());
+    }
+
+    @Test
+    void keyCoversSourceClassNameAndConfiguration() {
+        byte[] source = "void main() {}".getBytes(UTF_8);
+        String key = CompilationCache.key(source, "A", "jasmin=false");
+        assertEquals(key, CompilationCache.key(source.clone(), "A", "jasmin=false"));
+        assertNotEquals(key, CompilationCache.key("void main() { }".getBytes(UTF_8), "A", "jasmin=false"));
+        assertNotEquals(key, CompilationCache.key(source, "B", "jasmin=false"));
+        assertNotEquals(key, CompilationCache.key(source, "A", "jasmin=true"));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() throws IOException {
+        Path dir = Files.createTempDirectory("notcc-cache");
+        CompilationCache cache = new CompilationCache(dir, 250);
+        byte[] entry = new byte[100];
+
+        cache.put("a", entry);
+        cache.put("b", entry);
+        age(dir.resolve("a.class"), 3);
+        age(dir.resolve("b.class"), 2);
+        cache.get("a"); // Now more recently used than b
+        cache.put("c", entry);
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(1, cache.evictions());
+    }
+
+    // An entry that cannot be stored leaves no temporary file behind
+    @Test
+    void removesTemporaryFileWhenStoringFails() throws IOException {
+        Path dir = Files.createTempDirectory("notcc-cache");
+        CompilationCache cache = new CompilationCache(dir, 1 << 20);
+        // A directory in the way of the entry, which the move cannot replace
+        Files.createFile(Files.createDirectory(dir.resolve("a.class")).resolve("taken"));
+
+        cache.put("a", new byte[100]);
+
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(List.of(dir.resolve("a.class")), files.collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void rejectsNegativeAndOverflowingSizes() throws IOException {
+        Path dir = Files.createTempDirectory("notcc-cache");
+        for (String size : List.of("-1", String.valueOf((Long.MAX_VALUE >> 20) + 1))) {
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            String[] args = {"--cache", dir.toString(), "--cache-size", size, factorial.toString()};
+            int status = Main.run(args, Path.of(""), InputStream.nullInputStream(),
+                                  new PrintStream(new ByteArrayOutputStream()), new PrintStream(err, true, UTF_8));
+            assertEquals(1, status);
+            assertEquals("Illegal cache size" + System.lineSeparator(), err.toString(UTF_8));
+        }
+    }
+
+    // Makes an entry look as if last used the given number of minutes ago
+    private static void age(Path entry, int minutes) throws IOException {
+        long then = System.currentTimeMillis() - minutes * 60_000L;
+        Files.setLastModifiedTime(entry, FileTime.fromMillis(then));
+    }
+
+}
@@ -0,0 +1,159 @@
+package notc;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.Set;
+
+// Sends requests to a server on an ephemeral port and checks that they are
+// handled like command lines given to Main
+@TestInstance(Lifecycle.PER_CLASS)
+class CompileServerTest {
+
+    private final Path validPrograms = Path.of(URI.create(
+        getClass().getResource("/valid_programs").toString()
+    ));
+
+    private CompileServer server;
+    private Path tokenFile;
+    private Path destDir;
+
+    @BeforeAll
+    void startServer() throws IOException {
+        tokenFile = Files.createTempDirectory("notcc-token").resolve(CompileClient.TOKEN_FILE);
+        server = new CompileServer(0, tokenFile);
+        Thread serving = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        serving.setDaemon(true);
+        serving.start();
+        destDir = Files.createTempDirectory("notcc-server");
+    }
+
+    @AfterAll
+    void stopServer() throws IOException {
+        server.close();
+    }
+
+    @Test
+    void compilesRelativeToClientWorkingDirectory() throws IOException {
+        String[] args = {"-c", "Served", "-d", destDir.toString(), "approximate_e.notc"};
+        CompileClient.Reply reply = request(args);
+        assertEquals(0, reply.status, new String(reply.err, UTF_8));
+        assertEquals(0, reply.err.length);
+        assertTrue(Files.exists(destDir.resolve("Served.class")));
+    }
+
+    // Paths should be reported as the client gave them, as by Main
+    @Test
+    void relaysDiagnosticsAndStatus() throws IOException {
+        CompileClient.Reply reply = request(new String[] {"no_such_program.notc"});
+        assertEquals(1, reply.status);
+        assertEquals("no_such_program.notc: No such file" + System.lineSeparator(),
+                     new String(reply.err, UTF_8));
+    }
+
+    @Test
+    void rejectsRequestsWithoutToken() throws IOException {
+        String[] args = {"-c", "Unserved", "-d", destDir.toString(), "approximate_e.notc"};
+        CompileClient.Reply reply = CompileClient.request(server.localPort(), "guess",
+                                                          validPrograms.toString(), args);
+        assertEquals(1, reply.status);
+        assertTrue(new String(reply.err, UTF_8).contains("token does not match"));
+        assertFalse(Files.exists(destDir.resolve("Unserved.class")));
+    }
+
+    @Test
+    void writesTokenReadableByOwnerOnly() throws IOException {
+        if (!tokenFile.getFileSystem().supportedFileAttributeViews().contains("posix"))
+            return;
+        assertEquals(Set.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE),
+                     Files.getPosixFilePermissions(tokenFile));
+    }
+
+    // Programs would read no input there, so the client runs them in-process
+    @Test
+    void rejectsRunningPrograms() throws IOException {
+        CompileClient.Reply reply = request(new String[] {"--run", "approximate_e.notc"});
+        assertEquals(1, reply.status);
+        assertEquals(0, reply.out.length);
+        assertTrue(new String(reply.err, UTF_8).contains("does not execute programs"));
+    }
+
+    @Test
+    void relaysUsage() throws IOException {
+        CompileClient.Reply reply = request(new String[] {"--help"});
+        assertEquals(0, reply.status);
+        assertTrue(new String(reply.out, UTF_8).contains("--serve"));
+    }
+
+    // Handled concurrently by the server
+    @Test
+    void handlesSimultaneousClients() throws Exception {
+        Thread[] clients = new Thread[8];
+        int[] statuses = new int[clients.length];
+        for (int i = 0; i < clients.length; ++i) {
+            int n = i;
+            clients[i] = new Thread(() -> {
+                String[] args = {"-c", "Client" + n, "-d", destDir.toString(), "approximate_e.notc"};
+                try {
+                    statuses[n] = request(args).status;
+                } catch (IOException e) {
+                    statuses[n] = -1;
+                }
+            });
+            clients[i].start();
+        }
+        for (int i = 0; i < clients.length; ++i) {
+            clients[i].join();
+            assertEquals(0, statuses[i]);
+            assertTrue(Files.exists(destDir.resolve("Client" + i + ".class")));
+        }
+    }
+
+    // Connections that send nothing are closed, freeing their handlers
+    @Test
+    void dropsIdleConnections() throws IOException {
+        Path otherTokenFile = Files.createTempDirectory("notcc-token").resolve(CompileClient.TOKEN_FILE);
+        CompileServer idleServer = new CompileServer(0, otherTokenFile, 100);
+        Thread serving = new Thread(() -> {
+            try {
+                idleServer.serve();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        serving.setDaemon(true);
+        serving.start();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), idleServer.localPort())) {
+            socket.setSoTimeout(10_000);
+            assertEquals(-1, socket.getInputStream().read());
+        } finally {
+            idleServer.close();
+        }
+    }
+
+    private CompileClient.Reply request(String[] args) throws IOException {
+        String token = Files.readString(tokenFile, UTF_8);
+        return CompileClient.request(server.localPort(), token, validPrograms.toString(), args);
+    }
+
+}
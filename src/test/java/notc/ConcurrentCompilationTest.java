@@ -0,0 +1,103 @@
+package notc;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Compiles every test program several times under different class names, first one
+// at a time and then all at once from a thread pool. Both the diagnostics and the
+// class files should be the same either way.
+class ConcurrentCompilationTest {
+
+    private static final int ROUNDS = 4;
+    private static final int THREADS = 16;
+
+    @Test
+    void parallelCompilationMatchesSerial() throws Exception {
+        List<Path> sources = testSources();
+        Path serialDir = Files.createTempDirectory("notcc-serial");
+        Path parallelDir = Files.createTempDirectory("notcc-parallel");
+
+        List<Job> jobs = new ArrayList<>();
+        for (int round = 0; round < ROUNDS; ++round) {
+            for (Path src : sources) {
+                String className = FilenameUtils.getBaseName(src.toString()) + "_" + round;
+                jobs.add(new Job(src, className));
+            }
+        }
+
+        List<String> serialDiagnostics = new ArrayList<>();
+        for (Job job : jobs)
+            serialDiagnostics.add(job.compileInto(serialDir));
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<String>> parallelDiagnostics = new ArrayList<>();
+        try {
+            for (Job job : jobs)
+                parallelDiagnostics.add(pool.submit(() -> job.compileInto(parallelDir)));
+            for (int i = 0; i < jobs.size(); ++i)
+                assertEquals(serialDiagnostics.get(i), parallelDiagnostics.get(i).get(),
+                             "Diagnostics differ for " + jobs.get(i).className);
+        } finally {
+            pool.shutdown();
+        }
+
+        for (Job job : jobs) {
+            Path serialClass = serialDir.resolve(job.className + ".class");
+            if (!Files.exists(serialClass))
+                continue;
+            Path parallelClass = parallelDir.resolve(job.className + ".class");
+            assertArrayEquals(Files.readAllBytes(serialClass), Files.readAllBytes(parallelClass),
+                              "Class files differ for " + job.className);
+        }
+    }
+
+    private List<Path> testSources() throws IOException {
+        List<Path> sources = new ArrayList<>();
+        for (String dir : List.of("syntax_errors", "semantic_errors", "valid_programs")) {
+            Path testDir = Path.of(URI.create(getClass().getResource("/" + dir).toString()));
+            try (Stream<Path> files = Files.list(testDir)) {
+                sources.addAll(files.filter(path -> path.toString().endsWith(".notc"))
+                                    .sorted()
+                                    .collect(Collectors.toList()));
+            }
+        }
+        return sources;
+    }
+
+    private static class Job {
+        final Path srcFile;
+        final String className;
+
+        Job(Path srcFile, String className) {
+            this.srcFile = srcFile;
+            this.className = className;
+        }
+
+        // Returns what the compiler reported
+        String compileInto(Path destDir) {
+            ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+            try (PrintStream ps = new PrintStream(diagnostics, true, UTF_8)) {
+                new Compiler(false, ps).compile(srcFile, className, destDir);
+            }
+            return diagnostics.toString(UTF_8);
+        }
+    }
+
+}
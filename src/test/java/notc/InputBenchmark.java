@@ -0,0 +1,64 @@
+package notc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.Random;
+
+// Measures how fast programs read ints from standard input, with the built-ins
+// embedded in the class and with the shared runtime. Run with "./gradlew benchmark",
+// optionally with the number of ints as argument (-Pargs=<count>).
+class InputBenchmark {
+
+    private static final String SUM_PROGRAM = String.join(System.lineSeparator(),
+        "void main() {",
+        "    int sum = 0;",
+        "    int i = readInt();",
+        "    while (i != 0) {",
+        "        sum = sum + i;",
+        "        i = readInt();",
+        "    }",
+        "    printInt(sum);",
+        "}"
+    );
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        byte[] input = randomInts(count);
+        Path srcFile = Files.createTempFile("InputBenchmark", ".notc");
+        Files.writeString(srcFile, SUM_PROGRAM);
+
+        System.out.printf("Reading %d ints (%d bytes)%n", count, input.length);
+        for (boolean sharedRuntime : new boolean[] {false, true}) {
+            CompilerOptions options = CompilerOptions.DEFAULT.sharedRuntime(sharedRuntime);
+            byte[] classBytes = new Compiler(options, System.err, null)
+                .compileToBytes(srcFile, "InputBenchmark");
+            String label = sharedRuntime ? "shared runtime" : "embedded built-ins";
+            for (int round = 1; round <= 3; ++round) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                long start = System.nanoTime();
+                ProgramRunner.run(classBytes, "InputBenchmark",
+                                  new ByteArrayInputStream(input), new PrintStream(out));
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%-18s round %d: %8.3f s, %12.0f ints/s (sum %s)%n",
+                                  label, round, seconds, count / seconds, out.toString(UTF_8).trim());
+            }
+        }
+        Files.delete(srcFile);
+    }
+
+    private static byte[] randomInts(int count) {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder(count * 8);
+        for (int i = 0; i < count; ++i) {
+            int n = random.nextInt(2_000_000) - 1_000_000;
+            sb.append(n == 0 ? 1 : n).append('\n');
+        }
+        return sb.toString().getBytes(UTF_8);
+    }
+
+}
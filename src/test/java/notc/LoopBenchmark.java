@@ -0,0 +1,97 @@
+package notc;
+
+import notc.codegen.Optimization;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.Set;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// Compares loop kernels compiled with and without counted loops and unrolling:
+// trial division as in is_prime.notc, over a bound known only at run time, and
+// the ten-term series of approximate_e.notc, whose bounds are constants.
+// Run with "./gradlew loopBenchmark".
+class LoopBenchmark {
+
+    private static final String LOOP_PROGRAM = String.join(System.lineSeparator(),
+        "void main() {",
+        "    int limit = readInt();",
+        "    int rounds = readInt();",
+        "    int primes = 0;",
+        "    int n;",
+        "    for (n = 2; n < limit; n++) {",
+        "        if (isPrime(n))",
+        "            primes++;",
+        "    }",
+        "    double e = 0;",
+        "    int r;",
+        "    for (r = 0; r < rounds; r++)",
+        "        e = e + approximateE();",
+        "    printInt(primes);",
+        "    printDouble(e / rounds);",
+        "}",
+        "",
+        "bool isPrime(int n) {",
+        "    int d;",
+        "    for (d = 2; d < n; d++) {",
+        "        if (n % d == 0)",
+        "            return false;",
+        "    }",
+        "    return true;",
+        "}",
+        "",
+        "double approximateE() {",
+        "    double e = 1;",
+        "    double term = 1;",
+        "    int i;",
+        "    for (i = 1; i <= 10; ++i) {",
+        "        term = term / i;",
+        "        e = e + term;",
+        "    }",
+        "    return e;",
+        "}"
+    );
+
+    private static final int PRIME_LIMIT = 30_000;
+    private static final int E_ROUNDS = 20_000_000;
+
+    public static void main(String[] args) throws IOException {
+        Path srcFile = Files.createTempFile("LoopBenchmark", ".notc");
+        Files.writeString(srcFile, LOOP_PROGRAM);
+
+        String[] labels = {"plain loops", "counted loops", "counted, unrolled"};
+        for (int variant = 0; variant < labels.length; ++variant) {
+            Set<Optimization> optimizations = EnumSet.allOf(Optimization.class);
+            if (variant < 1)
+                optimizations.remove(Optimization.COUNTED_LOOPS);
+            if (variant < 2)
+                optimizations.remove(Optimization.LOOP_UNROLLING);
+            CompilerOptions options = CompilerOptions.DEFAULT.optimizations(optimizations);
+            byte[] classBytes = new Compiler(options, System.err, null)
+                .compileToBytes(srcFile, "LoopBenchmark");
+
+            for (int round = 1; round <= 3; ++round) {
+                long start = System.nanoTime();
+                String result = run(classBytes, PRIME_LIMIT, E_ROUNDS);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%-18s round %d: %8.3f s (%s)%n",
+                                  labels[variant], round, seconds, result);
+            }
+        }
+        Files.delete(srcFile);
+    }
+
+    private static String run(byte[] classBytes, int limit, int rounds) {
+        byte[] input = (limit + "\n" + rounds + "\n").getBytes(UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ProgramRunner.run(classBytes, "LoopBenchmark",
+                          new ByteArrayInputStream(input), new PrintStream(out));
+        return out.toString(UTF_8).trim().replace(System.lineSeparator(), ", ");
+    }
+
+}
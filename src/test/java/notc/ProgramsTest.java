@@ -1,5 +1,8 @@
 package notc;
 
+import notc.codegen.Memoization;
+import notc.codegen.Optimization;
+
 import org.junit.jupiter.api.TestInstance;
 import org.junit.jupiter.api.TestInstance.Lifecycle;
 import org.junit.jupiter.api.TestMethodOrder;
@@ -20,9 +23,13 @@ import com.google.common.primitives.Ints;
 import com.github.stefanbirkner.systemlambda.SystemLambda;
 import org.jooq.lambda.Unchecked;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.InputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.PrintStream;
 import java.net.URI;
 import java.net.URL;
 import java.nio.file.Path;
@@ -30,8 +37,10 @@ import java.nio.file.Files;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import java.util.function.Function;
 import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Stream;
 
 // Runs the compiler with test program source files: ones that should compile, ones that
@@ -90,22 +99,134 @@ class ProgramsTest {
     @ParameterizedTest
     @MethodSource("provideCompiledPrograms")
     void runCompiledProgram(Path classFile) throws IOException, InterruptedException {
-        String programPath = classFile.getParent().toString();
+        Path classDir = classFile.getParent();
         String className = FilenameUtils.getBaseName(classFile.toString());
-        Process proc = new ProcessBuilder(javaBin, "-cp", programPath, className).start();
-        Path testInput = Path.of(programPath, className + ".input");
-        if (Files.exists(testInput)) {
-            String input = FileUtils.readFileToString(testInput.toFile(), UTF_8);
-            OutputStream stdin = proc.getOutputStream();
-            IOUtils.write(input, stdin, UTF_8);
-            stdin.flush();
+        runAndCheckOutput(classDir, className);
+    }
+
+    // The Jasmin path should yield programs that behave the same
+    @Order(3)
+    @ParameterizedTest
+    @MethodSource("provideValidSources")
+    void compileViaJasminAndRun(Path srcFile) throws Exception {
+        String className = FilenameUtils.getBaseName(srcFile.toString());
+        Path jasminDir = Files.createDirectories(validPrograms.resolve("jasmin"));
+        String sysErr = SystemLambda.tapSystemErr( () ->
+            new Compiler(true).compile(srcFile, className, jasminDir)
+        );
+        assertTrue(sysErr.isEmpty(), "Compiler wrote the following to System.err: " + sysErr);
+        runAndCheckOutput(jasminDir, className);
+    }
+
+    // Programs executed in the test JVM from class bytes held in memory should behave the same
+    @Order(4)
+    @ParameterizedTest
+    @MethodSource("provideValidSources")
+    void compileAndRunInProcess(Path srcFile) throws Exception {
+        String className = FilenameUtils.getBaseName(srcFile.toString());
+        Path testInput = validPrograms.resolve(className + ".input");
+        InputStream stdin = Files.exists(testInput) ? Files.newInputStream(testInput)
+                                                    : InputStream.nullInputStream();
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        String sysErr = SystemLambda.tapSystemErr( () ->
+            new Compiler().compileAndRun(srcFile, className, stdin, new PrintStream(stdout, true, UTF_8))
+        );
+        assertTrue(sysErr.isEmpty(), "Compiler wrote the following to System.err: " + sysErr);
+        checkOutput(className, IOUtils.readLines(new ByteArrayInputStream(stdout.toByteArray()), UTF_8));
+    }
+
+    // Programs calling the built-in functions of the shared runtime should behave the same
+    @Order(5)
+    @ParameterizedTest
+    @MethodSource("provideValidSources")
+    void compileAgainstRuntimeAndRun(Path srcFile) throws Exception {
+        String className = FilenameUtils.getBaseName(srcFile.toString());
+        Path runtimeDir = Files.createDirectories(validPrograms.resolve("runtime"));
+        CompilerOptions options = CompilerOptions.DEFAULT.sharedRuntime(true);
+        String sysErr = SystemLambda.tapSystemErr( () ->
+            new Compiler(options, System.err, null).compile(srcFile, className, runtimeDir)
+        );
+        assertTrue(sysErr.isEmpty(), "Compiler wrote the following to System.err: " + sysErr);
+        Path runtimeLocation = Path.of(runtime.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        runAndCheckOutput(runtimeDir + File.pathSeparator + runtimeLocation, className);
+    }
+
+    // The other tests run optimized programs, which should behave as unoptimized ones
+    @Order(6)
+    @ParameterizedTest
+    @MethodSource("provideValidSources")
+    void compileUnoptimizedAndRun(Path srcFile) throws Exception {
+        String className = FilenameUtils.getBaseName(srcFile.toString());
+        Path unoptimizedDir = Files.createDirectories(validPrograms.resolve("unoptimized"));
+        CompilerOptions options = CompilerOptions.DEFAULT.optimizations(Set.of());
+        String sysErr = SystemLambda.tapSystemErr( () ->
+            new Compiler(options, System.err, null).compile(srcFile, className, unoptimizedDir)
+        );
+        assertTrue(sysErr.isEmpty(), "Compiler wrote the following to System.err: " + sysErr);
+        runAndCheckOutput(unoptimizedDir, className);
+    }
+
+    // Caching the results of recursive functions should not change what programs do
+    @Order(7)
+    @ParameterizedTest
+    @MethodSource("provideValidSources")
+    void compileMemoizedAndRun(Path srcFile) throws Exception {
+        String className = FilenameUtils.getBaseName(srcFile.toString());
+        Path memoizedDir = Files.createDirectories(validPrograms.resolve("memoized"));
+        CompilerOptions options = CompilerOptions.DEFAULT.memoization(Memoization.CACHED);
+        String sysErr = SystemLambda.tapSystemErr( () ->
+            new Compiler(options, System.err, null).compile(srcFile, className, memoizedDir)
+        );
+        assertTrue(sysErr.isEmpty(), "Compiler wrote the following to System.err: " + sysErr);
+        runAndCheckOutput(memoizedDir, className);
+    }
+
+    // Without constant folding, jump conditions and the peephole pass, loops on true
+    // seem to exit, including in inlined bodies
+    @Order(8)
+    @ParameterizedTest
+    @MethodSource("provideValidSources")
+    void compileInlinedUnfoldedAndRun(Path srcFile) throws Exception {
+        String className = FilenameUtils.getBaseName(srcFile.toString());
+        Path unfoldedDir = Files.createDirectories(validPrograms.resolve("unfolded"));
+        Set<Optimization> optimizations = EnumSet.allOf(Optimization.class);
+        optimizations.removeAll(Set.of(Optimization.CONSTANT_FOLDING, Optimization.JUMP_CONDITIONS,
+                                       Optimization.PEEPHOLE));
+        CompilerOptions options = CompilerOptions.DEFAULT.optimizations(optimizations);
+        String sysErr = SystemLambda.tapSystemErr( () ->
+            new Compiler(options, System.err, null).compile(srcFile, className, unfoldedDir)
+        );
+        assertTrue(sysErr.isEmpty(), "Compiler wrote the following to System.err: " + sysErr);
+        runAndCheckOutput(unfoldedDir, className);
+    }
+
+    private void runAndCheckOutput(Path classDir, String className)
+            throws IOException, InterruptedException {
+        runAndCheckOutput(classDir.toString(), className);
+    }
+
+    // Runs a compiled program with the input of its test, if any, and checks its output
+    private void runAndCheckOutput(String classPath, String className)
+            throws IOException, InterruptedException {
+        Process proc = new ProcessBuilder(javaBin, "-cp", classPath, className).start();
+        Path testInput = validPrograms.resolve(className + ".input");
+        // Closed so that programs reading past the input see its end
+        try (OutputStream stdin = proc.getOutputStream()) {
+            if (Files.exists(testInput)) {
+                String input = FileUtils.readFileToString(testInput.toFile(), UTF_8);
+                IOUtils.write(input, stdin, UTF_8);
+            }
         }
         assertEquals(0, proc.waitFor(), "Program finished with nonzero exit code");
-        Path testOutput = Path.of(programPath, className + ".output");
+        checkOutput(className, IOUtils.readLines(proc.getInputStream(), UTF_8));
+    }
+
+    // Compares output of a program with that expected by its test, if any
+    private void checkOutput(String className, List<String> actualOutput) throws IOException {
+        Path testOutput = validPrograms.resolve(className + ".output");
         if (!Files.exists(testOutput))
             return;
         List<String> expectedOutput = FileUtils.readLines(testOutput.toFile(), UTF_8);
-        List<String> actualOutput = IOUtils.readLines(proc.getInputStream(), UTF_8);
         assertThat(actualOutput)
             .withFailMessage("Program output " + actualOutput +
                              " when " + expectedOutput + " was expected")
@@ -113,6 +234,12 @@ class ProgramsTest {
             .isEqualTo(expectedOutput);
     }
 
+    private Stream<Arguments> provideValidSources() throws IOException {
+        return Files.list(validPrograms)
+            .filter(path -> path.toString().endsWith(".notc"))
+            .map(Arguments::of);
+    }
+
     private Stream<Arguments> provideCompiledPrograms() throws IOException {
         return Files.list(validPrograms)
             .filter(path -> path.toString().endsWith(".class"))
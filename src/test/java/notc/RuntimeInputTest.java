@@ -0,0 +1,50 @@
+package notc;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+class RuntimeInputTest {
+
+    private static RuntimeInput input(String text) {
+        return new RuntimeInput(new ByteArrayInputStream(text.getBytes(UTF_8)));
+    }
+
+    @Test
+    void readsIntsAtLimitsAndSkipsOthers() {
+        RuntimeInput in = input("2147483647\n-2147483648\n2147483648\n+5\n-\n1 2\n\n\u0663\r\n7");
+        assertEquals(Integer.MAX_VALUE, in.readInt());
+        assertEquals(Integer.MIN_VALUE, in.readInt());
+        assertEquals(5, in.readInt());
+        assertEquals(3, in.readInt()); // Arabic-Indic digit, as accepted by Integer.parseInt
+        assertEquals(7, in.readInt());
+        assertEquals(0, in.readInt());
+        assertEquals(0, in.readInt());
+    }
+
+    // Should agree with Double.parseDouble
+    @ParameterizedTest
+    @ValueSource(strings = {"0", "-0", "2.5", "0.1", "-123.456", "5.", "123456789012345",
+                            "1234567890123456789", "0.30000000000000004", "1e10", " 7.25 ",
+                            "1.0000000000000000000000001", "NaN", "-Infinity"})
+    void readsDoublesLikeLibrary(String line) {
+        assertEquals(Double.parseDouble(line), input(line + "\n").readDouble());
+    }
+
+    @Test
+    void readsLinesAcrossBufferBoundaries() {
+        String longLine = "x".repeat(200_000);
+        RuntimeInput in = input(longLine + "\r\n\u00e5\n\n42");
+        assertEquals(longLine, in.readString());
+        assertEquals("\u00e5", in.readString());
+        assertEquals("", in.readString());
+        assertEquals(42, in.readInt());
+        assertEquals("", in.readString());
+        assertEquals(0.0, in.readDouble());
+    }
+
+}
@@ -0,0 +1,97 @@
+package notc;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+// The buffered output should be indistinguishable from that of println
+class RuntimeOutputTest {
+
+    @Test
+    void formatsLikePrintln() {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        PrintStream reference = new PrintStream(expected, true);
+        RuntimeOutput out = new RuntimeOutput(new PrintStream(actual, true));
+
+        for (int i : new int[] {0, 7, -7, 10, 1234567890, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+            reference.println(i);
+            out.printInt(i);
+        }
+        for (double d : new double[] {0.0, -0.0, 1.0, -42.0, 9999999.0, 1e7, 2.5, 0.1, 1e-5,
+                                      Double.NaN, Double.NEGATIVE_INFINITY, Double.MIN_VALUE}) {
+            reference.println(d);
+            out.printDouble(d);
+        }
+        for (String s : new String[] {"", "hello, world", "r\u00e4ksm\u00f6rg\u00e5s", "x".repeat(100_000)}) {
+            reference.println(s);
+            out.printString(s);
+        }
+        out.flush();
+
+        assertEquals(expected.toString(Charset.defaultCharset()), actual.toString(Charset.defaultCharset()));
+    }
+
+    // Strings should be encoded as by the wrapped stream, whatever the default charset
+    @Test
+    void encodesWithCharsetOfWrappedStream() {
+        for (Charset charset : new Charset[] {StandardCharsets.ISO_8859_1, StandardCharsets.UTF_8}) {
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            PrintStream reference = new PrintStream(expected, true, charset);
+            RuntimeOutput out = new RuntimeOutput(new PrintStream(actual, true, charset));
+
+            reference.println(1);
+            out.printInt(1);
+            reference.println("r\u00e4ksm\u00f6rg\u00e5s");
+            out.printString("r\u00e4ksm\u00f6rg\u00e5s");
+            reference.println(2);
+            out.printInt(2);
+            out.flush();
+
+            assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+        }
+    }
+
+    @Test
+    void holdsOutputUntilFlushed() {
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        RuntimeOutput out = new RuntimeOutput(new PrintStream(actual, true));
+        out.printInt(1);
+        assertEquals(0, actual.size());
+        out.flush();
+        assertNotEquals(0, actual.size());
+    }
+
+    // Printed values must not be lost when a program dies
+    @Test
+    void flushesOnUncaughtException() throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("notcc-output");
+        Path srcFile = Files.writeString(dir.resolve("Dies.notc"),
+            "void main() { printInt(1); printString(\"two\"); printInt(3 / 0); }"
+        );
+        CompilerOptions options = CompilerOptions.DEFAULT.sharedRuntime(true);
+        new Compiler(options, System.err, null).compile(srcFile, "Dies", dir);
+
+        String runtimeLocation = runtime.class.getProtectionDomain().getCodeSource().getLocation().getPath();
+        String javaBin = String.join(File.separator, System.getProperty("java.home"), "bin", "java");
+        Process proc = new ProcessBuilder(javaBin, "-cp", dir + File.pathSeparator + runtimeLocation, "Dies")
+            .redirectError(ProcessBuilder.Redirect.DISCARD)
+            .start();
+        String output = new String(proc.getInputStream().readAllBytes(), Charset.defaultCharset());
+
+        assertNotEquals(0, proc.waitFor());
+        assertEquals("1" + System.lineSeparator() + "two" + System.lineSeparator(), output);
+    }
+
+}
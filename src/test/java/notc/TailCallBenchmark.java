@@ -0,0 +1,99 @@
+package notc;
+
+import notc.codegen.Optimization;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.Set;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+// Compares recursive programs compiled with and without tail calls replaced by
+// jumps: how deep they can recurse before the stack overflows, and how fast
+// they run at a depth both manage. Run with "./gradlew tailCallBenchmark".
+class TailCallBenchmark {
+
+    private static final String RECURSIVE_PROGRAM = String.join(System.lineSeparator(),
+        "void main() {",
+        "    int depth = readInt();",
+        "    int rounds = readInt();",
+        "    int total = 0;",
+        "    while (rounds > 0) {",
+        "        total = total + count(depth, 0) + isEven(depth);",
+        "        rounds--;",
+        "    }",
+        "    printInt(total);",
+        "}",
+        "",
+        "int count(int n, int acc) {",
+        "    if (n == 0)",
+        "        return acc;",
+        "    return count(n - 1, acc + 1);",
+        "}",
+        "",
+        "bool isEven(int n) {",
+        "    if (n == 0)",
+        "        return true;",
+        "    return isOdd(n - 1);",
+        "}",
+        "",
+        "bool isOdd(int n) {",
+        "    if (n == 0)",
+        "        return false;",
+        "    return isEven(n - 1);",
+        "}"
+    );
+
+    private static final int TIMED_DEPTH = 2_000;
+    private static final int TIMED_ROUNDS = 20_000;
+
+    public static void main(String[] args) throws IOException {
+        Path srcFile = Files.createTempFile("TailCallBenchmark", ".notc");
+        Files.writeString(srcFile, RECURSIVE_PROGRAM);
+
+        for (boolean tailCalls : new boolean[] {false, true}) {
+            Set<Optimization> optimizations = EnumSet.allOf(Optimization.class);
+            if (!tailCalls)
+                optimizations.remove(Optimization.TAIL_CALLS);
+            CompilerOptions options = CompilerOptions.DEFAULT.optimizations(optimizations);
+            byte[] classBytes = new Compiler(options, System.err, null)
+                .compileToBytes(srcFile, "TailCallBenchmark");
+            String label = tailCalls ? "tail calls as jumps" : "tail calls as calls";
+
+            int deepest = 0;
+            for (int depth = 1_000; depth <= 100_000_000; depth *= 10) {
+                try {
+                    run(classBytes, depth, 1);
+                    deepest = depth;
+                } catch (ProgramRunner.ProgramException e) {
+                    if (!(e.getCause() instanceof StackOverflowError))
+                        throw e;
+                    break;
+                }
+            }
+            System.out.printf("%-20s deepest recursion completed: %,d%n", label, deepest);
+
+            for (int round = 1; round <= 3; ++round) {
+                long start = System.nanoTime();
+                String total = run(classBytes, TIMED_DEPTH, TIMED_ROUNDS);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%-20s round %d: %8.3f s for %d x depth %d (total %s)%n",
+                                  label, round, seconds, TIMED_ROUNDS, TIMED_DEPTH, total);
+            }
+        }
+        Files.delete(srcFile);
+    }
+
+    private static String run(byte[] classBytes, int depth, int rounds) {
+        byte[] input = (depth + "\n" + rounds + "\n").getBytes(UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ProgramRunner.run(classBytes, "TailCallBenchmark",
+                          new ByteArrayInputStream(input), new PrintStream(out));
+        return out.toString(UTF_8).trim();
+    }
+
+}
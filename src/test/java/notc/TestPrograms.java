@@ -0,0 +1,40 @@
+package notc;
+
+import notc.antlrgen.NotCLexer;
+import notc.antlrgen.NotCParser;
+import notc.antlrgen.NotCParser.ProgramContext;
+import notc.semantics.ConstantFolder;
+import notc.semantics.ProgramChecker;
+import notc.semantics.SymbolTable;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+
+// Parses and checks programs given as strings, for the tests of the analyses
+// and generators that run on checked parse trees
+public final class TestPrograms {
+
+    private TestPrograms() {}
+
+    // Generated into a class named "Test", which also holds the built-ins.
+    // Constants are folded if fold is set, as the compiler does by default.
+    public static Checked check(String program, boolean fold) {
+        NotCLexer lexer = new NotCLexer(CharStreams.fromString(program));
+        ProgramContext tree = NotCParser.from(new CommonTokenStream(lexer), "Test").program();
+        SymbolTable symTab = tree.accept(new ProgramChecker("Test"));
+        if (fold)
+            tree.accept(new ConstantFolder(symTab));
+        return new Checked(tree, symTab);
+    }
+
+    public static final class Checked {
+        public final ProgramContext tree;
+        public final SymbolTable symTab;
+
+        Checked(ProgramContext tree, SymbolTable symTab) {
+            this.tree = tree;
+            this.symTab = symTab;
+        }
+    }
+
+}
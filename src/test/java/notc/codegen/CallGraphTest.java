@@ -0,0 +1,57 @@
+package notc.codegen;
+
+import notc.TestPrograms;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+class CallGraphTest {
+
+    private CallGraph callGraph;
+
+    private void analyze(String program) {
+        TestPrograms.Checked checked = TestPrograms.check(program, false);
+        callGraph = new CallGraph(checked.tree.funDefs, checked.symTab);
+    }
+
+    private List<String> reachable() {
+        return callGraph.reachableDefinitions().stream()
+            .map(funDef -> funDef.header.id.getText())
+            .collect(Collectors.toList());
+    }
+
+    @Test
+    void FunctionsCalledThroughOthers_Reachable() {
+        analyze("void g() { h(); } void main() { g(); } void h() {} void unused() { g(); }");
+        assertEquals(List.of("g", "main", "h"), reachable());
+    }
+
+    @Test
+    void MutuallyRecursiveFunctionsNotCalledFromMain_Unreachable() {
+        analyze("void main() {} void f() { g(); } void g() { f(); }");
+        assertEquals(List.of("main"), reachable());
+    }
+
+    @Test
+    void BuiltinsCalledFromUnreachableFunctions_NotCalled() {
+        analyze("void main() { printInt(readInt()); } void f() { printString(readString()); }");
+        assertEquals(Set.of("printInt", "readInt"), callGraph.calledBuiltins());
+    }
+
+    @Test
+    void Report_ListsUnusedFunctionsAndBuiltins() {
+        analyze("void main() {\n printInt(readInt());\n}\nint unused() {\n return 0;\n}");
+        assertEquals(List.of("Line 4:4: function unused unused",
+                             "Built-in function printDouble unused",
+                             "Built-in function printString unused",
+                             "Built-in function readDouble unused",
+                             "Built-in function readString unused"),
+                     callGraph.report(true));
+        assertEquals(List.of("Line 4:4: function unused unused"), callGraph.report(false));
+    }
+
+}
@@ -0,0 +1,78 @@
+package notc.codegen;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+class CodeVerifierTest {
+
+    @Test
+    void WellFormedCode_Accepted() {
+        List<Instruction> code = List.of(
+            Instruction.label("Test"),
+            Instruction.of(Opcode.ILOAD, "0"),
+            Instruction.of(Opcode.IFEQ, "End"),
+            Instruction.of(Opcode.GOTO, "Test"),
+            Instruction.label("End"),
+            Instruction.of(Opcode.RETURN)
+        );
+        assertDoesNotThrow(() -> CodeVerifier.verify("f(I)V", code));
+    }
+
+    @Test
+    void JumpToUndefinedLabel_Rejected() {
+        assertRejected("undefined label",
+            Instruction.of(Opcode.GOTO, "Nowhere")
+        );
+    }
+
+    @Test
+    void LabelDefinedTwice_Rejected() {
+        assertRejected("more than once",
+            Instruction.label("L0"),
+            Instruction.label("L0"),
+            Instruction.of(Opcode.RETURN)
+        );
+    }
+
+    @Test
+    void MissingOperand_Rejected() {
+        assertRejected("lacks operand",
+            Instruction.of(Opcode.ILOAD),
+            Instruction.of(Opcode.IRETURN)
+        );
+    }
+
+    @Test
+    void UnexpectedOperand_Rejected() {
+        assertRejected("takes no operand",
+            Instruction.of(Opcode.RETURN, "0")
+        );
+    }
+
+    @Test
+    void StackUnderflow_Rejected() {
+        assertRejected("Negative stack depth",
+            Instruction.of(Opcode.POP),
+            Instruction.of(Opcode.RETURN)
+        );
+    }
+
+    @Test
+    void FallingOffEnd_Rejected() {
+        assertRejected("fall off the end",
+            Instruction.of(Opcode.ICONST_1),
+            Instruction.of(Opcode.POP)
+        );
+    }
+
+    private void assertRejected(String problem, Instruction... code) {
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+            () -> CodeVerifier.verify("f()V", List.of(code)));
+        assertTrue(e.getMessage().contains(problem), e.getMessage());
+    }
+
+}
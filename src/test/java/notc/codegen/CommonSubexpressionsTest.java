@@ -0,0 +1,59 @@
+package notc.codegen;
+
+import notc.TestPrograms;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+class CommonSubexpressionsTest {
+
+    // Report for a program with main having the given body, after functions
+    private static List<String> report(String mainBody, String functions) {
+        String program = functions + "void main() { int a = readInt(); int b = readInt(); " + mainBody + " }";
+        TestPrograms.Checked checked = TestPrograms.check(program, true);
+        return new CommonSubexpressions(checked.tree.funDefs, checked.symTab).report();
+    }
+
+    private static List<String> report(String mainBody) {
+        return report(mainBody, "");
+    }
+
+    @Test
+    void RepeatedInStatements_Reused() {
+        assertEquals(List.of("Line 1:62: a * b evaluated once for 3 occurrences in main",
+                             "2 evaluations eliminated"),
+                     report("printInt((a * b + 1) * (a * b - 1)); printInt(a * b);"));
+    }
+
+    @Test
+    void AssignedOperand_NotReused() {
+        assertEquals(List.of("0 evaluations eliminated"),
+                     report("printInt(a * b); a++; printInt(a * b); b = 2; printInt(a * b);"));
+    }
+
+    @Test
+    void ConditionalOperand_ReusedOnlyWithin() {
+        assertEquals(List.of("Line 1:70: a % b evaluated once for 3 occurrences in main",
+                             "2 evaluations eliminated"),
+                     report("if (b != 0) { if (a % b == 0 || a % b == 1) printInt(a % b); " +
+                            "printInt(a > b && a - b < 9); printInt(a - b); }"));
+    }
+
+    @Test
+    void PureCalls_Reused() {
+        assertEquals(List.of("Line 1:143: twice(a) evaluated once for 2 occurrences in main",
+                             "1 evaluations eliminated"),
+                     report("printInt(twice(a) + twice(a)); printInt(next(a) + next(a));",
+                            "int twice(int n) { return n + n; } " +
+                            "int next(int n) { printInt(n); return n + 1; } "));
+    }
+
+    @Test
+    void LoopBodies_NotReusingConditions() {
+        assertEquals(List.of("0 evaluations eliminated"),
+                     report("while (a + b < 100) a = a + b + 1; printInt(a + b);"));
+    }
+
+}
@@ -0,0 +1,101 @@
+package notc.codegen;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+class ControlFlowGraphTest {
+
+    // "if (c) x = 1.0 else x = 2" with a double on the stack throughout
+    private final List<Instruction> diamond = List.of(
+        Instruction.of(Opcode.DCONST_1),
+        Instruction.of(Opcode.ILOAD, "0"),
+        Instruction.of(Opcode.IFEQ, "Else"),
+        Instruction.of(Opcode.DCONST_1),
+        Instruction.of(Opcode.GOTO, "End"),
+        Instruction.label("Else"),
+        Instruction.of(Opcode.ICONST_1),
+        Instruction.of(Opcode.I2D),
+        Instruction.label("End"),
+        Instruction.of(Opcode.DADD),
+        Instruction.of(Opcode.DRETURN)
+    );
+
+    @Test
+    void Diamond_FourBlocksWithBranchingEdges() {
+        ControlFlowGraph cfg = new ControlFlowGraph(diamond);
+        List<ControlFlowGraph.BasicBlock> blocks = cfg.blocks();
+        assertEquals(4, blocks.size());
+        // Jump target first, then the fall-through
+        assertEquals(List.of(blocks.get(2), blocks.get(1)), blocks.get(0).successors);
+        assertEquals(List.of(blocks.get(3)), blocks.get(1).successors);
+        assertEquals(List.of(blocks.get(3)), blocks.get(2).successors);
+        assertTrue(blocks.get(3).successors.isEmpty());
+    }
+
+    @Test
+    void Diamond_MaxStackIsDeepestPath() {
+        ControlFlowGraph cfg = new ControlFlowGraph(diamond);
+        assertEquals(4, cfg.maxStackDepth());
+    }
+
+    @Test
+    void CodeAfterReturn_NotReachedAndNotCounted() {
+        List<Instruction> code = List.of(
+            Instruction.of(Opcode.RETURN),
+            Instruction.of(Opcode.DCONST_1),
+            Instruction.of(Opcode.DCONST_1),
+            Instruction.of(Opcode.POP2),
+            Instruction.of(Opcode.POP2)
+        );
+        ControlFlowGraph cfg = new ControlFlowGraph(code);
+        assertFalse(cfg.isReachable(cfg.blocks().get(1)));
+        assertEquals(0, cfg.maxStackDepth());
+    }
+
+    @Test
+    void Loop_BackEdgeReachesHeader() {
+        List<Instruction> code = List.of(
+            Instruction.label("Test"),
+            Instruction.of(Opcode.ILOAD, "0"),
+            Instruction.of(Opcode.IFEQ, "End"),
+            Instruction.of(Opcode.GOTO, "Test"),
+            Instruction.label("End"),
+            Instruction.of(Opcode.RETURN)
+        );
+        ControlFlowGraph cfg = new ControlFlowGraph(code);
+        ControlFlowGraph.BasicBlock header = cfg.blocks().get(0);
+        assertTrue(cfg.blocks().get(1).successors.contains(header));
+        assertEquals(1, cfg.maxStackDepth());
+    }
+
+    @Test
+    void PathsMeetWithDifferentDepths_Throws() {
+        List<Instruction> code = List.of(
+            Instruction.of(Opcode.ILOAD, "0"),
+            Instruction.of(Opcode.IFEQ, "End"),
+            Instruction.of(Opcode.ICONST_1),
+            Instruction.label("End"),
+            Instruction.of(Opcode.RETURN)
+        );
+        assertThrows(IllegalStateException.class,
+                     () -> new ControlFlowGraph(code).maxStackDepth());
+    }
+
+    @Test
+    void Call_StackChangeFromDescriptor() {
+        List<Instruction> code = List.of(
+            Instruction.of(Opcode.DCONST_1),
+            Instruction.of(Opcode.ICONST_1),
+            Instruction.of(Opcode.INVOKESTATIC, "p/f(DI)Ljava/lang/String;"),
+            Instruction.of(Opcode.ARETURN)
+        );
+        assertEquals(-2, code.get(2).stackChange());
+        assertEquals(3, new ControlFlowGraph(code).maxStackDepth());
+    }
+
+}
@@ -0,0 +1,69 @@
+package notc.codegen;
+
+import notc.TestPrograms;
+import notc.antlrgen.NotCParser.VariableDeclarationContext;
+
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+class DeadStoresTest {
+
+    private DeadStores deadStores;
+    private List<VariableDeclarationContext> varDecls;
+
+    // Analyzes a program with main having the given body, optionally folding constants
+    private void analyze(String mainBody, boolean foldConstants) {
+        String program = "void main() { int n = readInt(); " + mainBody + " }";
+        TestPrograms.Checked checked = TestPrograms.check(program, foldConstants);
+        deadStores = new DeadStores(checked.tree.funDefs, checked.symTab);
+        varDecls = new ArrayList<>();
+        findDeclarations(checked.tree);
+    }
+
+    private void findDeclarations(ParseTree tree) {
+        for (int i = 0; i < tree.getChildCount(); ++i) {
+            ParseTree child = tree.getChild(i);
+            if (child instanceof VariableDeclarationContext)
+                varDecls.add((VariableDeclarationContext) child);
+            findDeclarations(child);
+        }
+    }
+
+    // Names of the declared variables that are never read, in source order
+    private List<String> unread() {
+        return varDecls.stream()
+            .filter(deadStores::isUnread)
+            .map(varDecl -> varDecl.id.getText())
+            .collect(Collectors.toList());
+    }
+
+    @Test
+    void AssignedButNotRead_Unread() {
+        analyze("int x = n; int y; y = x; x = 2;", false);
+        assertEquals(List.of("y"), unread());
+    }
+
+    @Test
+    void IncrementedVariables_Read() {
+        analyze("int i = 0; int j = n; i++; --j;", false);
+        assertEquals(List.of(), unread());
+    }
+
+    @Test
+    void ReadsReplacedByConstants_NotCounted() {
+        analyze("int k = 3; printInt(k + n);", true);
+        assertEquals(List.of("k"), unread());
+    }
+
+    @Test
+    void ReadsWithoutConstantFolding_Counted() {
+        analyze("int k = 3; printInt(k + n);", false);
+        assertEquals(List.of(), unread());
+    }
+
+}
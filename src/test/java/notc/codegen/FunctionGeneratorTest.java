@@ -0,0 +1,61 @@
+package notc.codegen;
+
+import notc.TestPrograms;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+class FunctionGeneratorTest {
+
+    // Memory used by the variables of main in the Jasmin text of the program
+    private static int localsOfMain(String program) {
+        TestPrograms.Checked checked = TestPrograms.check(program, false);
+        String jasmText = checked.tree.accept(new ProgramGenerator(checked.symTab, "Test",
+                                                                   CodegenOptions.DEFAULT.embedBuiltins(false)));
+        String main = jasmText.substring(jasmText.indexOf(".method public static main()V"));
+        String limit = main.lines()
+            .filter(s -> s.startsWith(".limit locals "))
+            .findFirst()
+            .get();
+        return Integer.parseInt(limit.substring(".limit locals ".length()));
+    }
+
+    @Test
+    void DisjointScopes_MemoryReused() {
+        String program = "void main() {" +
+                         "    { int a = 1; double b = 2.0; printDouble(a + b); }" +
+                         "    { int c = 3; printInt(c); }" +
+                         "    if (true) { double d = 4.0; printDouble(d); }" +
+                         "    else { string s = \"5\"; printString(s); }" +
+                         "    while (false) { int e = 6; printInt(e); }" +
+                         "}";
+        // a and b
+        assertEquals(3, localsOfMain(program));
+    }
+
+    @Test
+    void DoubleAfterExitedScope_TwoSlotsReserved() {
+        String program = "void main() {" +
+                         "    int a = 1;" +
+                         "    { int b = 2; printInt(a + b); }" +
+                         "    double c = 3.0;" +
+                         "    printDouble(c);" +
+                         "}";
+        // c reuses the slot of b and the one after it
+        assertEquals(3, localsOfMain(program));
+    }
+
+    @Test
+    void NestedScopes_MemoryNotReused() throws IOException {
+        String program;
+        try (InputStream is = getClass().getResourceAsStream("/valid_programs/block_stm_scoping.notc")) {
+            program = new String(is.readAllBytes());
+        }
+        // Both a and b of the outer scopes remain when the nested ones are entered
+        assertEquals(1 + 1 + 1 + 2, localsOfMain(program));
+    }
+
+}
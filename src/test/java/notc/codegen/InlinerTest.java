@@ -0,0 +1,107 @@
+package notc.codegen;
+
+import notc.TestPrograms;
+import notc.antlrgen.NotCParser.ProgramContext;
+import notc.antlrgen.NotCParser.FunctionDefinitionContext;
+import notc.antlrgen.NotCParser.FunctionCallExpressionContext;
+
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class InlinerTest {
+
+    private ProgramContext tree;
+    private Inliner inliner;
+
+    private void analyze(String program, int limit) {
+        TestPrograms.Checked checked = TestPrograms.check(program, false);
+        tree = checked.tree;
+        inliner = new Inliner(tree.funDefs, checked.symTab, limit);
+    }
+
+    private void analyze(String program) {
+        analyze(program, Inliner.DEFAULT_LIMIT);
+    }
+
+    private FunctionDefinitionContext function(String name) {
+        return tree.funDefs.stream()
+            .filter(funDef -> funDef.header.id.getText().equals(name))
+            .findFirst()
+            .get();
+    }
+
+    // Calls in the function in source order
+    private static List<FunctionCallExpressionContext> calls(ParseTree tree) {
+        List<FunctionCallExpressionContext> calls = new ArrayList<>();
+        for (int i = 0; i < tree.getChildCount(); ++i) {
+            ParseTree child = tree.getChild(i);
+            if (child instanceof FunctionCallExpressionContext)
+                calls.add((FunctionCallExpressionContext) child);
+            calls.addAll(calls(child));
+        }
+        return calls;
+    }
+
+    @Test
+    void SmallFunction_Inlined() {
+        analyze("void main() { printInt(square(3)); } int square(int x) { return x * x; }");
+        List<FunctionCallExpressionContext> calls = calls(function("main"));
+        // The built-in printInt has no body
+        assertNull(inliner.calleeToInline(calls.get(0)));
+        assertSame(function("square"), inliner.calleeToInline(calls.get(1)));
+        assertEquals(List.of("Line 1:23: call of square inlined into main (size 4)"), inliner.report());
+    }
+
+    @Test
+    void RecursiveFunctions_NotInlined() {
+        analyze("void main() { f(1); g(2); h(3); } " +
+                "void f(int n) { if (n > 0) f(n - 1); } " +
+                "void g(int n) { if (n > 0) k(n - 1); } " +
+                "void k(int n) { g(n); } " +
+                "void h(int n) { f(n); }");
+        List<FunctionCallExpressionContext> calls = calls(function("main"));
+        assertNull(inliner.calleeToInline(calls.get(0)));
+        assertNull(inliner.calleeToInline(calls.get(1)));
+        // Calls a recursive function without being one
+        assertSame(function("h"), inliner.calleeToInline(calls.get(2)));
+        assertEquals("Line 1:14: call of f not inlined into main: recursive", inliner.report().get(0));
+    }
+
+    @Test
+    void FunctionOverLimit_NotInlined() {
+        String program = "void main() { f(); } void f() { printInt(1); printInt(2); }";
+        analyze(program, 6);
+        assertSame(function("f"), inliner.calleeToInline(calls(function("main")).get(0)));
+        analyze(program, 5);
+        assertNull(inliner.calleeToInline(calls(function("main")).get(0)));
+        assertEquals("Line 1:14: call of f not inlined into main: size 6 over limit 5",
+                     inliner.report().get(0));
+    }
+
+    @Test
+    void InlinedCalls_CountAsSizesOfCallees() {
+        analyze("void main() { f(); } " +
+                "void f() { g(); g(); } " +
+                "void g() { printInt(1); printInt(2); }", 13);
+        // 2 statements plus 2 calls of size 6 each
+        assertEquals("Line 1:14: call of f not inlined into main: size 14 over limit 13",
+                     inliner.report().get(0));
+        assertNull(inliner.calleeToInline(calls(function("main")).get(0)));
+        assertSame(function("g"), inliner.calleeToInline(calls(function("f")).get(0)));
+    }
+
+    @Test
+    void FunctionEndingInEndlessLoop_Inlined() {
+        analyze("void main() { printInt(g(1)); } " +
+                "int g(int n) { while (true) if (n > 0) return 1; }");
+        List<FunctionCallExpressionContext> calls = calls(function("main"));
+        assertSame(function("g"), inliner.calleeToInline(calls.get(1)));
+    }
+
+}
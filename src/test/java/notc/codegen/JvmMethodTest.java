@@ -9,6 +9,8 @@ import org.junit.jupiter.api.BeforeEach;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import java.util.List;
+
 class JvmMethodTest {
 
     private JvmMethod method;
@@ -94,6 +96,33 @@ class JvmMethodTest {
         assertEquals(storeAddress, loadAddress);
     }
 
+    @Test
+    void EmitConstants_ShortestEncodingChosen() {
+        int[] ints = { -1, 5, 6, -128, 127, 128, -32768, 32767, 32768, Integer.MIN_VALUE };
+        for (int i : ints)
+            method.emitConstant(i);
+        double[] doubles = { 0.0, 1.0, -0.0, 2.5 };
+        for (double d : doubles)
+            method.emitConstant(d);
+        List<Instruction> expected = List.of(
+            Instruction.of(Opcode.ICONST_M1),
+            Instruction.of(Opcode.ICONST_5),
+            Instruction.of(Opcode.BIPUSH, "6"),
+            Instruction.of(Opcode.BIPUSH, "-128"),
+            Instruction.of(Opcode.BIPUSH, "127"),
+            Instruction.of(Opcode.SIPUSH, "128"),
+            Instruction.of(Opcode.SIPUSH, "-32768"),
+            Instruction.of(Opcode.SIPUSH, "32767"),
+            Instruction.of(Opcode.LDC, "32768"),
+            Instruction.of(Opcode.LDC, "-2147483648"),
+            Instruction.of(Opcode.DCONST_0),
+            Instruction.of(Opcode.DCONST_1),
+            Instruction.of(Opcode.LDC2_W, "-0.0"),
+            Instruction.of(Opcode.LDC2_W, "2.5")
+        );
+        assertEquals(expected, method.code());
+    }
+
     private String getLineContaining(String searchStr) {
         String methodDef = method.collectCode();
         return methodDef.lines()
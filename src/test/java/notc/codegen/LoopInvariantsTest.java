@@ -0,0 +1,90 @@
+package notc.codegen;
+
+import notc.TestPrograms;
+import notc.antlrgen.NotCParser.StatementContext;
+import notc.antlrgen.NotCParser.ExpressionContext;
+import notc.antlrgen.NotCParser.ForStatementContext;
+import notc.antlrgen.NotCParser.WhileStatementContext;
+
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+class LoopInvariantsTest {
+
+    private LoopInvariants invariants;
+    private List<StatementContext> loops;
+
+    // Analyzes main in a program with the given body
+    private void analyze(String mainBody) {
+        String program = "void main() { int n = readInt(); int m = readInt(); " + mainBody + " }";
+        // Folded constants tell which divisors are nonzero
+        TestPrograms.Checked checked = TestPrograms.check(program, true);
+        invariants = new LoopInvariants(checked.tree.funDefs, checked.symTab);
+        loops = loops(checked.tree);
+    }
+
+    // Loops in source order
+    private static List<StatementContext> loops(ParseTree tree) {
+        List<StatementContext> loops = new ArrayList<>();
+        for (int i = 0; i < tree.getChildCount(); ++i) {
+            ParseTree child = tree.getChild(i);
+            if (child instanceof ForStatementContext || child instanceof WhileStatementContext)
+                loops.add((StatementContext) child);
+            loops.addAll(loops(child));
+        }
+        return loops;
+    }
+
+    // Text of the expressions hoisted out of the loop
+    private List<String> hoistedBefore(int loop) {
+        return invariants.hoistedBefore(loops.get(loop)).stream()
+            .map(ExpressionContext::getText)
+            .collect(Collectors.toList());
+    }
+
+    @Test
+    void InvariantCondition_Hoisted() {
+        analyze("int i = 0; while (i < n * m) i++;");
+        assertEquals(List.of("n*m"), hoistedBefore(0));
+    }
+
+    @Test
+    void AssignedVariables_NotInvariant() {
+        analyze("int i; for (i = 0; i < n - 1; i++) { printInt(i * 2); m = m + 1; printInt(m * 2); }");
+        assertEquals(List.of("n-1"), hoistedBefore(0));
+    }
+
+    @Test
+    void VariablesDeclaredInLoop_NotInvariant() {
+        analyze("while (true) { int k = n; printInt(k + 1); }");
+        assertEquals(List.of(), hoistedBefore(0));
+    }
+
+    @Test
+    void LargestInvariantExpression_Hoisted() {
+        analyze("int i = 0; while (i < 10) { printInt(i + (n * 2 - m)); i++; }");
+        assertEquals(List.of("n*2-m"), hoistedBefore(0));
+    }
+
+    @Test
+    void CallsAndDivisionsThatCanThrow_NotHoisted() {
+        analyze("int i = 0; while (i < 10) { printInt(readInt() + n); printInt(n / m + n % 4 + n / 0); i++; }");
+        assertEquals(List.of("n%4"), hoistedBefore(0));
+    }
+
+    @Test
+    void NestedLoops_HoistedOutOfOutermostLoopWhereInvariant() {
+        analyze("int i; int j; " +
+                "for (i = 0; i < 10; i++) " +
+                "    for (j = 0; j < m + 1; j++) " +
+                "        printInt(i * (n - 1) + j);");
+        assertEquals(List.of("m+1", "n-1"), hoistedBefore(0));
+        assertEquals(List.of("i*(n-1)"), hoistedBefore(1));
+    }
+
+}
@@ -0,0 +1,205 @@
+package notc.codegen;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+class PeepholeTest {
+
+    @Test
+    void AssignmentStatement_ValueNotDuplicated() {
+        assertOptimizedTo(
+            List.of(
+                Instruction.of(Opcode.ICONST_1),
+                Instruction.of(Opcode.DUP),
+                Instruction.of(Opcode.ISTORE, "0"),
+                Instruction.of(Opcode.POP),
+                Instruction.of(Opcode.RETURN)
+            ),
+            List.of(
+                Instruction.of(Opcode.ICONST_1),
+                Instruction.of(Opcode.ISTORE, "0"),
+                Instruction.of(Opcode.RETURN)
+            )
+        );
+    }
+
+    @Test
+    void BranchOverGoto_Inverted() {
+        assertOptimizedTo(
+            List.of(
+                Instruction.of(Opcode.ILOAD, "0"),
+                Instruction.of(Opcode.IFNE, "L0"),
+                Instruction.of(Opcode.GOTO, "L1"),
+                Instruction.label("L0"),
+                Instruction.of(Opcode.ICONST_1),
+                Instruction.of(Opcode.ISTORE, "0"),
+                Instruction.label("L1"),
+                Instruction.of(Opcode.RETURN)
+            ),
+            List.of(
+                Instruction.of(Opcode.ILOAD, "0"),
+                Instruction.of(Opcode.IFEQ, "L1"),
+                Instruction.of(Opcode.ICONST_1),
+                Instruction.of(Opcode.ISTORE, "0"),
+                Instruction.label("L1"),
+                Instruction.of(Opcode.RETURN)
+            )
+        );
+    }
+
+    // while (i < j); ends up as a single backward branch
+    @Test
+    void ComparisonTestedAtOnce_BranchesDirectly() {
+        assertOptimizedTo(
+            List.of(
+                Instruction.label("L0"),
+                Instruction.of(Opcode.ILOAD, "0"),
+                Instruction.of(Opcode.ILOAD, "1"),
+                Instruction.of(Opcode.IF_ICMPLT, "L2"),
+                Instruction.of(Opcode.ICONST_0),
+                Instruction.of(Opcode.GOTO, "L3"),
+                Instruction.label("L2"),
+                Instruction.of(Opcode.ICONST_1),
+                Instruction.label("L3"),
+                Instruction.of(Opcode.IFEQ, "L1"),
+                Instruction.of(Opcode.GOTO, "L0"),
+                Instruction.label("L1"),
+                Instruction.of(Opcode.RETURN)
+            ),
+            List.of(
+                Instruction.label("L0"),
+                Instruction.of(Opcode.ILOAD, "0"),
+                Instruction.of(Opcode.ILOAD, "1"),
+                Instruction.of(Opcode.IF_ICMPLT, "L0"),
+                Instruction.of(Opcode.RETURN)
+            )
+        );
+    }
+
+    @Test
+    void DoubleComparisonTestedAtOnce_BranchesOnDcmpg() {
+        assertOptimizedTo(
+            List.of(
+                Instruction.of(Opcode.DLOAD, "0"),
+                Instruction.of(Opcode.DCONST_1),
+                Instruction.of(Opcode.DCMPG),
+                Instruction.of(Opcode.ICONST_M1),
+                Instruction.of(Opcode.IF_ICMPEQ, "L0"),
+                Instruction.of(Opcode.ICONST_0),
+                Instruction.of(Opcode.GOTO, "L1"),
+                Instruction.label("L0"),
+                Instruction.of(Opcode.ICONST_1),
+                Instruction.label("L1"),
+                Instruction.of(Opcode.IFEQ, "L2"),
+                Instruction.of(Opcode.RETURN),
+                Instruction.label("L2"),
+                Instruction.of(Opcode.RETURN)
+            ),
+            List.of(
+                Instruction.of(Opcode.DLOAD, "0"),
+                Instruction.of(Opcode.DCONST_1),
+                Instruction.of(Opcode.DCMPG),
+                Instruction.of(Opcode.IFGE, "L2"),
+                Instruction.of(Opcode.RETURN),
+                Instruction.label("L2"),
+                Instruction.of(Opcode.RETURN)
+            )
+        );
+    }
+
+    @Test
+    void BoolConversionBeforeBranch_Dropped() {
+        assertOptimizedTo(
+            List.of(
+                Instruction.of(Opcode.ILOAD, "0"),
+                Instruction.of(Opcode.DUP),
+                Instruction.of(Opcode.INEG),
+                Instruction.of(Opcode.IOR),
+                Instruction.of(Opcode.BIPUSH, "31"),
+                Instruction.of(Opcode.IUSHR),
+                Instruction.of(Opcode.IFEQ, "L0"),
+                Instruction.of(Opcode.RETURN),
+                Instruction.label("L0"),
+                Instruction.of(Opcode.RETURN)
+            ),
+            List.of(
+                Instruction.of(Opcode.ILOAD, "0"),
+                Instruction.of(Opcode.IFEQ, "L0"),
+                Instruction.of(Opcode.RETURN),
+                Instruction.label("L0"),
+                Instruction.of(Opcode.RETURN)
+            )
+        );
+    }
+
+    @Test
+    void ConstantConditionOfEndlessLoop_Dropped() {
+        assertOptimizedTo(
+            List.of(
+                Instruction.label("L0"),
+                Instruction.of(Opcode.ICONST_1),
+                Instruction.of(Opcode.IFEQ, "L1"),
+                Instruction.of(Opcode.ICONST_1),
+                Instruction.of(Opcode.ISTORE, "0"),
+                Instruction.of(Opcode.GOTO, "L0"),
+                Instruction.label("L1"),
+                Instruction.of(Opcode.RETURN)
+            ),
+            List.of(
+                Instruction.label("L0"),
+                Instruction.of(Opcode.ICONST_1),
+                Instruction.of(Opcode.ISTORE, "0"),
+                Instruction.of(Opcode.GOTO, "L0")
+            )
+        );
+    }
+
+    @Test
+    void RuleApplied_HitCounted() {
+        Peephole peephole = new Peephole();
+        List<Instruction> code = new ArrayList<>(List.of(
+            Instruction.of(Opcode.ICONST_1),
+            Instruction.of(Opcode.DUP),
+            Instruction.of(Opcode.ISTORE, "0"),
+            Instruction.of(Opcode.POP),
+            Instruction.of(Opcode.RETURN)
+        ));
+        peephole.optimize(code);
+        assertEquals(1, (int) peephole.hitCounts().get("store-then-pop"));
+        assertEquals(0, (int) peephole.hitCounts().get("jump-to-next"));
+    }
+
+    @Test
+    void RuleDisabled_NotApplied() {
+        Set<Peephole.Rule> rules = EnumSet.allOf(Peephole.Rule.class);
+        rules.remove(Peephole.Rule.STORE_THEN_POP);
+        Peephole peephole = new Peephole(rules);
+        List<Instruction> original = List.of(
+            Instruction.of(Opcode.ICONST_1),
+            Instruction.of(Opcode.DUP),
+            Instruction.of(Opcode.ISTORE, "0"),
+            Instruction.of(Opcode.POP),
+            Instruction.of(Opcode.RETURN)
+        );
+        List<Instruction> code = new ArrayList<>(original);
+        peephole.optimize(code);
+        assertEquals(original, code);
+        assertEquals(List.of("Rule store-then-pop disabled"),
+                     peephole.report().stream().filter(line -> line.contains("store-then-pop"))
+                                       .collect(Collectors.toList()));
+    }
+
+    private void assertOptimizedTo(List<Instruction> original, List<Instruction> expected) {
+        List<Instruction> code = new ArrayList<>(original);
+        new Peephole().optimize(code);
+        assertEquals(expected, code);
+        CodeVerifier.verify("f()V", code);
+    }
+
+}
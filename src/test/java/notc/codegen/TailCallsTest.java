@@ -0,0 +1,98 @@
+package notc.codegen;
+
+import notc.TestPrograms;
+import notc.antlrgen.NotCParser.ProgramContext;
+import notc.antlrgen.NotCParser.FunctionDefinitionContext;
+import notc.antlrgen.NotCParser.FunctionCallExpressionContext;
+
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class TailCallsTest {
+
+    private ProgramContext tree;
+    private TailCalls tailCalls;
+
+    private void analyze(String program) {
+        TestPrograms.Checked checked = TestPrograms.check(program, false);
+        tree = checked.tree;
+        tailCalls = new TailCalls(tree.funDefs, checked.symTab);
+    }
+
+    private FunctionDefinitionContext function(String name) {
+        return tree.funDefs.stream()
+            .filter(funDef -> funDef.header.id.getText().equals(name))
+            .findFirst()
+            .get();
+    }
+
+    // Calls in the function in source order
+    private static List<FunctionCallExpressionContext> calls(ParseTree tree) {
+        List<FunctionCallExpressionContext> calls = new ArrayList<>();
+        for (int i = 0; i < tree.getChildCount(); ++i) {
+            ParseTree child = tree.getChild(i);
+            if (child instanceof FunctionCallExpressionContext)
+                calls.add((FunctionCallExpressionContext) child);
+            calls.addAll(calls(child));
+        }
+        return calls;
+    }
+
+    @Test
+    void ReturnedCall_IsTailCall() {
+        analyze("void main() { } " +
+                "int sum(int n, int acc) { if (n == 0) return acc; return sum(n - 1, acc + n); }");
+        FunctionDefinitionContext sum = function("sum");
+        assertSame(sum, tailCalls.callee(sum, calls(sum).get(0)));
+        // Only in cycles of more than one
+        assertNull(tailCalls.groupOf(sum));
+    }
+
+    @Test
+    void CallWithValueUsed_NotTailCall() {
+        analyze("void main() { } " +
+                "int fac(int n) { if (n == 0) return 1; return n * fac(n - 1); } " +
+                "double widened(int n) { return fac(n); }");
+        FunctionDefinitionContext fac = function("fac");
+        assertNull(tailCalls.callee(fac, calls(fac).get(0)));
+        // Converted to double after the call
+        FunctionDefinitionContext widened = function("widened");
+        assertNull(tailCalls.callee(widened, calls(widened).get(0)));
+    }
+
+    @Test
+    void LastStatementOfVoidFunction_TailCall() {
+        analyze("void main() { } " +
+                "void f(int i) { if (i > 0) { g(i); return; } while (i < 0) f(i + 1); f(1); g(2); } " +
+                "void g(int i) { if (i > 1) f(i - 1); else { g(0); } }");
+        FunctionDefinitionContext f = function("f");
+        FunctionDefinitionContext g = function("g");
+        List<FunctionCallExpressionContext> callsInF = calls(f);
+        // Followed by "return;"
+        assertSame(g, tailCalls.callee(f, callsInF.get(0)));
+        // In loop and followed by statement
+        assertNull(tailCalls.callee(f, callsInF.get(1)));
+        assertNull(tailCalls.callee(f, callsInF.get(2)));
+        assertSame(g, tailCalls.callee(f, callsInF.get(3)));
+        List<FunctionCallExpressionContext> callsInG = calls(g);
+        assertSame(f, tailCalls.callee(g, callsInG.get(0)));
+        assertSame(g, tailCalls.callee(g, callsInG.get(1)));
+        assertEquals(List.of(f, g), tailCalls.groupOf(f));
+        assertSame(tailCalls.groupOf(f), tailCalls.groupOf(g));
+    }
+
+    @Test
+    void FunctionEndingInEndlessLoop_Grouped() {
+        analyze("void main() { } " +
+                "int even(int n) { if (n == 0) return 1; return odd(n - 1); } " +
+                "int odd(int n) { while (true) { if (n == 0) return 0; return even(n - 1); } }");
+        assertEquals(List.of(function("even"), function("odd")), tailCalls.groupOf(function("even")));
+    }
+
+}
@@ -0,0 +1,103 @@
+package notc.semantics;
+
+import notc.TestPrograms;
+import notc.antlrgen.NotCParser.ProgramContext;
+import notc.antlrgen.NotCParser.FunctionDefinitionContext;
+import notc.antlrgen.NotCParser.ExpressionStatementContext;
+import notc.antlrgen.NotCParser.FunctionCallExpressionContext;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ConstantFolderTest {
+
+    // Folds the program and returns the value of the argument
+    // of the call that is the last statement of the last function
+    private static Object foldedArgument(String program) {
+        ProgramContext tree = TestPrograms.check(program, true).tree;
+        FunctionDefinitionContext main = tree.funDefs.get(tree.funDefs.size() - 1);
+        ExpressionStatementContext last =
+            (ExpressionStatementContext) main.body.get(main.body.size() - 1);
+        return ConstantFolder.valueOf(((FunctionCallExpressionContext) last.expr).args.get(0));
+    }
+
+    // Not built in
+    private static final String PRINT_BOOL = "void printBool(bool b) { printInt(b); } ";
+
+    private static Object folded(String type, String expr) {
+        return foldedArgument(PRINT_BOOL + "void main() { print" + type + "(" + expr + "); }");
+    }
+
+    @Test
+    void IntArithmetic_Folded() {
+        assertEquals(2055, folded("Int", "2 * 1024 + 7"));
+        assertEquals(-3, folded("Int", "-(10 - 13) * -1"));
+        assertEquals(-2, folded("Int", "-7 / 3 - (-7 % 3 + 1)"));
+    }
+
+    @Test
+    void IntOverflow_WrapsAround() {
+        assertEquals(Integer.MIN_VALUE, folded("Int", "2147483647 + 1"));
+        assertEquals(0, folded("Int", "65536 * 65536"));
+    }
+
+    @Test
+    void DivisionByZero_NotFolded() {
+        assertNull(folded("Int", "1 / 0"));
+        assertNull(folded("Int", "1 % (2 - 2)"));
+        assertNull(folded("Double", "1.0 / 0"));
+    }
+
+    @Test
+    void MixedOperands_ConvertedToDouble() {
+        assertEquals(3.5, folded("Double", "1 + 2.5"));
+        assertEquals(-3.0, folded("Double", "-(3.0)"));
+        assertEquals(2.0, folded("Double", "4 / 2"));
+    }
+
+    @Test
+    void ImplicitConversions_FoldedLikeAtRunTime() {
+        assertEquals(2, folded("Int", "2.9"));
+        assertEquals(-2, folded("Int", "-2.9"));
+        assertEquals(1, folded("Bool", "7"));
+        assertEquals(0, folded("Bool", "0.0"));
+        assertEquals(2, folded("Int", "true + true"));
+    }
+
+    @Test
+    void Comparisons_Folded() {
+        assertEquals(1, folded("Bool", "1 < 1.5"));
+        assertEquals(0, folded("Bool", "2 == 3"));
+        assertEquals(1, folded("Bool", "(1 < 2) == true"));
+    }
+
+    @Test
+    void DecidingFirstOperand_FoldsWholeExpression() {
+        String program = PRINT_BOOL + "bool f() { printInt(1); return true; } void main() { printBool(%s); }";
+        assertEquals(0, foldedArgument(String.format(program, "false && f()")));
+        assertEquals(1, foldedArgument(String.format(program, "1 < 2 || f()")));
+        assertNull(foldedArgument(String.format(program, "true && f()")));
+        assertEquals(1, foldedArgument(String.format(program, "true && 2 > 1")));
+    }
+
+    @Test
+    void InitializedUnmodifiedVariable_Propagated() {
+        assertEquals(12, foldedArgument("void main() { int x = 5; int y = x + 1; printInt(y * 2); }"));
+        assertEquals(5.0, foldedArgument("void main() { double d = 5; printDouble(d); }"));
+    }
+
+    @Test
+    void SingleAssignmentBeforeReads_Propagated() {
+        assertEquals(6, foldedArgument("void main() { int x; x = 5; printInt(x + 1); }"));
+    }
+
+    @Test
+    void ModifiedVariable_NotPropagated() {
+        assertNull(foldedArgument("void main() { int x = 5; x++; printInt(x); }"));
+        assertNull(foldedArgument("void main() { int x; x = 5; x = 6; printInt(x); }"));
+        assertNull(foldedArgument("void main() { int x; if (true) x = 5; printInt(x); }"));
+        assertNull(foldedArgument("void main() { } void f(int x) { printInt(x); }"));
+    }
+
+}
@@ -0,0 +1,56 @@
+package notc.semantics;
+
+import notc.TestPrograms;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+class PurityTest {
+
+    // Names of the pure functions of the program, in the order they are defined
+    private static List<String> pure(String program) {
+        TestPrograms.Checked checked = TestPrograms.check(program, false);
+        Purity purity = new Purity(checked.tree.funDefs, checked.symTab);
+        return checked.tree.funDefs.stream()
+                           .filter(purity::isPure)
+                           .map(funDef -> funDef.header.id.getText())
+                           .collect(Collectors.toList());
+    }
+
+    @Test
+    void ArithmeticOnly_Pure() {
+        assertEquals(List.of("square"), pure(
+            "int square(int n) { return n * n; } " +
+            "void main() { printInt(square(readInt())); }"));
+    }
+
+    @Test
+    void BuiltinCalled_NotPure() {
+        assertEquals(List.of(), pure(
+            "int next(int n) { printInt(n); return n + 1; } " +
+            "void main() { next(1); }"));
+    }
+
+    @Test
+    void ImpureCallee_NotPure() {
+        assertEquals(List.of("leaf"), pure(
+            "int leaf(int n) { return n; } " +
+            "int noisy(int n) { printInt(n); return leaf(n); } " +
+            "int caller(int n) { return noisy(n) + leaf(n); } " +
+            "void main() { caller(1); }"));
+    }
+
+    @Test
+    void MutualRecursion_PureUnlessCycleIsNot() {
+        assertEquals(List.of("isEven", "isOdd"), pure(
+            "bool isEven(int n) { if (n == 0) return true; return isOdd(n - 1); } " +
+            "bool isOdd(int n) { if (n == 0) return false; return isEven(n - 1); } " +
+            "int ping(int n) { if (n == 0) return 0; return pong(n - 1); } " +
+            "int pong(int n) { printInt(n); return ping(n); } " +
+            "void main() { printInt(isEven(ping(4))); }"));
+    }
+
+}